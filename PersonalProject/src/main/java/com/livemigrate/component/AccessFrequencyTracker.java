@@ -0,0 +1,193 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.config.LiveMigrateProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.zset.DefaultTuple;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Estimates how often each record is read, so a migration can move the hottest
+ * records first.
+ *
+ * Only a sample of reads is counted, into a count-min sketch: a few rows of
+ * counters indexed by independent hashes of the record ID, where the smallest
+ * counter is the estimate. Memory stays fixed no matter how many records exist,
+ * and increments are plain atomic adds on the read path. Counters are halved
+ * periodically, so the estimate follows the current workload rather than all-time
+ * totals.
+ *
+ * The records with the highest estimates are published to a sorted set in Redis,
+ * where the counts of all application nodes are merged by taking the maximum.
+ * The shared set is decayed in place, once per interval across all nodes.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AccessFrequencyTracker {
+    private static final int SKETCH_DEPTH = 4;
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+    private static final RedisScript<Long> DECAY_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/decay_hot_records.lua"), Long.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final KeyLayout keyLayout;
+    private final LiveMigrateProperties properties;
+
+    // Candidates for the published top-K; their counts live in the sketch
+    private final Set<UUID> candidates = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "access-frequency");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private AtomicLongArray sketch;
+    private int widthMask;
+
+    @PostConstruct
+    void start() {
+        LiveMigrateProperties.HotRecords config = properties.getHotRecords();
+        int width = Integer.highestOneBit(Math.max(16, config.getSketchWidth()));
+        widthMask = width - 1;
+        sketch = new AtomicLongArray(SKETCH_DEPTH * width);
+
+        long publishMillis = config.getPublishInterval().toMillis();
+        long decayMillis = config.getDecayInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::publishSafely, publishMillis, publishMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::decay, decayMillis, decayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Counts a read of a record. Only one in sampleRate calls touches the sketch.
+     */
+    public void recordAccess(UUID recordId) {
+        int sampleRate = properties.getHotRecords().getSampleRate();
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+
+        long hash = recordId.getMostSignificantBits() ^ recordId.getLeastSignificantBits();
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            sketch.incrementAndGet(index(row, hash));
+        }
+        candidates.add(recordId);
+    }
+
+    /**
+     * Returns the estimated number of sampled reads of a record since the last decays.
+     */
+    public long estimate(UUID recordId) {
+        long hash = recordId.getMostSignificantBits() ^ recordId.getLeastSignificantBits();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            estimate = Math.min(estimate, sketch.get(index(row, hash)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the hottest records across all nodes, hottest first.
+     */
+    public List<UUID> getHotRecords(int limit) {
+        Set<Object> members = redisTemplate.opsForZSet().reverseRange(keyLayout.hotRecords(), 0, limit - 1);
+        if (members == null) {
+            return List.of();
+        }
+        return members.stream().map(member -> UUID.fromString(member.toString())).toList();
+    }
+
+    /**
+     * Pushes this node's current top-K to Redis and forgets the remaining candidates.
+     */
+    void publish() {
+        int topK = properties.getHotRecords().getTopK();
+        List<UUID> ranked = new ArrayList<>(candidates);
+        if (ranked.isEmpty()) {
+            return;
+        }
+        Map<UUID, Long> estimates = new HashMap<>();
+        ranked.forEach(id -> estimates.put(id, estimate(id)));
+        ranked.sort(Comparator.comparing(estimates::get, Comparator.reverseOrder()));
+        ranked.subList(Math.min(topK, ranked.size()), ranked.size()).forEach(candidates::remove);
+
+        Set<Tuple> tuples = new LinkedHashSet<>();
+        for (UUID id : ranked.subList(0, Math.min(topK, ranked.size()))) {
+            tuples.add(new DefaultTuple(serialize(id.toString()), estimates.get(id).doubleValue()));
+        }
+
+        byte[] key = keyLayout.hotRecords().getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            // GT keeps the highest count reported by any node
+            connection.zSetCommands().zAdd(key, tuples, RedisZSetCommands.ZAddArgs.empty().gt());
+            connection.zSetCommands().zRemRange(key, 0, -(topK + 1));
+            return null;
+        });
+    }
+
+    /**
+     * Halves every counter, so old accesses lose weight against recent ones. The
+     * published scores decay along with them, since GT alone would never lower them.
+     * They are halved in place rather than dropped, so the counts other nodes
+     * published are kept, and only by the first node to get there in an interval.
+     */
+    void decay() {
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.updateAndGet(i, count -> count >> 1);
+        }
+        try {
+            redisTemplate.execute(DECAY_SCRIPT, RedisSerializer.string(), new GenericToStringSerializer<>(Long.class),
+                    List.of(keyLayout.hotRecords(), keyLayout.hotRecordsDecay()),
+                    Long.toString(properties.getHotRecords().getDecayInterval().toMillis()));
+            publish();
+        } catch (Exception e) {
+            log.warn("Failed to decay published hot records", e);
+        }
+    }
+
+    private void publishSafely() {
+        try {
+            publish();
+        } catch (Exception e) {
+            log.warn("Failed to publish hot records", e);
+        }
+    }
+
+    private int index(int row, long hash) {
+        long mixed = (hash + SEEDS[row]) * SEEDS[(row + 1) % SKETCH_DEPTH];
+        mixed ^= mixed >>> 31;
+        return row * (widthMask + 1) + (int) (mixed & widthMask);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(Object value) {
+        return ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
+    }
+}
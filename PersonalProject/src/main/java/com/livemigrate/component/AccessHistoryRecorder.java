@@ -0,0 +1,189 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.model.AccessRecord;
+import com.livemigrate.model.AccessSummary;
+import com.livemigrate.service.RecordService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maintains the access history in {@code RecordMetadata} (accessCount,
+ * lastAccessTime, recentAccesses) without slowing down reads.
+ *
+ * Reads only append an event to a lock-free in-memory queue. A background task
+ * drains the queue periodically, aggregates the events per record and writes one
+ * coalesced update per record and flush. A record read a hundred times between
+ * two flushes therefore costs a single write. The queue is bounded; when it is
+ * full further events are dropped and counted, so a flush that falls behind can
+ * never exhaust memory or block readers.
+ *
+ * The ratio of records written to accesses recorded is published as
+ * access.write.amplification and is tuned with the flush interval.
+ *
+ * Only the hash V2 layout keeps access history, since there a flush only touches
+ * the access fields. With the JSON layout every flush would rewrite whole records,
+ * so accesses are not recorded at all.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AccessHistoryRecorder {
+    private static final String ACCESS_TYPE = "read";
+    private static final String ACCESSED_BY = "smartproxy";
+
+    private final RecordService recordService;
+    private final LiveMigrateProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentLinkedQueue<AccessEvent> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger bufferSize = new AtomicInteger();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "access-history");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Counter bufferedCounter;
+    private Counter droppedCounter;
+    private Counter writtenCounter;
+    private Timer flushTimer;
+
+    @PostConstruct
+    void start() {
+        bufferedCounter = Counter.builder("access.events").tag("result", "buffered").register(meterRegistry);
+        droppedCounter = Counter.builder("access.events").tag("result", "dropped").register(meterRegistry);
+        writtenCounter = Counter.builder("access.flush.records")
+                .description("Record updates written by access history flushes")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("access.flush.time")
+                .description("Time taken to aggregate and write one access history flush")
+                .register(meterRegistry);
+        Gauge.builder("access.buffer.size", bufferSize, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("access.write.amplification", this, AccessHistoryRecorder::writeAmplification)
+                .description("Record updates written per access recorded")
+                .register(meterRegistry);
+
+        LiveMigrateProperties.AccessHistory config = properties.getAccessHistory();
+        if (config.isEnabled() && !isHashLayout()) {
+            log.info("Access history is only kept with the hash V2 layout, not recording accesses");
+        }
+        if (isActive()) {
+            long interval = config.getFlushInterval().toMillis();
+            scheduler.scheduleWithFixedDelay(this::flushSafely, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+        // Write out what has been buffered so far instead of losing it on shutdown
+        flushSafely();
+    }
+
+    /**
+     * Records a read of a record. Never blocks and never touches Redis.
+     */
+    public void recordAccess(UUID recordId, String purpose) {
+        if (!isActive()) {
+            return;
+        }
+        LiveMigrateProperties.AccessHistory config = properties.getAccessHistory();
+        if (bufferSize.incrementAndGet() > config.getBufferCapacity()) {
+            bufferSize.decrementAndGet();
+            droppedCounter.increment();
+            return;
+        }
+        buffer.offer(new AccessEvent(recordId, Instant.now(), purpose));
+        bufferedCounter.increment();
+    }
+
+    /**
+     * Drains the buffer and writes the aggregated history. Events added while a
+     * flush is running are picked up by the next one.
+     */
+    void flush() {
+        int pending = bufferSize.get();
+        if (pending == 0) {
+            return;
+        }
+
+        int recentLimit = properties.getAccessHistory().getRecentAccessLimit();
+        Map<UUID, AccessSummary> summaries = new HashMap<>();
+        for (int i = 0; i < pending; i++) {
+            AccessEvent event = buffer.poll();
+            if (event == null) {
+                break;
+            }
+            bufferSize.decrementAndGet();
+            aggregate(summaries.computeIfAbsent(event.recordId(), id -> new AccessSummary()), event, recentLimit);
+        }
+
+        flushTimer.record(() -> {
+            int written = recordService.applyAccessHistory(summaries, recentLimit);
+            writtenCounter.increment(written);
+            log.debug("Flushed access history of {} records from {} events", written, pending);
+        });
+    }
+
+    private boolean isActive() {
+        return properties.getAccessHistory().isEnabled() && isHashLayout();
+    }
+
+    private boolean isHashLayout() {
+        return properties.getStorage().getV2Layout() == LiveMigrateProperties.V2Layout.HASH;
+    }
+
+    private void aggregate(AccessSummary summary, AccessEvent event, int recentLimit) {
+        summary.setAccessCount(summary.getAccessCount() + 1);
+        summary.setLastAccessTime(event.timestamp());
+
+        AccessRecord access = new AccessRecord();
+        access.setTimestamp(event.timestamp());
+        access.setAccessType(ACCESS_TYPE);
+        access.setAccessedBy(ACCESSED_BY);
+        access.setPurpose(event.purpose());
+
+        // Only the newest accesses survive the ring in Redis anyway
+        List<AccessRecord> recent = summary.getRecentAccesses();
+        recent.add(access);
+        if (recent.size() > recentLimit) {
+            recent.remove(0);
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Failed to flush access history", e);
+        }
+    }
+
+    private double writeAmplification() {
+        double buffered = bufferedCounter.count();
+        return buffered > 0 ? writtenCounter.count() / buffered : 0.0;
+    }
+
+    private record AccessEvent(UUID recordId, Instant timestamp, String purpose) {
+    }
+}
@@ -0,0 +1,64 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.model.CustomerRecordV2;
+import com.livemigrate.service.RecordService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Makes the results of a migration batch visible: V2 records, migrated marks,
+ * progress and checkpoint.
+ *
+ * Against a standalone Redis this is a single atomic script call. In cluster mode
+ * the keys of a batch live in different slots, so the steps are applied one after
+ * another, V2 data first and the checkpoint last. A crash in between then only
+ * causes records to be migrated again on resume, never a checkpoint that points
+ * past unwritten data. Each record is still written with a compare-and-set script
+ * there, since a record and its stamp share a slot.
+ */
+@Component
+@RequiredArgsConstructor
+public class BatchCommitter {
+    private final RecordService recordService;
+    private final VersionSelector versionSelector;
+    private final StateTracker stateTracker;
+    private final KeyLayout keyLayout;
+
+    /**
+     * Commits a batch of migrated records. Each record is only written if its
+     * version stamp is unchanged since its V1 source was read.
+     *
+     * @param records      the V2 records of the batch, in sweep order
+     * @param stamps       the version stamp each record's V1 source was read with
+     * @param totalRecords the total number of records, used for the progress value
+     * @param checkpoint   the ID a resumed migration continues after, or null to keep the current one
+     * @return the IDs of records that were skipped because the foreground wrote them meanwhile
+     */
+    public List<UUID> commit(List<CustomerRecordV2> records, Map<UUID, Long> stamps,
+                             long totalRecords, UUID checkpoint) {
+        if (!keyLayout.isClustered()) {
+            return recordService.commitMigrationBatch(records, stamps, totalRecords, checkpoint);
+        }
+
+        // The ID index needs no update here: a record only reaches the sweep through it
+        List<UUID> conflicts = new ArrayList<>();
+        for (CustomerRecordV2 record : records) {
+            if (recordService.commitRecordV2IfUnchanged(record, stamps.getOrDefault(record.getId(), 0L))) {
+                versionSelector.markAsMigrated(record.getId());
+            } else {
+                conflicts.add(record.getId());
+            }
+        }
+        stateTracker.updateProgress(versionSelector.getProcessedCount(), totalRecords);
+        if (checkpoint != null) {
+            stateTracker.saveCheckpoint(checkpoint);
+        }
+        return conflicts;
+    }
+}
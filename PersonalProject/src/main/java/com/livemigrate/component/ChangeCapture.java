@@ -0,0 +1,264 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.KeyLayout;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.cluster.pubsub.RedisClusterPubSubAdapter;
+import io.lettuce.core.cluster.pubsub.StatefulRedisClusterPubSubConnection;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisServerCommands;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Captures every mutation of a V1 record key into a Redis Stream while a migration
+ * is running, so the coordinator can replay only the records that changed after
+ * the backfill sweep passed them.
+ *
+ * Changes are observed through Redis keyspace notifications rather than at the
+ * application write path, which means writers that bypass the SmartProxy (or run
+ * on other nodes) are captured as well. Keyspace notifications are node-local in a
+ * Redis Cluster, so in cluster mode every upstream node is subscribed individually.
+ *
+ * Pub/sub delivery is at most once: notifications published while the subscription
+ * is down are gone. A subscription that has to be re-established therefore marks a
+ * capture gap, which the coordinator closes by re-sweeping the migrated records.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChangeCapture implements MessageListener, SubscriptionListener {
+    private static final String RECORD_ID_FIELD = "id";
+    private static final String KEYSPACE_CHANNEL_PREFIX = "__keyspace@%d__:";
+
+    // Keyspace events (K), generic commands (g) and string commands ($)
+    private static final String NOTIFY_KEYSPACE_EVENTS = "Kg$";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final RedisConnectionFactory connectionFactory;
+    private final RedisProperties redisProperties;
+    private final KeyLayout keyLayout;
+
+    private final AtomicBoolean capturing = new AtomicBoolean(false);
+    // Whether the pattern was subscribed since start(); a second subscription is a reconnect
+    private final AtomicBoolean subscribed = new AtomicBoolean(false);
+    private final Set<String> subscribedNodes = ConcurrentHashMap.newKeySet();
+
+    // Only used in cluster mode, where the listener container sees a single node
+    private StatefulRedisClusterPubSubConnection<String, String> clusterPubSub;
+
+    /**
+     * Starts recording V1 mutations into the change log. Safe to call repeatedly,
+     * e.g. when a paused migration is resumed.
+     */
+    public void start() {
+        // A unified record is upgraded in place, so there is no V2 copy that could fall behind
+        if (keyLayout.isUnified() || !capturing.compareAndSet(false, true)) {
+            return;
+        }
+        subscribed.set(false);
+        subscribedNodes.clear();
+        enableKeyspaceNotifications();
+        if (keyLayout.isClustered()) {
+            subscribeClusterNodes();
+        } else {
+            listenerContainer.addMessageListener(this, v1KeyspaceTopic());
+        }
+        log.info("Change capture started, pending changes: {}", getLag());
+    }
+
+    /**
+     * Stops recording V1 mutations. Entries already in the change log are kept.
+     */
+    public void stop() {
+        if (capturing.compareAndSet(true, false)) {
+            if (clusterPubSub != null) {
+                clusterPubSub.close();
+                clusterPubSub = null;
+            } else {
+                listenerContainer.removeMessageListener(this, v1KeyspaceTopic());
+            }
+            log.info("Change capture stopped");
+        }
+    }
+
+    public boolean isCapturing() {
+        return capturing.get();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        capture(new String(message.getChannel(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void onPatternSubscribed(byte[] pattern, long count) {
+        if (!subscribed.compareAndSet(false, true)) {
+            markInterrupted("the keyspace subscription was re-established");
+        }
+    }
+
+    private void capture(String channel) {
+        String recordId = keyLayout.idFromKey(channel).toString();
+        redisTemplate.opsForStream().add(StreamRecords.newRecord()
+                .in(keyLayout.changeStream())
+                .ofMap(Map.of(RECORD_ID_FIELD, recordId)));
+    }
+
+    /**
+     * Reads the oldest unreplayed entries from the change log. Several entries for
+     * the same record collapse into a single dirty ID.
+     */
+    public DirtyBatch nextDirtyBatch(int maxEntries) {
+        // read() only takes offsets as varargs, so the generic array is created here
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        StreamOffset<String>[] offsets = new StreamOffset[]{StreamOffset.fromStart(keyLayout.changeStream())};
+        List<MapRecord<String, Object, Object>> entries = redisTemplate.opsForStream().read(
+                StreamReadOptions.empty().count(maxEntries), offsets);
+        if (entries == null || entries.isEmpty()) {
+            return new DirtyBatch(List.of(), List.of());
+        }
+
+        Set<UUID> recordIds = new LinkedHashSet<>();
+        List<RecordId> entryIds = new ArrayList<>(entries.size());
+        for (MapRecord<String, Object, Object> entry : entries) {
+            entryIds.add(entry.getId());
+            Object recordId = entry.getValue().get(RECORD_ID_FIELD);
+            if (recordId != null) {
+                recordIds.add(UUID.fromString(recordId.toString()));
+            }
+        }
+        return new DirtyBatch(List.copyOf(recordIds), entryIds);
+    }
+
+    /**
+     * Removes replayed entries from the change log. Until this is called a crash
+     * simply causes the same records to be replayed again.
+     */
+    public void acknowledge(DirtyBatch batch) {
+        if (!batch.entryIds().isEmpty()) {
+            redisTemplate.opsForStream().delete(keyLayout.changeStream(), batch.entryIds().toArray(RecordId[]::new));
+        }
+    }
+
+    /**
+     * Returns the number of change log entries that have not been replayed yet.
+     */
+    public long getLag() {
+        Long size = redisTemplate.opsForStream().size(keyLayout.changeStream());
+        return size != null ? size : 0L;
+    }
+
+    /**
+     * Records that V1 mutations may have gone unnoticed, so the change log alone can
+     * no longer be trusted to bring every V2 copy up to date.
+     */
+    public void markInterrupted(String cause) {
+        log.warn("Change capture may have missed changes: {}", cause);
+        redisTemplate.opsForValue().set(keyLayout.captureGap(), Instant.now().toString());
+    }
+
+    public boolean isInterrupted() {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(keyLayout.captureGap()));
+    }
+
+    /**
+     * Clears a recorded capture gap.
+     *
+     * @return true if capture had been interrupted since the last call
+     */
+    public boolean consumeInterruption() {
+        return Boolean.TRUE.equals(redisTemplate.delete(keyLayout.captureGap()));
+    }
+
+    /**
+     * Discards the change log, typically once the migration has completed.
+     */
+    public void reset() {
+        redisTemplate.delete(List.of(keyLayout.changeStream(), keyLayout.captureGap()));
+    }
+
+    private PatternTopic v1KeyspaceTopic() {
+        return new PatternTopic(v1KeyspacePattern());
+    }
+
+    private String v1KeyspacePattern() {
+        return String.format(KEYSPACE_CHANNEL_PREFIX, redisProperties.getDatabase()) + keyLayout.v1KeyPattern();
+    }
+
+    private void subscribeClusterNodes() {
+        RedisClusterClient clusterClient =
+                (RedisClusterClient) ((LettuceConnectionFactory) connectionFactory).getNativeClient();
+
+        clusterPubSub = clusterClient.connectPubSub();
+        clusterPubSub.setNodeMessagePropagation(true);
+        clusterPubSub.addListener(new RedisClusterPubSubAdapter<>() {
+            @Override
+            public void message(RedisClusterNode node, String pattern, String channel, String message) {
+                capture(channel);
+            }
+
+            @Override
+            public void psubscribed(RedisClusterNode node, String pattern, long count) {
+                // Lettuce re-subscribes a node connection after it reconnects
+                if (!subscribedNodes.add(node.getNodeId())) {
+                    markInterrupted("the keyspace subscription on node " + node.getUri() + " was re-established");
+                }
+            }
+        });
+        clusterPubSub.sync().upstream().commands().psubscribe(v1KeyspacePattern());
+    }
+
+    private void enableKeyspaceNotifications() {
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            RedisServerCommands serverCommands = connection.serverCommands();
+            Properties current = serverCommands.getConfig("notify-keyspace-events");
+            String flags = current != null ? current.getProperty("notify-keyspace-events", "") : "";
+
+            // Merge with whatever is already configured instead of overwriting it.
+            // 'A' is an alias for all event classes, but not for the K channel flag.
+            StringBuilder merged = new StringBuilder(flags);
+            for (char flag : NOTIFY_KEYSPACE_EVENTS.toCharArray()) {
+                boolean covered = flags.indexOf(flag) >= 0 || (flag != 'K' && flags.indexOf('A') >= 0);
+                if (!covered) {
+                    merged.append(flag);
+                }
+            }
+            if (!merged.toString().equals(flags)) {
+                serverCommands.setConfig("notify-keyspace-events", merged.toString());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * A set of dirty record IDs together with the change log entries they came from.
+     */
+    public record DirtyBatch(List<UUID> recordIds, List<RecordId> entryIds) {
+        public boolean isEmpty() {
+            return entryIds.isEmpty();
+        }
+    }
+}
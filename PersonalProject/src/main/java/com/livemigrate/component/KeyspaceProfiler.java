@@ -0,0 +1,313 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.config.RedisWorkload;
+import com.livemigrate.model.CustomerRecordV2;
+import com.livemigrate.model.KeyspaceProfile;
+import com.livemigrate.model.RecordSection;
+import com.livemigrate.service.RecordFieldCodec;
+import com.livemigrate.service.RecordService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Measures how much memory each LiveMigrate key namespace takes, so capacity
+ * planning for a migration can rely on data instead of guesses.
+ *
+ * Every namespace is walked with SCAN, which counts its keys exactly while a
+ * uniform reservoir sample of them is kept. Only the sample is measured with
+ * MEMORY USAGE, and totals are extrapolated from it. The largest keys are tracked
+ * over all keys instead, since a sample would rarely contain the few outliers:
+ * string keys are first sized with STRLEN, and only those long enough to enter
+ * the current top list are measured. Sampled V2 records are also
+ * broken down by {@link RecordSection}, to show which part of the new schema
+ * drives the growth. The single-key tracking structures are measured exactly.
+ *
+ * The job runs in the background; the latest result is exposed through the API
+ * and as keyspace.* gauges.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class KeyspaceProfiler {
+    private static final int MEMORY_USAGE_CHUNK = 500;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RecordService recordService;
+    private final RecordFieldCodec fieldCodec;
+    private final KeyLayout keyLayout;
+    private final LiveMigrateProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "keyspace-profiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile KeyspaceProfile profile = new KeyspaceProfile();
+
+    @PostConstruct
+    void registerMetrics() {
+        namespaces().forEach((name, pattern) -> {
+            namespaceGauge("keyspace.keys", name, KeyspaceProfile.Namespace::getKeyCount);
+            namespaceGauge("keyspace.bytes", name, KeyspaceProfile.Namespace::getEstimatedTotalBytes);
+        });
+        trackingKeys().forEach(key -> Gauge.builder("keyspace.tracking.bytes", this,
+                        profiler -> profiler.profile.getTrackingKeyBytes().getOrDefault(key, 0L))
+                .tag("key", key)
+                .register(meterRegistry));
+        for (RecordSection section : RecordSection.values()) {
+            Gauge.builder("keyspace.section.bytes", this,
+                            profiler -> profiler.profile.getSectionEstimatedBytes().getOrDefault(section, 0L))
+                    .tag("section", section.name())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Starts a profiling run in the background.
+     */
+    public synchronized void start() {
+        if (profile.getState() == KeyspaceProfile.State.RUNNING) {
+            throw new IllegalStateException("Keyspace profiling is already running");
+        }
+        KeyspaceProfile running = new KeyspaceProfile();
+        running.setState(KeyspaceProfile.State.RUNNING);
+        running.setStartedAt(Instant.now());
+        // Keep serving the previous figures until the new run has finished
+        running.setNamespaces(profile.getNamespaces());
+        running.setTrackingKeyBytes(profile.getTrackingKeyBytes());
+        running.setSectionMeanBytes(profile.getSectionMeanBytes());
+        running.setSectionEstimatedBytes(profile.getSectionEstimatedBytes());
+        profile = running;
+
+        executor.submit(() -> RedisWorkload.BACKFILL.run(this::profile));
+        log.info("Keyspace profiling started");
+    }
+
+    public KeyspaceProfile getProfile() {
+        return profile;
+    }
+
+    private void profile() {
+        KeyspaceProfile result = new KeyspaceProfile();
+        result.setStartedAt(profile.getStartedAt());
+        try {
+            Map<String, List<String>> samples = new HashMap<>();
+            for (Map.Entry<String, String> namespace : namespaces().entrySet()) {
+                List<String> sample = new ArrayList<>();
+                result.getNamespaces().put(namespace.getKey(),
+                        profileNamespace(namespace.getValue(), holdsHashes(namespace.getKey()), sample));
+                samples.put(namespace.getKey(), sample);
+            }
+
+            List<String> trackingKeys = trackingKeys();
+            List<Long> trackingBytes = recordService.getMemoryUsage(trackingKeys);
+            for (int i = 0; i < trackingKeys.size(); i++) {
+                result.getTrackingKeyBytes().put(trackingKeys.get(i), trackingBytes.get(i));
+            }
+
+            // Unified keys hold both versions; sections are sized from the V2 records among them
+            String v2Namespace = keyLayout.isUnified() ? "records" : "v2";
+            profileSections(samples.get(v2Namespace), result.getNamespaces().get(v2Namespace).getKeyCount(), result);
+
+            result.setState(KeyspaceProfile.State.COMPLETED);
+            log.info("Keyspace profiling completed: {}", result.getNamespaces().keySet());
+        } catch (Exception e) {
+            log.error("Error during keyspace profiling", e);
+            result.setState(KeyspaceProfile.State.FAILED);
+            result.setError(e.getMessage());
+        } finally {
+            result.setFinishedAt(Instant.now());
+            profile = result;
+        }
+    }
+
+    /**
+     * Counts all keys matching the pattern and measures a uniform sample of them
+     * (reservoir sampling, so a single SCAN pass is enough). The largest keys are
+     * picked from all keys in the same pass.
+     */
+    private KeyspaceProfile.Namespace profileNamespace(String pattern, boolean hashes, List<String> sample) {
+        int sampleSize = properties.getProfiler().getSampleSize();
+        int outliers = properties.getProfiler().getOutliers();
+        // Smallest of the largest keys on top, so it is the one a bigger key displaces
+        PriorityQueue<LargeKey> largest = new PriorityQueue<>(Comparator.comparingLong(LargeKey::bytes));
+        List<String> scanned = new ArrayList<>(MEMORY_USAGE_CHUNK);
+        long[] seen = {0};
+        scan(pattern, key -> {
+            seen[0]++;
+            if (sample.size() < sampleSize) {
+                sample.add(key);
+            } else {
+                long slot = ThreadLocalRandom.current().nextLong(seen[0]);
+                if (slot < sampleSize) {
+                    sample.set((int) slot, key);
+                }
+            }
+            scanned.add(key);
+            if (scanned.size() >= MEMORY_USAGE_CHUNK) {
+                trackLargest(scanned, hashes, largest, outliers);
+                scanned.clear();
+            }
+        });
+        trackLargest(scanned, hashes, largest, outliers);
+
+        List<Long> usage = new ArrayList<>(sample.size());
+        for (int from = 0; from < sample.size(); from += MEMORY_USAGE_CHUNK) {
+            usage.addAll(recordService.getMemoryUsage(sample.subList(from, Math.min(from + MEMORY_USAGE_CHUNK, sample.size()))));
+        }
+
+        KeyspaceProfile.Namespace namespace = new KeyspaceProfile.Namespace();
+        namespace.setPattern(pattern);
+        namespace.setKeyCount(seen[0]);
+        namespace.setSampledKeys(sample.size());
+        double mean = usage.stream().mapToLong(Long::longValue).average().orElse(0);
+        namespace.setMeanBytes(mean);
+        namespace.setEstimatedTotalBytes(Math.round(mean * seen[0]));
+
+        // Power-of-two buckets, labelled with their upper bound
+        Map<Long, Long> buckets = new TreeMap<>();
+        for (long bytes : usage) {
+            buckets.merge(bytes <= 1 ? 1L : Long.highestOneBit(bytes - 1) << 1, 1L, Long::sum);
+        }
+        buckets.forEach((bound, count) -> namespace.getHistogram().put("<=" + bound, count));
+
+        namespace.setLargestKeys(largest.stream()
+                .sorted(Comparator.comparingLong(LargeKey::bytes).reversed())
+                .map(key -> new KeyspaceProfile.KeyUsage(key.key(), key.bytes()))
+                .toList());
+        return namespace;
+    }
+
+    /**
+     * Offers a chunk of scanned keys to the top list of largest keys. A string's
+     * footprint grows with its length, so once the list is full only strings longer
+     * than its smallest entry are measured. The size of a hash cannot be told that
+     * cheaply, so hash keys are all measured.
+     */
+    private void trackLargest(List<String> keys, boolean hashes, PriorityQueue<LargeKey> largest, int outliers) {
+        if (keys.isEmpty() || outliers <= 0) {
+            return;
+        }
+        List<Long> lengths = hashes ? Collections.nCopies(keys.size(), 0L) : recordService.getStringLengths(keys);
+        long minLength = largest.size() < outliers || hashes ? -1 : largest.peek().length();
+        List<String> candidates = new ArrayList<>();
+        List<Long> candidateLengths = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (lengths.get(i) > minLength) {
+                candidates.add(keys.get(i));
+                candidateLengths.add(lengths.get(i));
+            }
+        }
+
+        List<Long> usage = recordService.getMemoryUsage(candidates);
+        for (int i = 0; i < candidates.size(); i++) {
+            largest.add(new LargeKey(candidates.get(i), candidateLengths.get(i), usage.get(i)));
+            if (largest.size() > outliers) {
+                largest.poll();
+            }
+        }
+    }
+    /**
+     * Breaks the sampled V2 records down by section, using the serialized size of
+     * each field (name included) as its share.
+     */
+    private void profileSections(List<String> v2Sample, long v2Keys, KeyspaceProfile result) {
+        Map<RecordSection, Long> sectionBytes = new EnumMap<>(RecordSection.class);
+        List<UUID> ids = v2Sample.stream().map(keyLayout::idFromKey).toList();
+        Map<UUID, CustomerRecordV2> records = recordService.getRecordsV2(ids);
+
+        for (CustomerRecordV2 record : records.values()) {
+            fieldCodec.encode(record).forEach((field, value) -> RecordSection.ofField(field).ifPresent(section ->
+                    sectionBytes.merge(section, (long) (field.length() + value.getBytes(StandardCharsets.UTF_8).length), Long::sum)));
+        }
+
+        for (RecordSection section : RecordSection.values()) {
+            double mean = records.isEmpty() ? 0.0 : (double) sectionBytes.getOrDefault(section, 0L) / records.size();
+            result.getSectionMeanBytes().put(section, mean);
+            result.getSectionEstimatedBytes().put(section, Math.round(mean * v2Keys));
+        }
+    }
+
+    private void scan(String pattern, Consumer<String> consumer) {
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(pattern)
+                .count(properties.getProfiler().getScanCount())
+                .build();
+
+        if (keyLayout.isClustered()) {
+            // SCAN only covers a single node, so walk every upstream node separately
+            try (RedisClusterConnection connection = redisTemplate.getRequiredConnectionFactory().getClusterConnection()) {
+                for (RedisClusterNode node : connection.clusterGetNodes()) {
+                    if (!node.isMaster()) {
+                        continue;
+                    }
+                    try (Cursor<byte[]> cursor = connection.scan(node, options)) {
+                        cursor.forEachRemaining(key -> consumer.accept(new String(key, StandardCharsets.UTF_8)));
+                    }
+                }
+            }
+        } else {
+            try (Cursor<String> cursor = redisTemplate.scan(options)) {
+                cursor.forEachRemaining(consumer);
+            }
+        }
+    }
+
+    private boolean holdsHashes(String namespace) {
+        return "v2".equals(namespace) && properties.getStorage().getV2Layout() == LiveMigrateProperties.V2Layout.HASH;
+    }
+
+    private Map<String, String> namespaces() {
+        Map<String, String> namespaces = new LinkedHashMap<>();
+        if (keyLayout.isUnified()) {
+            namespaces.put("records", keyLayout.recordKeyPattern());
+        } else {
+            namespaces.put("v1", keyLayout.v1KeyPattern());
+            namespaces.put("v2", keyLayout.v2KeyPattern());
+        }
+        namespaces.put("stamps", keyLayout.stampKeyPattern());
+        return namespaces;
+    }
+
+    private List<String> trackingKeys() {
+        return List.of(keyLayout.recordIds(), keyLayout.migratedRecords(), keyLayout.changeStream(),
+                keyLayout.hotRecords());
+    }
+
+    private void namespaceGauge(String name, String namespace, ToDoubleFunction<KeyspaceProfile.Namespace> value) {
+        Gauge.builder(name, this, profiler -> {
+                    KeyspaceProfile.Namespace profiled = profiler.profile.getNamespaces().get(namespace);
+                    return profiled != null ? value.applyAsDouble(profiled) : 0.0;
+                })
+                .tag("namespace", namespace)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A key considered for the largest keys, with its length hint and measured size.
+     */
+    private record LargeKey(String key, long length, long bytes) {
+    }
+}
@@ -1,14 +1,21 @@
 package com.livemigrate.component;
 
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.config.RedisWorkload;
 import com.livemigrate.model.*;
 import com.livemigrate.service.RecordService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.time.Instant;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 @Slf4j
 @Component
@@ -25,28 +32,62 @@ public class MigrationCoordinator {
     private final StateTracker stateTracker;
     private final VersionSelector versionSelector;
     private final RecordService recordService;
+    private final ChangeCapture changeCapture;
+    private final BatchCommitter batchCommitter;
+    private final AccessFrequencyTracker accessTracker;
+    private final LiveMigrateProperties properties;
+    private final KeyLayout keyLayout;
+    private final RecordTransformer recordTransformer;
+    private final MigrationJournal journal;
+    private final MigrationFailures failures;
+    private final ThroughputBudget throughputBudget;
 
     // Flag to control migration process
     private final AtomicBoolean migrationInProgress = new AtomicBoolean(false);
+    // Held for the whole of a run; a paused run may still be waiting out a delay
+    private final ReentrantLock runLock = new ReentrantLock();
+
+    private final ExecutorService redriver = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dead-letter-redrive");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Initiates the migration process. This method validates preconditions
      * and sets up the initial state for migration.
      */
     public void startMigration() {
-        if (!migrationInProgress.compareAndSet(false, true)) {
+        if (stateTracker.getState() == MigrationState.ROLLING_BACK) {
+            throw new IllegalStateException("A rollback is in progress");
+        }
+        if (migrationInProgress.get()) {
             throw new IllegalStateException("Migration is already in progress");
         }
-
+        runLock.lock();
         try {
-            stateTracker.setState(MigrationState.PREPARING);
-            log.info("Starting migration process");
-            performMigration();
-        } catch (Exception e) {
-            log.error("Error during migration start", e);
-            stateTracker.setState(MigrationState.ERROR);
-            migrationInProgress.set(false);
-            throw e;
+            if (!migrationInProgress.compareAndSet(false, true)) {
+                throw new IllegalStateException("Migration is already in progress");
+            }
+            if (!throughputBudget.activate(keyLayout.getJob())) {
+                migrationInProgress.set(false);
+                throw new IllegalStateException("The maximum number of concurrent migrations is already running");
+            }
+
+            try {
+                stateTracker.setState(MigrationState.PREPARING);
+                log.info("Starting migration process");
+                performMigration();
+            } catch (Exception e) {
+                log.error("Error during migration start", e);
+                stateTracker.setState(MigrationState.ERROR);
+                migrationInProgress.set(false);
+                throw e;
+            } finally {
+                throughputBudget.deactivate(keyLayout.getJob());
+            }
+        } finally {
+            runLock.unlock();
         }
     }
 
@@ -55,14 +96,25 @@ public class MigrationCoordinator {
      * This method handles the core transformation logic and progress tracking.
      */
     private void performMigration() {
+        // The migration's batches use the backfill connections, away from the proxy's reads
+        RedisWorkload.BACKFILL.run(this::runMigration);
+    }
+
+    private void runMigration() {
         try {
             stateTracker.setState(MigrationState.MIGRATING);
+            Optional<UUID> lastProcessedId = stateTracker.getLastCheckpoint();
+            boolean wasCapturing = changeCapture.isCapturing();
+            changeCapture.start();
+            if (lastProcessedId.isPresent() && !wasCapturing && changeCapture.isCapturing()) {
+                // Nothing recorded V1 writes between the previous run and this one
+                changeCapture.markInterrupted("the migration resumed without change capture running");
+            }
             long totalRecords = recordService.getTotalRecordCount();
             long processedRecords = 0;
 
             log.info("Starting migration with {} total records", totalRecords);
 
-            Optional<UUID> lastProcessedId = stateTracker.getLastCheckpoint();
             if (lastProcessedId.isPresent()) {
                 log.info("Resuming migration from checkpoint: {}", lastProcessedId.get());
                 // Count how many records we've already processed
@@ -70,42 +122,99 @@ public class MigrationCoordinator {
                 log.info("Found {} already processed records", processedRecords);
             } else {
                 log.info("Starting fresh migration");
+                journal.reset();
+                failures.reset();
             }
 
-            Iterator<CustomerRecordV1> recordIterator = recordService.getRecordIterator(lastProcessedId);
+            if (properties.getBackfill().getOrdering() == LiveMigrateProperties.MigrationOrdering.HOT_FIRST) {
+                processedRecords += migrateHotRecords(totalRecords);
+            }
 
-            while (recordIterator.hasNext() && migrationInProgress.get()) {
-                List<CustomerRecordV1> batch = getNextBatch(recordIterator);
+            Iterator<UUID> idIterator = recordService.getRecordIdIterator(lastProcessedId);
+
+            while (idIterator.hasNext() && migrationInProgress.get()) {
+                List<UUID> batch = getNextBatch(idIterator);
+                // Waits for this job's share of the throughput all running migrations share
+                throughputBudget.acquire(keyLayout.getJob(), batch.size());
+
+                // Each V1 record is read together with its version stamp, which the
+                // commit uses to detect foreground writes that land while we transform.
+                // Records migrated out of order (hot records) are skipped, so V2 writes
+                // made since then are not overwritten.
+                List<UUID> unmigrated = versionSelector.filterUnmigrated(batch);
+                Map<UUID, RecordService.StampedRecord> sources = recordService.getStampedRecordsV1(unmigrated);
+                // Failures only take the failing record out of the batch, into the retry queue
+                unmigrated.stream()
+                        .filter(id -> !sources.containsKey(id))
+                        .forEach(id -> failures.recordFailure(id, "sweep", new NoSuchElementException("V1 record not found: " + id)));
                 List<CustomerRecordV2> migratedBatch = new ArrayList<>();
 
                 // Process each record in the batch with a delay
-                for (CustomerRecordV1 record : batch) {
-                    CustomerRecordV2 migratedRecord = migrateRecord(record);
-                    migratedBatch.add(migratedRecord);
-                    log.info("Migrated record: {}", record.getId());
+                for (Map.Entry<UUID, RecordService.StampedRecord> source : sources.entrySet()) {
+                    Optional<CustomerRecordV2> migratedRecord = tryTransform(source.getKey(), source.getValue().record(), "sweep");
+                    if (migratedRecord.isPresent()) {
+                        migratedBatch.add(migratedRecord.get());
+                        log.info("Migrated record: {}", source.getKey());
+                    }
 
                     // Add delay between individual records
                     Thread.sleep(RECORD_DELAY);
                 }
 
-                recordService.saveRecordsV2(migratedBatch);
-                migratedBatch.forEach(record -> versionSelector.markAsMigrated(record.getId()));
+                // V2 data, migrated marks, progress and checkpoint become visible together
+                if (!batch.isEmpty()) {
+                    List<UUID> conflicts = commitBatch(migratedBatch, stamps(sources), totalRecords,
+                            batch.get(batch.size() - 1), !capturesChanges());
+                    Set<UUID> written = new HashSet<>();
+                    migratedBatch.forEach(record -> written.add(record.getId()));
+                    journal.append(batch, migratedAfterCommit(batch, unmigrated, written, conflicts),
+                            processedRecords + batch.size());
+                }
+                retryDueRecords(totalRecords);
 
                 processedRecords += batch.size();
                 double progress = (processedRecords * 100.0) / totalRecords;
-                stateTracker.updateProgress(processedRecords, totalRecords);
 
                 log.info("Processed batch of {} records. Progress: {}/{} ({:.2f}%)",
                         batch.size(), processedRecords, totalRecords, progress);
 
-                if (!batch.isEmpty()) {
-                    stateTracker.saveCheckpoint(batch.get(batch.size() - 1).getId());
-                }
-
                 // Add delay between batches
                 Thread.sleep(BATCH_DELAY);
             }
 
+            if (migrationInProgress.get()) {
+                catchUp(totalRecords);
+            }
+
+            // The change log cannot be trusted after a capture gap, so compare everything instead
+            while (migrationInProgress.get() && changeCapture.consumeInterruption()) {
+                resweep();
+                if (migrationInProgress.get()) {
+                    catchUp(totalRecords);
+                }
+            }
+
+            if (migrationInProgress.get()) {
+                drainRetries(totalRecords);
+            }
+
+            // Without change capture nothing else would upgrade records the sweep left behind
+            if (migrationInProgress.get() && !capturesChanges()) {
+                long remaining = queueUnmigratedRecords();
+                if (remaining > 0) {
+                    log.warn("{} records are still V1 after the sweep, pausing before validation", remaining);
+                    pauseBeforeCutover(remaining + " records are still V1, resume to retry them");
+                }
+            }
+
+            long deadLetters = failures.getDeadLetterCount();
+            if (migrationInProgress.get() && deadLetters > 0) {
+                // Switching to V2 would leave these records behind, so wait until they are re-driven
+                log.warn("{} records could not be migrated, pausing before validation until they are re-driven",
+                        deadLetters);
+                pauseBeforeCutover(deadLetters + " dead-lettered records need to be re-driven");
+            }
+
             if (migrationInProgress.get()) {
                 validateMigration();
             }
@@ -122,168 +231,425 @@ public class MigrationCoordinator {
 
 
     /**
-     * Retrieves the next batch of records for processing.
+     * Migrates the most frequently read records ahead of the sweep, so they stop
+     * paying the V2-then-V1 fallback lookup early in the run. The checkpoint is
+     * left alone; the sweep later skips these records as already migrated.
+     *
+     * @return the number of records migrated
      */
-    private List<CustomerRecordV1> getNextBatch(Iterator<CustomerRecordV1> iterator) {
-        List<CustomerRecordV1> batch = new ArrayList<>();
-        while (iterator.hasNext() && batch.size() < BATCH_SIZE) {
-            batch.add(iterator.next());
+    private long migrateHotRecords(long totalRecords) throws InterruptedException {
+        List<UUID> hotRecords = versionSelector.filterUnmigrated(
+                accessTracker.getHotRecords(properties.getHotRecords().getTopK()));
+        log.info("Migrating {} hot records first", hotRecords.size());
+
+        Iterator<UUID> idIterator = hotRecords.iterator();
+        long migrated = 0;
+        while (idIterator.hasNext() && migrationInProgress.get()) {
+            List<UUID> batch = getNextBatch(idIterator);
+            throughputBudget.acquire(keyLayout.getJob(), batch.size());
+            Map<UUID, RecordService.StampedRecord> sources = recordService.getStampedRecordsV1(batch);
+            List<CustomerRecordV2> migratedBatch = transformAll(sources, "hot-records");
+            commitBatch(migratedBatch, stamps(sources), totalRecords, null, !capturesChanges());
+            migrated += migratedBatch.size();
+
+            Thread.sleep(RECORD_DELAY);
         }
-        return batch;
+        return migrated;
     }
 
     /**
-     * Transforms a batch of V1 records to V2 format.
+     * Replays V1 writes that landed after the sweep passed a record. Runs in batches
+     * until the change log lag drops below the configured threshold, so the remaining
+     * work at cutover is proportional to recent writes rather than to the dataset.
      */
-    private List<CustomerRecordV2> migrateBatch(List<CustomerRecordV1> batch) {
-        return batch.stream()
-                .map(this::migrateRecord)
-                .toList();
+    private void catchUp(long totalRecords) throws InterruptedException {
+        stateTracker.setState(MigrationState.CATCHING_UP);
+        LiveMigrateProperties.CatchUp config = properties.getCatchUp();
+
+        int batches = 0;
+        long lag = changeCapture.getLag();
+        log.info("Starting catch-up with {} pending changes", lag);
+
+        while (lag > config.getLagThreshold() && batches < config.getMaxBatches() && migrationInProgress.get()) {
+            ChangeCapture.DirtyBatch batch = changeCapture.nextDirtyBatch(config.getBatchSize());
+            throughputBudget.acquire(keyLayout.getJob(), batch.recordIds().size());
+            replayChanges(batch, totalRecords);
+            batches++;
+            lag = changeCapture.getLag();
+            log.info("Catch-up batch {} done, remaining lag: {}", batches, lag);
+
+            Thread.sleep(RECORD_DELAY);
+        }
+
+        if (lag > config.getLagThreshold()) {
+            log.warn("Catch-up stopped after {} batches with lag {} above threshold {}",
+                    batches, lag, config.getLagThreshold());
+        }
     }
 
     /**
-     * Transforms a single record from V1 to V2 format.
-     * This method handles the actual schema evolution logic.
+     * Compares every migrated record with its V1 source and refreshes the V2 copies
+     * that differ. Used instead of the change log when change capture may have
+     * missed writes, e.g. while its subscription was reconnecting.
      */
-    private CustomerRecordV2 migrateRecord(CustomerRecordV1 v1Record) {
-        CustomerRecordV2 v2Record = new CustomerRecordV2();
-        Instant now = Instant.now();
-
-        // Copy existing fields
-        v2Record.setId(v1Record.getId());
-        v2Record.setCreatedAt(v1Record.getCreatedAt());
-        v2Record.setCustomerData(v1Record.getCustomerData());
-        v2Record.setChecksum(v1Record.getChecksum());
-
-        // Set basic V2 fields
-        v2Record.setVersion((short) 2);
-        v2Record.setLastModified(now);
-
-        // Create and populate metadata
-        RecordMetadata metadata = new RecordMetadata();
-
-        // Migration tracking
-        metadata.setSource("migration");
-        metadata.setMigratedAt(now);
-        metadata.setMigratedBy("system-migration-v1-to-v2");
-        metadata.setMigrationBatch(UUID.randomUUID().toString());  // Unique batch identifier
+    private void resweep() throws InterruptedException {
+        stateTracker.setState(MigrationState.CATCHING_UP);
+        log.warn("Change capture was interrupted, re-sweeping migrated records");
+
+        Iterator<UUID> idIterator = recordService.getRecordIdIterator(Optional.empty());
+        long refreshed = 0;
+        while (idIterator.hasNext() && migrationInProgress.get()) {
+            List<UUID> batch = getNextBatch(idIterator);
+            throughputBudget.acquire(keyLayout.getJob(), batch.size());
+
+            // Unmigrated records are still owned by the retry queue
+            Set<UUID> unmigrated = new HashSet<>(versionSelector.filterUnmigrated(batch));
+            List<UUID> migrated = batch.stream().filter(id -> !unmigrated.contains(id)).toList();
+            Map<UUID, CustomerRecordV1> sources = recordService.getRecordsV1(migrated);
+            Map<UUID, CustomerRecordV2> copies = recordService.getRecordsV2(migrated);
+
+            for (Map.Entry<UUID, CustomerRecordV1> source : sources.entrySet()) {
+                CustomerRecordV2 copy = copies.get(source.getKey());
+                if (copy != null && copy.getChecksum() == source.getValue().getChecksum()
+                        && Objects.equals(copy.getCustomerData(), source.getValue().getCustomerData())) {
+                    continue;
+                }
+                try {
+                    refreshRecord(source.getKey(), source.getValue());
+                    refreshed++;
+                } catch (RuntimeException e) {
+                    failures.recordFailure(source.getKey(), "resweep", e);
+                }
+            }
 
-        // Data quality assessment
-        metadata.setProfileCompleteness(calculateProfileCompleteness(v1Record));
-        metadata.setMissingFields(identifyMissingFields(v1Record));
-        metadata.setValidationStatus(performDataValidation(v1Record));
+            Thread.sleep(RECORD_DELAY);
+        }
+        log.info("Re-sweep refreshed {} records", refreshed);
+    }
 
-        // Initialize privacy and compliance settings
-        metadata.setConsentSettings(initializeConsentSettings());
-        metadata.setLastConsentUpdate(v1Record.getCreatedAt());  // Use creation date as initial consent
-        metadata.setDataRegion("default-region");
-        metadata.setAppliedPolicies(List.of("standard-retention", "gdpr-compliance"));
+    /**
+     * Queues every record that is still stored as V1 for retry. Only used in the
+     * unified layout, where a record's type says whether it was upgraded.
+     *
+     * @return the number of records queued
+     */
+    private long queueUnmigratedRecords() throws InterruptedException {
+        Iterator<UUID> idIterator = recordService.getRecordIdIterator(Optional.empty());
+        long queued = 0;
+        while (idIterator.hasNext() && migrationInProgress.get()) {
+            List<UUID> batch = getNextBatch(idIterator);
+            throughputBudget.acquire(keyLayout.getJob(), batch.size());
+            for (UUID id : recordService.getRecordsV1(batch).keySet()) {
+                failures.recordFailure(id, "cutover", new IllegalStateException("Record is still V1 after the sweep"));
+                queued++;
+            }
+        }
+        return queued;
+    }
 
-        // Set up communication preferences
-        metadata.setCommunicationPreferences(initializeCommunicationPreferences(v1Record));
+    /**
+     * Whether writes the sweep missed are replayed from the change log. A unified
+     * record is upgraded in place, so there is no change capture to fall back on.
+     */
+    private boolean capturesChanges() {
+        return !keyLayout.isUnified();
+    }
 
-        // Initialize access history
-        metadata.setRecentAccesses(new ArrayList<>());
-        metadata.setAccessCount(0);
-        metadata.setLastAccessTime(now);
+    /**
+     * Retries failed records until each has been migrated or dead-lettered, waiting
+     * for the backoff of records that are not due yet.
+     */
+    private void drainRetries(long totalRecords) throws InterruptedException {
+        long pending = failures.getPendingRetryCount();
+        if (pending > 0) {
+            log.info("Retrying {} failed records", pending);
+        }
+        while (failures.getPendingRetryCount() > 0 && migrationInProgress.get()) {
+            if (retryDueRecords(totalRecords) == 0) {
+                Thread.sleep(RECORD_DELAY);
+            }
+        }
+    }
 
-        // Analyze and set business metrics
-        metadata.setCustomerSegment(determineCustomerSegment(v1Record));
-        metadata.setLifetimeValue(0.0);  // Initialize with default
-        metadata.setAccountStatus("active");
-        metadata.setSubscribedServices(new ArrayList<>());
+    /**
+     * Makes another attempt at the failed records that are due. Records already
+     * migrated (failed during catch-up) get their V1-sourced fields refreshed, the
+     * others are migrated like in the sweep. Records deleted meanwhile are dropped.
+     *
+     * @return the number of records attempted
+     */
+    private int retryDueRecords(long totalRecords) throws InterruptedException {
+        List<UUID> due = failures.getDueRetries(properties.getFailures().getRetryBatchSize());
+        if (due.isEmpty()) {
+            return 0;
+        }
+        throughputBudget.acquire(keyLayout.getJob(), due.size());
+
+        Map<UUID, RecordService.StampedRecord> sources = recordService.getStampedRecordsV1(due);
+        Set<UUID> unmigrated = new HashSet<>(versionSelector.filterUnmigrated(due));
+        Map<UUID, RecordService.StampedRecord> pending = new LinkedHashMap<>();
+        List<UUID> resolved = new ArrayList<>();
+
+        for (UUID id : due) {
+            RecordService.StampedRecord source = sources.get(id);
+            try {
+                if (source == null) {
+                    // A unified record may have been upgraded in place by a V2 write meanwhile
+                    if (recordService.recordExists(id)
+                            && !(keyLayout.isUnified() && recordService.getRecordV2(id).isPresent())) {
+                        throw new NoSuchElementException("V1 record not found: " + id);
+                    }
+                    resolved.add(id);
+                } else if (unmigrated.contains(id)) {
+                    pending.put(id, source);
+                } else {
+                    refreshRecord(id, source.record());
+                    resolved.add(id);
+                }
+            } catch (RuntimeException e) {
+                failures.recordFailure(id, "retry", e);
+            }
+        }
 
-        v2Record.setMetadata(metadata);
-        return v2Record;
+        List<CustomerRecordV2> migrated = transformAll(pending, "retry");
+        if (!migrated.isEmpty()) {
+            // Catch-up may already be over, so records that keep conflicting stay queued
+            Set<UUID> conflicts = new HashSet<>(commitBatch(migrated, stamps(pending), totalRecords, null, true));
+            migrated.stream()
+                    .map(CustomerRecordV2::getId)
+                    .filter(id -> !conflicts.contains(id))
+                    .forEach(resolved::add);
+        }
+        failures.resolve(resolved);
+        return due.size();
     }
 
-    private double calculateProfileCompleteness(CustomerRecordV1 record) {
-        int totalFields = 3;  // name, email, phone
-        int filledFields = 0;
+    /**
+     * Puts dead-lettered records back into the retry queue. A running or resumed
+     * migration picks them up; after cutover nothing would, so they are retried
+     * in the background.
+     *
+     * @param ids the records to re-drive, or all dead letters if empty
+     * @return the number of records re-driven
+     */
+    public int redriveDeadLetters(List<UUID> ids) {
+        int redriven = failures.redrive(ids);
+        if (!migrationInProgress.get() && stateTracker.getState() == MigrationState.COMPLETED) {
+            redriver.submit(() -> RedisWorkload.BACKFILL.run(this::retryAfterCutover));
+        }
+        return redriven;
+    }
 
-        CustomerData data = record.getCustomerData();
-        if (data.getName() != null && !data.getName().isEmpty()) filledFields++;
-        if (data.getEmail() != null && !data.getEmail().isEmpty()) filledFields++;
-        if (data.getPhone() != null && !data.getPhone().isEmpty()) filledFields++;
+    /**
+     * Retries the due records after cutover. Holds the run lock, so no migration
+     * starts or resumes meanwhile, and stops as soon as the state leaves COMPLETED,
+     * e.g. for a rollback.
+     */
+    private void retryAfterCutover() {
+        runLock.lock();
+        try {
+            long totalRecords = recordService.getTotalRecordCount();
+            int attempted;
+            do {
+                if (migrationInProgress.get() || stateTracker.getState() != MigrationState.COMPLETED) {
+                    return;
+                }
+                // Records failing again are scheduled for later, which ends the loop
+                attempted = retryDueRecords(totalRecords);
+            } while (attempted > 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Error retrying re-driven dead letters", e);
+        } finally {
+            runLock.unlock();
+        }
+    }
 
-        return (filledFields * 100.0) / totalFields;
+    /**
+     * Drains whatever is left in the change log. Called once writes to V1 no longer
+     * need to be tracked, right before the switch to V2. Gives up after the drain
+     * timeout, so a write burst at cutover cannot hold the switch open indefinitely.
+     *
+     * @return true if the change log was drained
+     */
+    private boolean drainChanges() throws InterruptedException {
+        long deadline = System.nanoTime() + properties.getCatchUp().getDrainTimeout().toNanos();
+        long totalRecords = recordService.getTotalRecordCount();
+        ChangeCapture.DirtyBatch batch = changeCapture.nextDirtyBatch(properties.getCatchUp().getBatchSize());
+        while (!batch.isEmpty()) {
+            if (System.nanoTime() - deadline > 0) {
+                log.warn("Change log not drained within {}, {} changes left",
+                        properties.getCatchUp().getDrainTimeout(), changeCapture.getLag());
+                return false;
+            }
+            throughputBudget.acquire(keyLayout.getJob(), batch.recordIds().size());
+            replayChanges(batch, totalRecords);
+            batch = changeCapture.nextDirtyBatch(properties.getCatchUp().getBatchSize());
+        }
+        return true;
     }
 
-    private List<String> identifyMissingFields(CustomerRecordV1 record) {
-        List<String> missing = new ArrayList<>();
-        CustomerData data = record.getCustomerData();
+    /**
+     * Brings the V2 copies of a set of dirty records up to date with their V1 source.
+     * The records are read in one round trip and committed like a sweep batch, so a
+     * record is only marked as migrated once its V2 copy is written, and a foreground
+     * write that lands meanwhile is re-read instead of overwritten.
+     */
+    private void replayChanges(ChangeCapture.DirtyBatch batch, long totalRecords) {
+        Map<UUID, RecordService.StampedRecord> sources = recordService.getStampedRecordsV1(batch.recordIds());
+
+        for (UUID recordId : batch.recordIds()) {
+            if (!sources.containsKey(recordId)) {
+                try {
+                    // The V1 record was deleted after it was migrated, so drop the V2 copy too
+                    recordService.deleteRecord(recordId);
+                } catch (RuntimeException e) {
+                    failures.recordFailure(recordId, "catch-up", e);
+                }
+            }
+        }
 
-        if (data.getName() == null || data.getName().isEmpty()) missing.add("name");
-        if (data.getEmail() == null || data.getEmail().isEmpty()) missing.add("email");
-        if (data.getPhone() == null || data.getPhone().isEmpty()) missing.add("phone");
+        try {
+            // The change is acknowledged with the batch, so lasting conflicts go to the retry queue
+            commitBatch(replayAll(sources), stamps(sources), totalRecords, null, true, this::replayAll);
+        } catch (RuntimeException e) {
+            // The retry re-reads the current V1 record
+            sources.keySet().forEach(id -> failures.recordFailure(id, "catch-up", e));
+        }
+        changeCapture.acknowledge(batch);
+    }
 
-        return missing;
+    /**
+     * Builds the V2 records a replay writes. An existing copy keeps its V2-only fields
+     * and only gets the fields sourced from V1 refreshed; records without one are
+     * migrated like in the sweep.
+     */
+    private List<CustomerRecordV2> replayAll(Map<UUID, RecordService.StampedRecord> sources) {
+        // Read after the stamps, so a V2 write this misses shows up as a conflict
+        Map<UUID, CustomerRecordV2> copies = recordService.getRecordsV2(new ArrayList<>(sources.keySet()));
+        List<CustomerRecordV2> replayed = new ArrayList<>();
+        sources.forEach((id, source) -> {
+            CustomerRecordV2 copy = copies.get(id);
+            if (copy != null) {
+                replayed.add(recordTransformer.refresh(copy, source.record()));
+            } else {
+                tryTransform(id, source.record(), "catch-up").ifPresent(replayed::add);
+            }
+        });
+        return replayed;
     }
 
-    private Map<String, Boolean> performDataValidation(CustomerRecordV1 record) {
-        Map<String, Boolean> validations = new HashMap<>();
-        CustomerData data = record.getCustomerData();
+    /**
+     * Brings a single already migrated record up to date with its V1 source.
+     */
+    private void refreshRecord(UUID id, CustomerRecordV1 v1Record) {
+        if (!recordService.patchRecordV2(id, recordTransformer.v1SourcedFields(v1Record))) {
+            recordService.saveRecordsV2(List.of(recordTransformer.transform(v1Record)));
+        }
+        versionSelector.markAsMigrated(id);
+    }
 
-        // Email validation
-        validations.put("validEmail",
-                data.getEmail() != null && data.getEmail().matches("^[A-Za-z0-9+_.-]+@(.+)$"));
 
-        // Phone number validation
-        validations.put("validPhone",
-                data.getPhone() != null && data.getPhone().matches("\\(\\d{3}\\) \\d{3}-\\d{4}"));
+    /**
+     * Commits a batch and re-migrates the records the foreground wrote while the
+     * batch was being transformed. Only those records are read and transformed
+     * again; whatever still conflicts after the configured number of retries is
+     * either left to the catch-up stage, which replays it from the change log, or
+     * queued for retry.
+     *
+     * @param queueConflicts whether lasting conflicts go to the retry queue, for when
+     *                       no catch-up will pick them up
+     * @return the IDs that still conflicted after the last retry
+     */
+    private List<UUID> commitBatch(List<CustomerRecordV2> records, Map<UUID, Long> stamps,
+                                   long totalRecords, UUID checkpoint, boolean queueConflicts) {
+        return commitBatch(records, stamps, totalRecords, checkpoint, queueConflicts,
+                sources -> transformAll(sources, "conflict-retry"));
+    }
 
-        // Name validation
-        validations.put("validName",
-                data.getName() != null && data.getName().split("\\s+").length >= 2);
+    /**
+     * Like {@link #commitBatch(List, Map, long, UUID, boolean)}, with the conflicting
+     * records rebuilt from their re-read sources by the given function.
+     */
+    private List<UUID> commitBatch(List<CustomerRecordV2> records, Map<UUID, Long> stamps,
+                                   long totalRecords, UUID checkpoint, boolean queueConflicts,
+                                   Function<Map<UUID, RecordService.StampedRecord>, List<CustomerRecordV2>> rebuild) {
+        List<UUID> conflicts = batchCommitter.commit(records, stamps, totalRecords, checkpoint);
+
+        int retries = 0;
+        while (!conflicts.isEmpty() && retries < properties.getBackfill().getMaxConflictRetries()) {
+            retries++;
+            log.info("{} records were written during migration, re-migrating (attempt {})", conflicts.size(), retries);
+
+            Map<UUID, RecordService.StampedRecord> sources = recordService.getStampedRecordsV1(conflicts);
+            List<CustomerRecordV2> retried = rebuild.apply(sources);
+            conflicts = batchCommitter.commit(retried, stamps(sources), totalRecords, checkpoint);
+        }
 
-        return validations;
+        if (!conflicts.isEmpty() && queueConflicts) {
+            log.warn("Records {} kept changing during migration, queueing them for retry", conflicts);
+            conflicts.forEach(id -> failures.recordFailure(id, "conflict",
+                    new IllegalStateException("Record kept changing during migration")));
+        } else if (!conflicts.isEmpty()) {
+            log.warn("Records {} kept changing during migration, leaving them to catch-up", conflicts);
+        }
+        return conflicts;
     }
 
-    private Map<String, Boolean> initializeConsentSettings() {
-        Map<String, Boolean> consent = new HashMap<>();
-        consent.put("marketing", false);
-        consent.put("analytics", true);
-        consent.put("thirdParty", false);
-        return consent;
+    /**
+     * IDs of a sweep batch that are migrated once it is committed: those migrated
+     * before (e.g. as hot records) plus those written without a lasting conflict.
+     */
+    private static List<UUID> migratedAfterCommit(List<UUID> batch, List<UUID> unmigrated,
+                                                  Set<UUID> written, List<UUID> conflicts) {
+        Set<UUID> pending = new HashSet<>(unmigrated);
+        Set<UUID> conflicting = new HashSet<>(conflicts);
+        return batch.stream()
+                .filter(id -> !pending.contains(id) || (written.contains(id) && !conflicting.contains(id)))
+                .toList();
     }
 
-    private Map<String, CommunicationChannel> initializeCommunicationPreferences(CustomerRecordV1 record) {
-        Map<String, CommunicationChannel> prefs = new HashMap<>();
-
-        // Initialize email preferences
-        CommunicationChannel email = new CommunicationChannel();
-        email.setEnabled(true);
-        email.setPreferredTime("morning");
-        email.setFrequency("weekly");
-        email.setLastContact(record.getCreatedAt());
-        email.setHasOptedOut(false);
-        prefs.put("email", email);
-
-        // Initialize SMS preferences
-        CommunicationChannel sms = new CommunicationChannel();
-        sms.setEnabled(true);
-        sms.setPreferredTime("afternoon");
-        sms.setFrequency("weekly");
-        sms.setLastContact(record.getCreatedAt());
-        sms.setHasOptedOut(false);
-        prefs.put("sms", sms);
+    private static Map<UUID, Long> stamps(Map<UUID, RecordService.StampedRecord> sources) {
+        Map<UUID, Long> stamps = new HashMap<>();
+        sources.forEach((id, source) -> stamps.put(id, source.stamp()));
+        return stamps;
+    }
 
-        return prefs;
+    /**
+     * Retrieves the next batch of record IDs for processing.
+     */
+    private List<UUID> getNextBatch(Iterator<UUID> iterator) {
+        List<UUID> batch = new ArrayList<>();
+        while (iterator.hasNext() && batch.size() < BATCH_SIZE) {
+            batch.add(iterator.next());
+        }
+        return batch;
     }
 
-    private String determineCustomerSegment(CustomerRecordV1 record) {
-        // Simple segmentation based on email domain
-        String email = record.getCustomerData().getEmail().toLowerCase();
-        if (email.endsWith("gmail.com")) return "consumer";
-        if (email.endsWith("yahoo.com")) return "consumer";
-        return "business";
+    /**
+     * Transforms a batch of V1 records to V2 format. Records that fail to transform
+     * are left out and queued for a retry.
+     */
+    private List<CustomerRecordV2> transformAll(Map<UUID, RecordService.StampedRecord> sources, String stage) {
+        List<CustomerRecordV2> migrated = new ArrayList<>();
+        sources.forEach((id, source) -> tryTransform(id, source.record(), stage).ifPresent(migrated::add));
+        return migrated;
     }
 
+    private Optional<CustomerRecordV2> tryTransform(UUID id, CustomerRecordV1 record, String stage) {
+        try {
+            return Optional.of(recordTransformer.transform(record));
+        } catch (RuntimeException e) {
+            failures.recordFailure(id, stage, e);
+            return Optional.empty();
+        }
+    }
 
     /**
      * Validates the completed migration by performing consistency checks.
      */
-    private void validateMigration() {
+    private void validateMigration() throws InterruptedException {
         stateTracker.setState(MigrationState.VALIDATING);
 
         try {
@@ -292,11 +658,20 @@ public class MigrationCoordinator {
 
             if (validationSuccess) {
                 stateTracker.setState(MigrationState.SWITCHING);
-                completeMigration();
+                if (!drainChanges()) {
+                    pauseBeforeCutover("The change log did not drain within "
+                            + properties.getCatchUp().getDrainTimeout() + ", resume to catch up again");
+                } else if (changeCapture.isInterrupted()) {
+                    pauseBeforeCutover("Change capture was interrupted during cutover, resume to re-sweep");
+                } else {
+                    completeMigration();
+                }
             } else {
                 stateTracker.setState(MigrationState.ERROR);
                 throw new RuntimeException("Migration validation failed");
             }
+        } catch (InterruptedException e) {
+            throw e;
 
         } catch (Exception e) {
             log.error("Error during migration validation", e);
@@ -317,34 +692,207 @@ public class MigrationCoordinator {
         return true; // Simplified for prototype
     }
 
+    /**
+     * Stops the run short of cutover until an operator resumes it.
+     */
+    private void pauseBeforeCutover(String reason) {
+        migrationInProgress.set(false);
+        stateTracker.setPauseReason(reason);
+        stateTracker.setState(MigrationState.PAUSED);
+    }
+
     /**
      * Completes the migration process and performs cleanup.
      */
     private void completeMigration() {
         stateTracker.setState(MigrationState.COMPLETED);
+        stateTracker.markCompleted();
+        journal.reset();
+        changeCapture.stop();
+        changeCapture.reset();
         migrationInProgress.set(false);
         log.info("Migration process completed successfully");
     }
 
+    /**
+     * Estimates the cost of a migration without writing anything. A random sample
+     * of V1 records is run through the real transform and serializer, and the
+     * measurements are extrapolated to the records that are not migrated yet.
+     * Can be run at any time, including while a migration is in progress.
+     */
+    public DryRunReport dryRun(int sampleSize) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size must be positive");
+        }
+        long totalRecords = recordService.getTotalRecordCount();
+        long remainingRecords = Math.max(0, totalRecords - versionSelector.getProcessedCount());
+        List<UUID> sampleIds = recordService.sampleRecordIds(sampleSize);
+
+        // Read in sweep-sized batches, which also measures the round trip of one batch
+        Map<UUID, CustomerRecordV1> sample = new LinkedHashMap<>();
+        long readNanos = 0;
+        int batches = 0;
+        for (int from = 0; from < sampleIds.size(); from += BATCH_SIZE) {
+            long start = System.nanoTime();
+            sample.putAll(recordService.getRecordsV1(sampleIds.subList(from, Math.min(from + BATCH_SIZE, sampleIds.size()))));
+            readNanos += System.nanoTime() - start;
+            batches++;
+        }
+        if (sample.isEmpty()) {
+            throw new IllegalStateException("No V1 records available to sample");
+        }
+
+        long[] transformNanos = new long[sample.size()];
+        long v1Bytes = 0;
+        long v2Bytes = 0;
+        Map<String, Integer> validationFailures = new TreeMap<>();
+        Map<String, Integer> missingFields = new TreeMap<>();
+        int i = 0;
+        for (CustomerRecordV1 record : sample.values()) {
+            long start = System.nanoTime();
+            CustomerRecordV2 migrated = recordTransformer.transform(record);
+            transformNanos[i++] = System.nanoTime() - start;
+
+            v1Bytes += recordService.serializedSizeV1(record);
+            v2Bytes += recordService.serializedSizeV2(migrated);
+            migrated.getMetadata().getValidationStatus().forEach((check, passed) ->
+                    validationFailures.merge(check, passed ? 0 : 1, Integer::sum));
+            migrated.getMetadata().getMissingFields().forEach(field -> missingFields.merge(field, 1, Integer::sum));
+        }
+        Arrays.sort(transformNanos);
+
+        long v1Memory = recordService.getMemoryUsage(sample.keySet().stream().map(keyLayout::v1Key).toList())
+                .stream().mapToLong(Long::longValue).sum();
+
+        int n = sample.size();
+        DryRunReport report = new DryRunReport();
+        report.setTotalRecords(totalRecords);
+        report.setRemainingRecords(remainingRecords);
+        report.setSampleSize(n);
+        // Worst case p = 0.5, with finite population correction
+        double correction = totalRecords > 1 ? Math.sqrt((double) (totalRecords - n) / (totalRecords - 1)) : 0.0;
+        report.setMarginOfError(1.96 * Math.sqrt(0.25 / n) * correction);
+
+        double meanNanos = Arrays.stream(transformNanos).average().orElse(0);
+        report.setTransformMeanMicros(meanNanos / 1_000);
+        report.setTransformP50Micros(percentile(transformNanos, 0.50) / 1_000.0);
+        report.setTransformP95Micros(percentile(transformNanos, 0.95) / 1_000.0);
+        report.setTransformP99Micros(percentile(transformNanos, 0.99) / 1_000.0);
+
+        report.setV1MeanBytes((double) v1Bytes / n);
+        report.setV2MeanBytes((double) v2Bytes / n);
+        report.setSizeGrowthRatio(v1Bytes > 0 ? (double) v2Bytes / v1Bytes : 0.0);
+        report.setV1MeanMemoryBytes((double) v1Memory / n);
+        // V1 data stays in place until reclamation, so every remaining record adds a
+        // V2 key whose footprint scales with its serialized size
+        report.setProjectedMemoryGrowthBytes(
+                Math.round(report.getV1MeanMemoryBytes() * report.getSizeGrowthRatio() * remainingRecords));
+
+        // The sweep runs one record at a time with fixed pacing; a commit round trip
+        // is assumed to cost about as much as the batch read measured above
+        long batchOverheadNanos = BATCH_DELAY * 1_000_000L + readNanos / Math.max(1, batches);
+        long remainingBatches = (remainingRecords + BATCH_SIZE - 1) / BATCH_SIZE;
+        double perRecordNanos = meanNanos + RECORD_DELAY * 1_000_000.0;
+        report.setProjectedDuration(Duration.ofNanos(
+                Math.round(remainingRecords * perRecordNanos) + remainingBatches * batchOverheadNanos));
+
+        Map<String, Double> failureRates = new LinkedHashMap<>();
+        validationFailures.forEach((check, failures) -> failureRates.put(check, (double) failures / n));
+        report.setValidationFailureRates(failureRates);
+        Map<String, Double> missingRates = new LinkedHashMap<>();
+        missingFields.forEach((field, count) -> missingRates.put(field, (double) count / n));
+        report.setMissingFieldRates(missingRates);
+
+        log.info("Dry run over {} sampled records: projected duration {}, projected memory growth {} bytes",
+                n, report.getProjectedDuration(), report.getProjectedMemoryGrowthBytes());
+        return report;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    /**
+     * Returns the rate the live sweep is paced at, in records per second. Redis round
+     * trips come on top, so this is an upper bound for the live path.
+     */
+    public double getPacedRecordsPerSecond() {
+        return BATCH_SIZE * 1000.0 / (BATCH_SIZE * RECORD_DELAY + BATCH_DELAY);
+    }
+
+    public boolean isMigrationInProgress() {
+        return migrationInProgress.get();
+    }
+
+    /**
+     * Runs a task that writes V2 without stamp checks, e.g. an offline migration,
+     * holding the run lock so no live run starts or resumes meanwhile. Fails right
+     * away instead of waiting if a live run or another such task holds the lock.
+     */
+    public <E extends Exception> void runExclusive(RedisWorkload.Task<E> task) throws E {
+        if (!runLock.tryLock()) {
+            throw new IllegalStateException("A live migration is in progress");
+        }
+        try {
+            if (migrationInProgress.get()) {
+                throw new IllegalStateException("A live migration is in progress");
+            }
+            task.run();
+        } finally {
+            runLock.unlock();
+        }
+    }
+
     /**
      * Pauses the ongoing migration process.
      */
     public void pauseMigration() {
+        pauseMigration("Paused by request");
+    }
+
+    /**
+     * Pauses the ongoing migration process, recording why it was paused.
+     *
+     * @return false if no migration was running
+     */
+    public boolean pauseMigration(String reason) {
         if (migrationInProgress.get()) {
             migrationInProgress.set(false);
+            stateTracker.setPauseReason(reason);
             stateTracker.setState(MigrationState.PAUSED);
-            log.info("Migration process paused");
+            log.info("Migration process paused: {}", reason);
+            return true;
         }
+        return false;
     }
 
     /**
-     * Resumes a paused migration process.
+     * Resumes a paused migration process. Waits for the paused run to exit first,
+     * so two runs never sweep at the same time.
      */
     public void resumeMigration() {
-        if (stateTracker.getState() == MigrationState.PAUSED) {
+        if (stateTracker.getState() != MigrationState.PAUSED) {
+            return;
+        }
+        runLock.lock();
+        try {
+            // Another resume may have got here first
+            if (stateTracker.getState() != MigrationState.PAUSED || migrationInProgress.get()) {
+                return;
+            }
+            if (!throughputBudget.activate(keyLayout.getJob())) {
+                throw new IllegalStateException("The maximum number of concurrent migrations is already running");
+            }
             migrationInProgress.set(true);
-            performMigration();
+            stateTracker.clearPauseReason();
+            try {
+                performMigration();
+            } finally {
+                throughputBudget.deactivate(keyLayout.getJob());
+            }
             log.info("Migration process resumed");
+        } finally {
+            runLock.unlock();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,206 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.model.DeadLetter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps records whose migration failed out of the way of the rest of the batch.
+ *
+ * A failed record goes to a retry queue, a sorted set scored by the time of its
+ * next attempt, with an exponential backoff between attempts. Once it has failed
+ * the configured number of times it is moved to the dead-letter store together
+ * with the cause, where it stays until it is re-driven, e.g. after the source
+ * data has been fixed.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MigrationFailures {
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final KeyLayout keyLayout;
+    private final LiveMigrateProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private Counter retriedCounter;
+    private Counter deadLetteredCounter;
+    private Counter recoveredCounter;
+    private Counter redrivenCounter;
+
+    @PostConstruct
+    void registerMetrics() {
+        retriedCounter = failureCounter("retry");
+        deadLetteredCounter = failureCounter("dead_letter");
+        recoveredCounter = Counter.builder("migration.record.recovered")
+                .description("Failed records that were migrated by a later attempt")
+                .register(meterRegistry);
+        redrivenCounter = Counter.builder("migration.dead_letters.redriven")
+                .description("Dead-lettered records put back into the retry queue")
+                .register(meterRegistry);
+        Gauge.builder("migration.retry.queue.size", this, MigrationFailures::getPendingRetryCount)
+                .description("Failed records waiting for their next attempt")
+                .register(meterRegistry);
+        Gauge.builder("migration.dead_letters", this, MigrationFailures::getDeadLetterCount)
+                .description("Records the migration gave up on")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records a failed attempt to migrate a record, and schedules the next attempt
+     * or dead-letters the record if it has no attempts left.
+     *
+     * @param stage the migration stage the attempt was made in
+     */
+    public void recordFailure(UUID id, String stage, Throwable cause) {
+        LiveMigrateProperties.Failures config = properties.getFailures();
+        Long attempts = redisTemplate.opsForHash().increment(keyLayout.retryAttempts(), id.toString(), 1);
+        int attempt = attempts != null ? attempts.intValue() : 1;
+
+        if (attempt < config.getMaxAttempts()) {
+            Duration backoff = backoff(attempt);
+            redisTemplate.opsForZSet().add(keyLayout.retryQueue(), id.toString(),
+                    Instant.now().plus(backoff).toEpochMilli());
+            retriedCounter.increment();
+            log.warn("Migrating record {} failed during {} (attempt {}), retrying in {}: {}",
+                    id, stage, attempt, backoff, cause.toString());
+            return;
+        }
+
+        DeadLetter deadLetter = new DeadLetter();
+        deadLetter.setId(id);
+        deadLetter.setStage(stage);
+        deadLetter.setCause(cause.toString());
+        deadLetter.setAttempts(attempt);
+        deadLetter.setFailedAt(Instant.now());
+        redisTemplate.opsForHash().put(keyLayout.deadLetters(), id.toString(), deadLetter);
+        redisTemplate.opsForZSet().remove(keyLayout.retryQueue(), id.toString());
+        redisTemplate.opsForHash().delete(keyLayout.retryAttempts(), id.toString());
+        deadLetteredCounter.increment();
+        log.error("Giving up on record {} after {} attempts, moved to dead letters", id, attempt, cause);
+    }
+
+    /**
+     * Removes records that have been migrated from the retry queue.
+     */
+    public void resolve(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Object[] members = ids.stream().map(UUID::toString).toArray();
+        Long removed = redisTemplate.opsForZSet().remove(keyLayout.retryQueue(), members);
+        redisTemplate.opsForHash().delete(keyLayout.retryAttempts(), members);
+        if (removed != null) {
+            recoveredCounter.increment(removed);
+        }
+    }
+
+    /**
+     * Returns up to limit records whose next attempt is due, earliest first.
+     */
+    public List<UUID> getDueRetries(int limit) {
+        Set<Object> due = redisTemplate.opsForZSet().rangeByScore(
+                keyLayout.retryQueue(), 0, Instant.now().toEpochMilli(), 0, limit);
+        return due == null ? List.of() : due.stream().map(id -> UUID.fromString(id.toString())).toList();
+    }
+
+    public long getPendingRetryCount() {
+        Long size = redisTemplate.opsForZSet().size(keyLayout.retryQueue());
+        return size != null ? size : 0L;
+    }
+
+    public long getDeadLetterCount() {
+        Long size = redisTemplate.opsForHash().size(keyLayout.deadLetters());
+        return size != null ? size : 0L;
+    }
+
+    /**
+     * Returns up to limit dead letters, in no particular order.
+     */
+    public List<DeadLetter> getDeadLetters(int limit) {
+        List<DeadLetter> deadLetters = new ArrayList<>();
+        try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(
+                keyLayout.deadLetters(), ScanOptions.scanOptions().count(Math.min(limit, 1000)).build())) {
+            while (cursor.hasNext() && deadLetters.size() < limit) {
+                deadLetters.add((DeadLetter) cursor.next().getValue());
+            }
+        }
+        return deadLetters;
+    }
+
+    /**
+     * Puts dead-lettered records back into the retry queue, due immediately and with
+     * a fresh set of attempts.
+     *
+     * @param ids the records to re-drive, or all dead letters if empty
+     * @return the number of records re-driven
+     */
+    public int redrive(Collection<UUID> ids) {
+        List<Object> members = new ArrayList<>();
+        if (ids.isEmpty()) {
+            members.addAll(redisTemplate.opsForHash().keys(keyLayout.deadLetters()));
+        } else {
+            ids.forEach(id -> members.add(id.toString()));
+        }
+
+        int redriven = 0;
+        long now = Instant.now().toEpochMilli();
+        int batchSize = properties.getFailures().getRetryBatchSize();
+        for (int from = 0; from < members.size(); from += batchSize) {
+            List<Object> batch = members.subList(from, Math.min(from + batchSize, members.size()));
+            // Only records that are actually dead-lettered are queued again
+            List<Boolean> present = redisTemplate.opsForHash().multiGet(keyLayout.deadLetters(), batch).stream()
+                    .map(deadLetter -> deadLetter != null)
+                    .toList();
+            for (int i = 0; i < batch.size(); i++) {
+                if (present.get(i)) {
+                    redisTemplate.opsForZSet().add(keyLayout.retryQueue(), batch.get(i), now);
+                    redriven++;
+                }
+            }
+            redisTemplate.opsForHash().delete(keyLayout.deadLetters(), batch.toArray());
+        }
+
+        redrivenCounter.increment(redriven);
+        log.info("Re-drove {} dead-lettered records", redriven);
+        return redriven;
+    }
+
+    /**
+     * Forgets all failures, when a migration starts from scratch.
+     */
+    public void reset() {
+        redisTemplate.delete(List.of(keyLayout.retryQueue(), keyLayout.retryAttempts(), keyLayout.deadLetters()));
+    }
+
+    private Duration backoff(int attempt) {
+        LiveMigrateProperties.Failures config = properties.getFailures();
+        Duration backoff = config.getInitialBackoff().multipliedBy(1L << Math.min(attempt - 1, 30));
+        return backoff.compareTo(config.getMaxBackoff()) > 0 ? config.getMaxBackoff() : backoff;
+    }
+
+    private Counter failureCounter(String outcome) {
+        return Counter.builder("migration.record.failures")
+                .description("Failed attempts to migrate a record, by what happened to the record next")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,236 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.model.MigrationJobStatus;
+import com.livemigrate.model.MigrationState;
+import com.livemigrate.service.RecordService;
+import com.livemigrate.service.TestDataGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Named migration jobs that run side by side, e.g. one per tenant or schema.
+ *
+ * Every job gets its own instances of the migration components in a child
+ * application context, wired to a key layout that prefixes all of the job's keys
+ * with its name. State, checkpoints, change capture, failures and version routing
+ * are therefore separate per job, while connections, the near cache and the
+ * throughput budget are shared. The default job is the one the rest of the API
+ * works on, with the historical key names.
+ *
+ * Job definitions are kept in Redis, so jobs are reopened after a restart; their
+ * migrations are resumed explicitly, like the default one.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MigrationJobs {
+    private static final Pattern JOB_NAME = Pattern.compile("[a-z0-9][a-z0-9-]{0,31}");
+    // Everything that holds per-job state or keys; stateless components come from the parent
+    private static final List<Class<?>> JOB_COMPONENTS = List.of(
+            StateTracker.class, VersionSelector.class, RecordService.class, ChangeCapture.class,
+            BatchCommitter.class, AccessFrequencyTracker.class, AccessHistoryRecorder.class,
+            MigrationFailures.class, MigrationJournal.class, MigrationCoordinator.class,
+            ShadowReadComparator.class, SmartProxy.class, TestDataGenerator.class);
+
+    private final ApplicationContext applicationContext;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final KeyLayout keyLayout;
+    private final MeterRegistry meterRegistry;
+    private final ThroughputBudget throughputBudget;
+    private final LiveMigrateProperties properties;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    // Migrations run to completion in the calling thread, so each job's runs get a thread of their own
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "migration-job");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A named job and the components wired for it.
+     */
+    public record Job(String name, int maxRecordsPerSecond, AnnotationConfigApplicationContext context) {
+        public MigrationCoordinator coordinator() {
+            return context.getBean(MigrationCoordinator.class);
+        }
+
+        public StateTracker stateTracker() {
+            return context.getBean(StateTracker.class);
+        }
+
+        public SmartProxy proxy() {
+            return context.getBean(SmartProxy.class);
+        }
+
+        public TestDataGenerator testDataGenerator() {
+            return context.getBean(TestDataGenerator.class);
+        }
+    }
+
+    @PostConstruct
+    void restore() {
+        throughputBudget.setLimit(KeyLayout.DEFAULT_JOB, properties.getJobs().getMaxRecordsPerSecond());
+        Map<Object, Object> definitions = redisTemplate.opsForHash().entries(keyLayout.migrationJobs());
+        definitions.forEach((name, limit) -> open(name.toString(), ((Number) limit).intValue()));
+        if (!definitions.isEmpty()) {
+            log.info("Reopened migration jobs {}", definitions.keySet());
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        executor.shutdownNow();
+        jobs.values().forEach(job -> job.context().close());
+    }
+
+    /**
+     * Creates a named job with its own keyspace.
+     *
+     * @param maxRecordsPerSecond the job's throughput limit, or 0 to only be bound by its fair share
+     * @throws IllegalArgumentException if the name is invalid or already taken
+     */
+    public synchronized Job create(String name, Integer maxRecordsPerSecond) {
+        if (!JOB_NAME.matcher(name).matches() || KeyLayout.DEFAULT_JOB.equals(name)) {
+            throw new IllegalArgumentException("Job names are 1-32 lowercase letters, digits or dashes, and not 'default'");
+        }
+        if (jobs.containsKey(name)) {
+            throw new IllegalArgumentException("Migration job already exists: " + name);
+        }
+        int limit = maxRecordsPerSecond != null ? maxRecordsPerSecond : properties.getJobs().getMaxRecordsPerSecond();
+        if (limit < 0) {
+            throw new IllegalArgumentException("Throughput limit must not be negative");
+        }
+
+        Job job = open(name, limit);
+        redisTemplate.opsForHash().put(keyLayout.migrationJobs(), name, limit);
+        log.info("Created migration job {} with throughput limit {}", name, limit);
+        return job;
+    }
+
+    /**
+     * Changes a job's throughput limit. A running job is paced at its new share
+     * from its next batch on.
+     *
+     * @param maxRecordsPerSecond the job's throughput limit, or 0 to only be bound by its fair share
+     * @throws IllegalArgumentException if there is no job with that name or the limit is negative
+     */
+    public synchronized Job updateLimit(String name, int maxRecordsPerSecond) {
+        if (maxRecordsPerSecond < 0) {
+            throw new IllegalArgumentException("Throughput limit must not be negative");
+        }
+        Job job = new Job(name, maxRecordsPerSecond, get(name).context());
+        jobs.put(name, job);
+        redisTemplate.opsForHash().put(keyLayout.migrationJobs(), name, maxRecordsPerSecond);
+        throughputBudget.setLimit(name, maxRecordsPerSecond);
+        log.info("Changed throughput limit of migration job {} to {}", name, maxRecordsPerSecond);
+        return job;
+    }
+
+    /**
+     * Closes a job and forgets its definition. Its data stays in Redis.
+     */
+    public synchronized void delete(String name) {
+        Job job = get(name);
+        if (job.coordinator().isMigrationInProgress()) {
+            throw new IllegalStateException("Migration job " + name + " is running");
+        }
+        jobs.remove(name);
+        job.context().close();
+        throughputBudget.removeLimit(name);
+        redisTemplate.opsForHash().delete(keyLayout.migrationJobs(), name);
+        log.info("Deleted migration job {}", name);
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no job with that name
+     */
+    public Job get(String name) {
+        Job job = jobs.get(name);
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown migration job: " + name);
+        }
+        return job;
+    }
+
+    public Collection<Job> list() {
+        return jobs.values();
+    }
+
+    /**
+     * Starts a job's migration in the background.
+     */
+    public void start(String name) {
+        MigrationCoordinator coordinator = get(name).coordinator();
+        if (coordinator.isMigrationInProgress()) {
+            throw new IllegalStateException("Migration is already in progress");
+        }
+        executor.submit(coordinator::startMigration);
+    }
+
+    /**
+     * Resumes a job's paused migration in the background.
+     */
+    public void resume(String name) {
+        executor.submit(get(name).coordinator()::resumeMigration);
+    }
+
+    public void pause(String name) {
+        get(name).coordinator().pauseMigration();
+    }
+
+    public MigrationJobStatus getStatus(String name) {
+        Job job = get(name);
+        MigrationJobStatus status = new MigrationJobStatus();
+        status.setName(name);
+        status.setState(job.stateTracker().getState());
+        status.setProgress(job.stateTracker().getProgress());
+        status.setRunning(job.coordinator().isMigrationInProgress());
+        if (status.getState() == MigrationState.PAUSED) {
+            status.setPauseReason(job.stateTracker().getPauseReason().orElse(null));
+        }
+        status.setMaxRecordsPerSecond(job.maxRecordsPerSecond());
+        status.setAllocatedRecordsPerSecond(throughputBudget.getAllocatedRate(name));
+        return status;
+    }
+
+    private Job open(String name, int maxRecordsPerSecond) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.setParent(applicationContext);
+        context.setDisplayName("migration-job-" + name);
+
+        // Registered as primary so they win over the default job's beans of the same type
+        KeyLayout layout = keyLayout.forJob(name);
+        context.registerBean("keyLayout", KeyLayout.class, () -> layout, definition -> definition.setPrimary(true));
+        CompositeMeterRegistry registry = new CompositeMeterRegistry();
+        registry.config().commonTags("job", name);
+        registry.add(meterRegistry);
+        context.registerBean("meterRegistry", MeterRegistry.class, () -> registry, definition -> definition.setPrimary(true));
+        JOB_COMPONENTS.forEach(component -> context.registerBean(component, definition -> definition.setPrimary(true)));
+        context.refresh();
+
+        Job job = new Job(name, maxRecordsPerSecond, context);
+        jobs.put(name, job);
+        throughputBudget.setLimit(name, maxRecordsPerSecond);
+        return job;
+    }
+}
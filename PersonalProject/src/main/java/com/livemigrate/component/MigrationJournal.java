@@ -0,0 +1,339 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.model.MigrationState;
+import com.livemigrate.service.RecordService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped journal of the batches the migration sweep has
+ * committed, kept on the local disk of the node running the migration.
+ *
+ * Each entry holds the ID range of a batch, the number of records processed so
+ * far and a digest of the batch's migrated IDs, and is protected by its own CRC.
+ * Appending is a plain memory write into the mapping, so the sweep pays no system
+ * call per batch; the OS writes the pages back, and they survive a crash of the
+ * process (not of the machine, unless sync is enabled).
+ *
+ * On startup the journal is scanned up to the first torn or stale entry and then
+ * reconciled with Redis: if Redis lost the checkpoint, progress or state (e.g. a
+ * restart without persistence), they are restored from the latest entry whose
+ * digest still matches the migrated set. If the migrated records are gone as well,
+ * the journal describes data that no longer exists and is discarded.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MigrationJournal {
+    private static final int MAGIC = 0x4C4D4A31;  // "LMJ1"
+    private static final int HEADER_SIZE = 16;
+    // sequence, first ID, last ID, record count, processed count, digest, timestamp, CRC
+    private static final int ENTRY_SIZE = 8 + 16 + 16 + 4 + 8 + 8 + 8 + 4;
+    private static final int RETAINED_ENTRIES = LiveMigrateProperties.Journal.RETAINED_ENTRIES;
+    // Bounds the IDs re-read to verify one entry, in case many records were inserted into its range since
+    private static final int MAX_VERIFIED_IDS = 10000;
+
+    private final LiveMigrateProperties properties;
+    private final StateTracker stateTracker;
+    private final VersionSelector versionSelector;
+    private final RecordService recordService;
+    private final KeyLayout keyLayout;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long capacity;
+    // Latest entries, oldest first
+    private final List<Entry> recent = new ArrayList<>();
+    // Sequence of the latest entry; never goes back, so stale entries can't look current
+    private long sequence;
+    private long nextOffset = HEADER_SIZE;
+
+    /**
+     * One committed batch.
+     *
+     * @param processed records processed by the sweep including this batch
+     * @param digest    CRC32C of the IDs in the range that are migrated after the commit
+     */
+    public record Entry(long sequence, UUID first, UUID last, int records, long processed, long digest,
+                        long timestamp) {
+    }
+
+    @PostConstruct
+    void open() {
+        LiveMigrateProperties.Journal config = properties.getJournal();
+        if (!config.isEnabled()) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            Path path = Path.of(config.getPath()).toAbsolutePath();
+            if (!KeyLayout.DEFAULT_JOB.equals(keyLayout.getJob())) {
+                // Named jobs keep their journal next to the default one
+                path = path.resolveSibling(keyLayout.getJob() + "-" + path.getFileName());
+            }
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            capacity = HEADER_SIZE + (long) config.getMaxEntries() * ENTRY_SIZE;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != ENTRY_SIZE) {
+                buffer.putLong(8, 0L);
+                buffer.putLong(HEADER_SIZE, 0L);
+                buffer.putInt(4, ENTRY_SIZE);
+                buffer.putInt(0, MAGIC);
+            }
+            int entries = scan();
+            log.info("Migration journal {} opened with {} entries in {} µs", path, entries,
+                    (System.nanoTime() - start) / 1_000);
+        } catch (IOException e) {
+            log.error("Could not open migration journal, continuing without it", e);
+            close();
+            return;
+        }
+
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.error("Could not reconcile the migration journal with Redis", e);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        try {
+            if (buffer != null) {
+                buffer.force();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Error closing migration journal", e);
+        } finally {
+            buffer = null;
+            channel = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * Records a committed batch.
+     *
+     * @param batchIds    IDs of the batch, in sweep order
+     * @param migratedIds IDs of the batch that are migrated once the batch is committed
+     * @param processed   records processed by the sweep including this batch
+     */
+    public synchronized void append(List<UUID> batchIds, Collection<UUID> migratedIds, long processed) {
+        if (buffer == null || batchIds.isEmpty()) {
+            return;
+        }
+        if (nextOffset + ENTRY_SIZE > capacity) {
+            compact();
+        }
+
+        Entry entry = new Entry(sequence + 1, batchIds.get(0), batchIds.get(batchIds.size() - 1),
+                migratedIds.size(), processed, digest(migratedIds), System.currentTimeMillis());
+        write(nextOffset, entry);
+        nextOffset += ENTRY_SIZE;
+        remember(entry);
+        sequence = entry.sequence();
+
+        if (properties.getJournal().isSync()) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Forgets all entries, e.g. when a migration starts from scratch or has completed.
+     */
+    public synchronized void reset() {
+        if (buffer == null) {
+            return;
+        }
+        // New entries continue the sequence from the header; anything left in the
+        // slots is older and is never read as part of the journal again
+        buffer.putLong(8, sequence);
+        recent.clear();
+        nextOffset = HEADER_SIZE;
+        buffer.force();
+    }
+
+    public synchronized Optional<Entry> getLastEntry() {
+        return recent.isEmpty() ? Optional.empty() : Optional.of(recent.get(recent.size() - 1));
+    }
+
+    /**
+     * Reads entries until one is torn (bad CRC) or out of sequence, which marks the
+     * end of what was written since the last reset or compaction.
+     *
+     * @return the number of entries found
+     */
+    private int scan() {
+        sequence = buffer.getLong(8);
+        int entries = 0;
+        while (nextOffset + ENTRY_SIZE <= capacity) {
+            Entry entry = read(nextOffset);
+            // The first entry may be ahead of the header if a compaction was interrupted
+            // before updating it; after a reset every stale entry is at or below the header
+            boolean inSequence = entry != null && (entry.sequence() == sequence + 1
+                    || (entries == 0 && entry.sequence() > sequence));
+            if (!inSequence) {
+                break;
+            }
+            remember(entry);
+            sequence = entry.sequence();
+            nextOffset += ENTRY_SIZE;
+            entries++;
+        }
+        return entries;
+    }
+
+    /**
+     * Brings Redis in line with the journal after a restart.
+     */
+    private void reconcile() {
+        MigrationState state = stateTracker.getState();
+        if (recent.isEmpty() || state == MigrationState.COMPLETED
+                || state == MigrationState.ROLLING_BACK || state == MigrationState.ROLLED_BACK) {
+            if (!recent.isEmpty()) {
+                reset();
+            }
+            return;
+        }
+
+        Optional<UUID> checkpoint = stateTracker.getLastCheckpoint();
+        Entry last = recent.get(recent.size() - 1);
+        if (checkpoint.isPresent() && checkpoint.get().toString().compareTo(last.last().toString()) >= 0) {
+            // Redis is at or past the journal, e.g. an append was lost with the machine
+            log.info("Migration checkpoint in Redis ({}) is up to date with the journal", checkpoint.get());
+            return;
+        }
+
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            Entry entry = recent.get(i);
+            if (verify(entry)) {
+                long total = recordService.getTotalRecordCount();
+                stateTracker.saveCheckpoint(entry.last());
+                if (total > 0) {
+                    stateTracker.updateProgress(Math.min(entry.processed(), total), total);
+                }
+                if (state == MigrationState.INITIALIZED || state == MigrationState.ERROR) {
+                    // The sweep was interrupted; it continues from the checkpoint on resume
+                    stateTracker.setState(MigrationState.PAUSED);
+                }
+                log.warn("Restored migration checkpoint {} ({} records processed) from the journal, Redis had {}",
+                        entry.last(), entry.processed(), checkpoint.map(UUID::toString).orElse("none"));
+                return;
+            }
+        }
+
+        log.warn("No journal entry matches the migrated records in Redis, discarding the journal");
+        reset();
+    }
+
+    /**
+     * Checks that the migrated set still holds exactly the IDs an entry's batch left
+     * migrated, by recomputing its digest from Redis.
+     */
+    private boolean verify(Entry entry) {
+        List<UUID> ids = recordService.listRecordIds(entry.first(), entry.last(), MAX_VERIFIED_IDS);
+        if (ids.isEmpty()) {
+            return false;
+        }
+        Set<UUID> unmigrated = new HashSet<>(versionSelector.filterUnmigrated(ids));
+        List<UUID> migrated = ids.stream().filter(id -> !unmigrated.contains(id)).toList();
+        return migrated.size() == entry.records() && digest(migrated) == entry.digest();
+    }
+
+    /**
+     * Moves the latest entries to the start of the journal. Older slots do not need to
+     * be cleared: their sequence numbers are lower, so scanning stops at them.
+     */
+    private void compact() {
+        List<Entry> retained = List.copyOf(recent);
+        for (int i = 0; i < retained.size(); i++) {
+            write(HEADER_SIZE + (long) i * ENTRY_SIZE, retained.get(i));
+        }
+        buffer.putLong(8, retained.get(0).sequence() - 1);
+        nextOffset = HEADER_SIZE + (long) retained.size() * ENTRY_SIZE;
+        buffer.force();
+        log.debug("Compacted migration journal to its last {} entries", retained.size());
+    }
+
+    private void remember(Entry entry) {
+        recent.add(entry);
+        if (recent.size() > RETAINED_ENTRIES) {
+            recent.remove(0);
+        }
+    }
+
+    private void write(long offset, Entry entry) {
+        buffer.putLong((int) offset + 8, entry.first().getMostSignificantBits());
+        buffer.putLong((int) offset + 16, entry.first().getLeastSignificantBits());
+        buffer.putLong((int) offset + 24, entry.last().getMostSignificantBits());
+        buffer.putLong((int) offset + 32, entry.last().getLeastSignificantBits());
+        buffer.putInt((int) offset + 40, entry.records());
+        buffer.putLong((int) offset + 44, entry.processed());
+        buffer.putLong((int) offset + 52, entry.digest());
+        buffer.putLong((int) offset + 60, entry.timestamp());
+        buffer.putLong((int) offset, entry.sequence());
+        // The CRC goes last, so an entry torn by a crash is detected on the next scan
+        buffer.putInt((int) offset + ENTRY_SIZE - 4, crc(offset));
+    }
+
+    private Entry read(long offset) {
+        long entrySequence = buffer.getLong((int) offset);
+        if (entrySequence <= 0 || buffer.getInt((int) offset + ENTRY_SIZE - 4) != crc(offset)) {
+            return null;
+        }
+        return new Entry(entrySequence,
+                new UUID(buffer.getLong((int) offset + 8), buffer.getLong((int) offset + 16)),
+                new UUID(buffer.getLong((int) offset + 24), buffer.getLong((int) offset + 32)),
+                buffer.getInt((int) offset + 40),
+                buffer.getLong((int) offset + 44),
+                buffer.getLong((int) offset + 52),
+                buffer.getLong((int) offset + 60));
+    }
+
+    private int crc(long offset) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice((int) offset, ENTRY_SIZE - 4));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * CRC32C over the IDs in ID order, matching the order of the ordered ID index.
+     */
+    private static long digest(Collection<UUID> ids) {
+        CRC32C crc = new CRC32C();
+        ids.stream()
+                .map(UUID::toString)
+                .sorted()
+                .forEach(id -> crc.update(id.getBytes(StandardCharsets.US_ASCII)));
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,255 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.config.RedisWorkload;
+import com.livemigrate.model.CustomerRecordV1;
+import com.livemigrate.model.CustomerRecordV2;
+import com.livemigrate.model.MigrationState;
+import com.livemigrate.model.ReclamationStatus;
+import com.livemigrate.model.RollbackStatus;
+import com.livemigrate.service.BoundedBatchExecutor;
+import com.livemigrate.service.RecordService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rolls a completed migration back to V1, e.g. when V2 turns out to be bad.
+ *
+ * V2 records are streamed in ID order, down-converted in parallel batches and
+ * written to V1 with pipelined writes, rate limited and pausable like the V1
+ * reclamation. Each V1 write is conditional on the record's version stamp, as in
+ * the forward migration, so a foreground write that lands meanwhile is not
+ * overwritten with older data. While the rollback runs, V2 stays authoritative and
+ * foreground writes go to both versions; once every record is written, reads switch
+ * back to V1.
+ *
+ * Progress is checkpointed after every window of parallel batches, so a failed or
+ * interrupted rollback continues where it stopped when it is started again. Once
+ * reads are back on V1, the V2 records and the secondary indexes are removed.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MigrationRollback {
+    private final StateTracker stateTracker;
+    private final VersionSelector versionSelector;
+    private final RecordService recordService;
+    private final RecordTransformer recordTransformer;
+    private final MigrationFailures failures;
+    private final V1Reclaimer v1Reclaimer;
+    private final SmartProxy smartProxy;
+    private final LiveMigrateProperties properties;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "migration-rollback");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong recordsRolledBack = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final Object pauseMonitor = new Object();
+
+    private volatile RollbackStatus.State state = RollbackStatus.State.IDLE;
+    private volatile boolean pauseRequested;
+    private volatile long totalRecords;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    /**
+     * Starts the rollback in the background, or continues one that failed or was
+     * interrupted by a restart.
+     */
+    public synchronized void start() {
+        if (state == RollbackStatus.State.RUNNING || state == RollbackStatus.State.PAUSED) {
+            throw new IllegalStateException("Rollback is already in progress");
+        }
+        MigrationState migrationState = stateTracker.getState();
+        if (migrationState != MigrationState.COMPLETED && migrationState != MigrationState.ROLLING_BACK) {
+            throw new IllegalStateException("Only a completed migration can be rolled back, not " + migrationState);
+        }
+        ReclamationStatus.State reclamation = v1Reclaimer.getStatus().getState();
+        if (reclamation == ReclamationStatus.State.RUNNING || reclamation == ReclamationStatus.State.PAUSED) {
+            throw new IllegalStateException("V1 reclamation is in progress");
+        }
+
+        conflicts.set(0);
+        pauseRequested = false;
+        startedAt = Instant.now();
+        finishedAt = null;
+        error = null;
+        state = RollbackStatus.State.RUNNING;
+
+        stateTracker.setState(MigrationState.ROLLING_BACK);
+        smartProxy.clearCache();
+        executor.submit(() -> RedisWorkload.BACKFILL.run(this::rollBack));
+        log.info("Migration rollback started");
+    }
+
+    /**
+     * Pauses the rollback after the window of batches that is currently in flight.
+     */
+    public void pause() {
+        if (state == RollbackStatus.State.RUNNING) {
+            pauseRequested = true;
+            state = RollbackStatus.State.PAUSED;
+            log.info("Migration rollback paused");
+        }
+    }
+
+    /**
+     * Resumes a paused rollback from where it stopped.
+     */
+    public void resume() {
+        if (state == RollbackStatus.State.PAUSED) {
+            synchronized (pauseMonitor) {
+                pauseRequested = false;
+                state = RollbackStatus.State.RUNNING;
+                pauseMonitor.notifyAll();
+            }
+            log.info("Migration rollback resumed");
+        }
+    }
+
+    public RollbackStatus getStatus() {
+        RollbackStatus status = new RollbackStatus();
+        status.setState(state);
+        status.setRecordsRolledBack(recordsRolledBack.get());
+        status.setTotalRecords(totalRecords);
+        status.setProgress(totalRecords > 0 ? Math.min(100.0, recordsRolledBack.get() * 100.0 / totalRecords) : 0.0);
+        status.setConflicts(conflicts.get());
+        status.setStartedAt(startedAt);
+        status.setFinishedAt(finishedAt);
+        status.setError(error);
+        return status;
+    }
+
+    private void rollBack() {
+        LiveMigrateProperties.Rollback config = properties.getRollback();
+        int parallelism = config.effectiveParallelism();
+        int windowSize = config.getBatchSize() * parallelism;
+
+        try (BoundedBatchExecutor workers = new BoundedBatchExecutor("rollback-worker", parallelism, parallelism)) {
+            totalRecords = recordService.getTotalRecordCount();
+            Optional<UUID> checkpoint = stateTracker.getRollbackCheckpoint();
+            recordsRolledBack.set(checkpoint.map(recordService::countRecordIds).orElse(0L));
+            checkpoint.ifPresent(id -> log.info("Resuming rollback after {} ({} records done)", id, recordsRolledBack.get()));
+
+            UUID cursor = checkpoint.orElse(null);
+            List<UUID> window;
+            do {
+                long windowStart = System.nanoTime();
+                window = recordService.listRecordIds(cursor, windowSize);
+                for (int from = 0; from < window.size(); from += config.getBatchSize()) {
+                    List<UUID> batch = window.subList(from, Math.min(from + config.getBatchSize(), window.size()));
+                    workers.submit(() -> rollBackBatch(batch));
+                }
+                workers.await();
+
+                if (!window.isEmpty()) {
+                    // Every batch of the window is written, so a restart continues after it
+                    cursor = window.get(window.size() - 1);
+                    stateTracker.saveRollbackCheckpoint(cursor);
+                    stateTracker.updateProgress(recordsRolledBack.get(), Math.max(totalRecords, recordsRolledBack.get()));
+                }
+                pace(window.size(), windowStart, config.getMaxRecordsPerSecond());
+                awaitResume();
+            } while (window.size() == windowSize);
+
+            // V1 now holds every record, so reads can go back to it
+            stateTracker.setState(MigrationState.ROLLED_BACK);
+            smartProxy.clearCache();
+            stateTracker.clearRollbackCheckpoint();
+            // A later migration starts over instead of resuming the rolled back one
+            stateTracker.clearCheckpoint();
+            versionSelector.reset();
+            failures.reset();
+            removeV2Records(config);
+
+            state = RollbackStatus.State.COMPLETED;
+            log.info("Migration rollback completed: {} records, {} conflicts", recordsRolledBack.get(), conflicts.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "Interrupted";
+            state = RollbackStatus.State.FAILED;
+        } catch (Exception e) {
+            // The migration stays ROLLING_BACK, which keeps V2 authoritative until the rollback is restarted
+            log.error("Error during migration rollback", e);
+            error = e.getMessage();
+            state = RollbackStatus.State.FAILED;
+        } finally {
+            finishedAt = Instant.now();
+        }
+    }
+
+    /**
+     * Removes what only served reads from V2: the secondary indexes, which would
+     * otherwise keep pointing lookups at V2 values, and the V2 records themselves.
+     */
+    private void removeV2Records(LiveMigrateProperties.Rollback config) throws InterruptedException {
+        recordService.clearIndexes();
+        UUID cursor = null;
+        List<UUID> batch;
+        do {
+            long batchStart = System.nanoTime();
+            batch = recordService.listRecordIds(cursor, config.getBatchSize());
+            recordService.deleteRecordsV2(batch);
+            if (!batch.isEmpty()) {
+                cursor = batch.get(batch.size() - 1);
+            }
+            pace(batch.size(), batchStart, config.getMaxRecordsPerSecond());
+        } while (batch.size() == config.getBatchSize());
+        log.info("Removed V2 records and secondary indexes after rollback");
+    }
+
+    /**
+     * Down-converts and writes one batch. Records the foreground wrote since they
+     * were read are read and written again; if they keep changing, the foreground's
+     * own writes to V1 keep them current.
+     */
+    private void rollBackBatch(List<UUID> ids) {
+        List<UUID> pending = ids;
+        int retries = 0;
+        do {
+            Map<UUID, Long> stamps = recordService.getStamps(pending);
+            Map<UUID, CustomerRecordV2> sources = recordService.getRecordsV2(pending);
+            List<CustomerRecordV1> records = sources.values().stream()
+                    .map(recordTransformer::downgrade)
+                    .toList();
+            pending = recordService.commitRecordsV1IfUnchanged(records, stamps);
+            conflicts.addAndGet(pending.size());
+        } while (!pending.isEmpty() && retries++ < properties.getBackfill().getMaxConflictRetries());
+
+        if (!pending.isEmpty()) {
+            log.debug("Records {} kept changing during rollback, leaving them to the foreground writes", pending);
+        }
+        recordsRolledBack.addAndGet(ids.size());
+    }
+
+    private static void pace(int records, long startNanos, int maxRecordsPerSecond) throws InterruptedException {
+        long budgetNanos = records * 1_000_000_000L / Math.max(1, maxRecordsPerSecond);
+        long remainingMillis = (budgetNanos - (System.nanoTime() - startNanos)) / 1_000_000L;
+        if (remainingMillis > 0) {
+            Thread.sleep(remainingMillis);
+        }
+    }
+
+    private void awaitResume() throws InterruptedException {
+        synchronized (pauseMonitor) {
+            while (pauseRequested) {
+                pauseMonitor.wait();
+            }
+        }
+    }
+}
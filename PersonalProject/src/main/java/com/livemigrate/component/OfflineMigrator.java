@@ -0,0 +1,153 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.config.RedisWorkload;
+import com.livemigrate.model.CustomerRecordV1;
+import com.livemigrate.model.CustomerRecordV2;
+import com.livemigrate.model.MigrationState;
+import com.livemigrate.model.OfflineMigrationReport;
+import com.livemigrate.service.BoundedBatchExecutor;
+import com.livemigrate.service.RecordService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Migrates all records in one go while writes are frozen, instead of record by
+ * record next to live traffic.
+ *
+ * V1 records come either from an NDJSON snapshot (as written by the export) or
+ * from the V1 keys currently in Redis. They are read in batches, and each batch is
+ * transformed and bulk-loaded by a pool of workers with one thread per core by
+ * default, using the pipelined batch writes. The number of batches in flight is
+ * bounded, so reading waits for loading. Only once every batch is loaded is the
+ * migration state set to COMPLETED; a failure leaves it at ERROR.
+ *
+ * There is no stamp checking or change capture, so callers have to stop writes
+ * for the duration.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OfflineMigrator {
+    private final StateTracker stateTracker;
+    private final VersionSelector versionSelector;
+    private final RecordService recordService;
+    private final RecordTransformer recordTransformer;
+    private final MigrationCoordinator migrationCoordinator;
+    private final LiveMigrateProperties properties;
+
+    /**
+     * Migrates the V1 records of an NDJSON snapshot, optionally gzip-compressed.
+     *
+     * @throws IllegalArgumentException if the snapshot contains an invalid record
+     */
+    public OfflineMigrationReport migrateSnapshot(InputStream snapshot) {
+        return run("snapshot", migrated -> recordService.readNdjson(snapshot, CustomerRecordV1.class,
+                batch -> migrated.addAndGet(load(batch))));
+    }
+
+    /**
+     * Migrates the V1 records currently stored in Redis, paging through the ordered
+     * ID index.
+     */
+    public OfflineMigrationReport migrateKeyspace() {
+        return run("keyspace", migrated -> {
+            LiveMigrateProperties.Bulk config = properties.getBulk();
+            try (BoundedBatchExecutor executor = new BoundedBatchExecutor(
+                    "offline-migrator", config.effectiveParallelism(), config.getMaxInFlightBatches())) {
+                UUID cursor = null;
+                List<UUID> ids;
+                do {
+                    ids = recordService.listRecordIds(cursor, config.getBatchSize());
+                    if (!ids.isEmpty()) {
+                        List<UUID> batch = ids;
+                        executor.submit(() -> migrated.addAndGet(
+                                load(List.copyOf(recordService.getRecordsV1(batch).values()))));
+                        cursor = ids.get(ids.size() - 1);
+                    }
+                } while (ids.size() == config.getBatchSize() && !executor.hasFailed());
+                executor.await();
+            }
+        });
+    }
+
+    private OfflineMigrationReport run(String source, MigrationTask task) {
+        long start = System.nanoTime();
+        AtomicLong migrated = new AtomicLong();
+        // Holds the live migration's run lock throughout, so neither kind can start while the other runs
+        migrationCoordinator.runExclusive(() -> {
+            MigrationState state = stateTracker.getState();
+            if (state != MigrationState.INITIALIZED && state != MigrationState.ROLLED_BACK) {
+                throw new IllegalStateException("Offline migration requires state INITIALIZED or ROLLED_BACK, not " + state);
+            }
+            RedisWorkload.BACKFILL.run(() -> migrate(source, task, migrated));
+        });
+
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        OfflineMigrationReport report = new OfflineMigrationReport();
+        report.setSource(source);
+        report.setRecords(migrated.get());
+        report.setParallelism(properties.getBulk().effectiveParallelism());
+        report.setDuration(duration);
+        report.setRecordsPerSecond(migrated.get() * 1_000_000_000.0 / Math.max(1, duration.toNanos()));
+        report.setLiveRecordsPerSecond(migrationCoordinator.getPacedRecordsPerSecond());
+        report.setSpeedup(report.getRecordsPerSecond() / report.getLiveRecordsPerSecond());
+
+        log.info("Offline migration completed: {} records in {} ({} records/s, {}x the live sweep)",
+                report.getRecords(), duration, Math.round(report.getRecordsPerSecond()), Math.round(report.getSpeedup()));
+        return report;
+    }
+
+    /**
+     * Transforms a batch and loads it with pipelined writes.
+     *
+     * @return the number of records loaded
+     */
+    private int load(List<CustomerRecordV1> batch) {
+        List<CustomerRecordV2> migrated = batch.stream()
+                .map(recordTransformer::transform)
+                .toList();
+        recordService.saveRecordsV2(migrated);
+        versionSelector.markAsMigrated(migrated.stream().map(CustomerRecordV2::getId).toList());
+        return migrated.size();
+    }
+
+    /**
+     * Runs the task and records its outcome in the migration state.
+     */
+    private void migrate(String source, MigrationTask task, AtomicLong migrated) {
+        try {
+            stateTracker.setState(MigrationState.MIGRATING);
+            log.info("Starting offline migration from {}", source);
+            task.run(migrated);
+
+            stateTracker.updateProgress(migrated.get(), migrated.get());
+            stateTracker.setState(MigrationState.COMPLETED);
+            stateTracker.markCompleted();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stateTracker.setState(MigrationState.ERROR);
+            throw new IllegalStateException("Offline migration was interrupted", e);
+        } catch (IOException e) {
+            stateTracker.setState(MigrationState.ERROR);
+            throw new RuntimeException("Failed to read snapshot", e);
+        } catch (RuntimeException e) {
+            log.error("Error during offline migration", e);
+            stateTracker.setState(MigrationState.ERROR);
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface MigrationTask {
+        void run(AtomicLong migrated) throws IOException, InterruptedException;
+    }
+}
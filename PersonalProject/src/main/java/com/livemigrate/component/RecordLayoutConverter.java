@@ -0,0 +1,137 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.config.RedisWorkload;
+import com.livemigrate.model.CustomerRecordV1;
+import com.livemigrate.model.CustomerRecordV2;
+import com.livemigrate.model.LayoutConversionReport;
+import com.livemigrate.model.MigrationState;
+import com.livemigrate.model.RecordVersion;
+import com.livemigrate.service.BoundedBatchExecutor;
+import com.livemigrate.service.RecordService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts records from the split layout, with separate V1 and V2 keys, to the
+ * unified layout with a single key per record.
+ *
+ * The conversion runs while the application still uses the split layout. Every
+ * record is copied to its unified key in the version reads currently resolve to:
+ * V2 once the record is migrated, or while it is being migrated and already in V2,
+ * and V1 otherwise. Records copied as V2 are marked as migrated, so a migration
+ * that is resumed afterwards only upgrades the rest in place. Batches are read and
+ * written by a pool of workers, as in the offline migration.
+ *
+ * Writes through the split layout do not reach the unified keys, so callers have
+ * to stop writes from the start of the conversion until the application runs with
+ * the unified layout.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RecordLayoutConverter {
+    private final StateTracker stateTracker;
+    private final VersionSelector versionSelector;
+    private final RecordService recordService;
+    private final MigrationCoordinator migrationCoordinator;
+    private final KeyLayout keyLayout;
+    private final LiveMigrateProperties properties;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Copies every record to its unified key.
+     *
+     * @param removeSource whether to delete the V1 and V2 keys of each record once it is copied
+     */
+    public LayoutConversionReport convert(boolean removeSource) {
+        if (keyLayout.isUnified()) {
+            throw new IllegalStateException("Records already use the unified layout");
+        }
+        if (migrationCoordinator.isMigrationInProgress()) {
+            throw new IllegalStateException("A live migration is in progress");
+        }
+        if (stateTracker.getState() == MigrationState.ROLLING_BACK) {
+            throw new IllegalStateException("A rollback is in progress");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A layout conversion is already in progress");
+        }
+
+        long start = System.nanoTime();
+        AtomicLong v1Records = new AtomicLong();
+        AtomicLong v2Records = new AtomicLong();
+        LiveMigrateProperties.Bulk config = properties.getBulk();
+        log.info("Converting records to the unified layout{}", removeSource ? ", removing V1 and V2 keys" : "");
+        try (BoundedBatchExecutor executor = new BoundedBatchExecutor(
+                "layout-converter", config.effectiveParallelism(), config.getMaxInFlightBatches())) {
+            // Batches run as the submitting thread's workload
+            RedisWorkload.BACKFILL.run(() -> {
+                UUID cursor = null;
+                List<UUID> ids;
+                do {
+                    ids = recordService.listRecordIds(cursor, config.getBatchSize());
+                    if (!ids.isEmpty()) {
+                        List<UUID> batch = ids;
+                        executor.submit(() -> convertBatch(batch, removeSource, v1Records, v2Records));
+                        cursor = ids.get(ids.size() - 1);
+                    }
+                } while (ids.size() == config.getBatchSize() && !executor.hasFailed());
+                executor.await();
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Layout conversion was interrupted", e);
+        } catch (RuntimeException e) {
+            log.error("Error during layout conversion", e);
+            throw e;
+        } finally {
+            running.set(false);
+        }
+
+        LayoutConversionReport report = new LayoutConversionReport();
+        report.setRecords(v1Records.get() + v2Records.get());
+        report.setV1Records(v1Records.get());
+        report.setV2Records(v2Records.get());
+        report.setSourceRemoved(removeSource);
+        report.setDuration(Duration.ofNanos(System.nanoTime() - start));
+        log.info("Layout conversion completed: {} records ({} as V1, {} as V2) in {}",
+                report.getRecords(), report.getV1Records(), report.getV2Records(), report.getDuration());
+        return report;
+    }
+
+    private void convertBatch(List<UUID> ids, boolean removeSource, AtomicLong v1Records, AtomicLong v2Records) {
+        Map<UUID, RecordVersion> versions = versionSelector.getVersions(ids);
+        Map<UUID, CustomerRecordV1> v1 = recordService.getRecordsV1(ids);
+        Map<UUID, CustomerRecordV2> v2 = recordService.getRecordsV2(ids);
+
+        Map<UUID, Object> records = new LinkedHashMap<>();
+        List<UUID> upgraded = new ArrayList<>();
+        for (UUID id : ids) {
+            // V2 wherever reads would use it; a record that only exists in one version keeps that one
+            if (v2.containsKey(id) && (versions.get(id) != RecordVersion.V1 || !v1.containsKey(id))) {
+                records.put(id, v2.get(id));
+                upgraded.add(id);
+            } else if (v1.containsKey(id)) {
+                records.put(id, v1.get(id));
+            }
+        }
+
+        recordService.saveUnifiedRecords(records, removeSource);
+        versionSelector.markAsMigrated(upgraded);
+        v2Records.addAndGet(upgraded.size());
+        v1Records.addAndGet(records.size() - upgraded.size());
+    }
+}
@@ -0,0 +1,409 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.model.ResourceGuardStatus;
+import com.livemigrate.model.ResourceGuardStatus.Pressure;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.output.ArrayOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps migrations from pushing Redis into eviction, OOM or replica lag. A
+ * migration writes a full V2 copy next to V1, so memory grows with every batch.
+ *
+ * Every interval the guard samples INFO on every node (used memory against
+ * maxmemory, fragmentation, ops/s and replica lag) and the spikes the LATENCY
+ * monitor reported since the previous sample. Crossing a throttle threshold lowers
+ * the global migration rate in the {@link ThroughputBudget}; crossing a pause
+ * threshold pauses every running migration, with the reason recorded in its state.
+ * Pressure is raised right away but only lowered after several calmer samples in
+ * a row; then the rate is restored and the migrations the guard paused resume.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisResourceGuard {
+    // Small datasets report meaningless fragmentation ratios
+    private static final long FRAGMENTATION_MIN_MEMORY = 64L * 1024 * 1024;
+    private static final String REASON_PREFIX = "Redis resource guard: ";
+
+    private static final ProtocolKeyword LATENCY = new ProtocolKeyword() {
+        @Override
+        public byte[] getBytes() {
+            return name().getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public String name() {
+            return "LATENCY";
+        }
+    };
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final KeyLayout keyLayout;
+    private final MigrationCoordinator migrationCoordinator;
+    private final MigrationJobs migrationJobs;
+    private final ThroughputBudget throughputBudget;
+    private final LiveMigrateProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "resource-guard");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The default migration runs to completion in the thread that resumes it
+    private final ExecutorService resumer = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "resource-guard-resume");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Jobs paused by the guard, as opposed to by a user, which it resumes itself
+    private final Set<String> pausedJobs = ConcurrentHashMap.newKeySet();
+    // Time of the latest spike per LATENCY event, so each spike is only counted once
+    private final Map<String, Long> latencyEvents = new HashMap<>();
+
+    private volatile ResourceGuardStatus status = new ResourceGuardStatus();
+    private Pressure applied = Pressure.NONE;
+    private int calmSamples;
+    private boolean latencySeeded;
+
+    private Counter throttleCounter;
+    private Counter pauseCounter;
+    private Counter resumeCounter;
+
+    @PostConstruct
+    void start() {
+        Gauge.builder("redis.guard.pressure", this, guard -> guard.status.getPressure().ordinal())
+                .description("Pressure the guard acts on: 0 none, 1 throttled, 2 paused")
+                .register(meterRegistry);
+        Gauge.builder("redis.guard.memory.ratio", this, guard -> guard.status.getMemoryRatio())
+                .description("Used memory as a share of maxmemory on the fullest node")
+                .register(meterRegistry);
+        Gauge.builder("redis.guard.replication.lag", this, guard -> guard.status.getReplicationLagSeconds())
+                .description("Largest replica lag")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("redis.guard.latency", this, guard -> guard.status.getLatencyMillis())
+                .description("Largest latency spike reported by the LATENCY monitor since the previous sample")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        throttleCounter = actionCounter("throttle");
+        pauseCounter = actionCounter("pause");
+        resumeCounter = actionCounter("resume");
+
+        LiveMigrateProperties.ResourceGuard config = properties.getResourceGuard();
+        status.setEnabled(config.isEnabled());
+        if (config.isEnabled()) {
+            long interval = config.getInterval().toMillis();
+            scheduler.scheduleWithFixedDelay(this::sampleSafely, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+        resumer.shutdownNow();
+    }
+
+    public ResourceGuardStatus getStatus() {
+        return status;
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (Exception e) {
+            // Without a sample the current pressure is kept, rather than guessed
+            log.warn("Failed to sample Redis resources", e);
+            ResourceGuardStatus failed = new ResourceGuardStatus();
+            failed.setEnabled(true);
+            failed.setPressure(applied);
+            failed.setPausedJobs(List.copyOf(pausedJobs));
+            failed.setSampledAt(Instant.now());
+            failed.setError(e.getMessage());
+            status = failed;
+        }
+    }
+
+    private void sample() {
+        ResourceGuardStatus sample = new ResourceGuardStatus();
+        sample.setEnabled(true);
+        sample.setSampledAt(Instant.now());
+        readInfo(sample);
+        // LATENCY is a per-node command; in cluster mode only INFO is sampled
+        if (!keyLayout.isClustered()) {
+            sample.setLatencyMillis(latestLatencySpike());
+        }
+
+        act(evaluate(sample), sample.getReasons());
+        sample.setPressure(applied);
+        sample.setPausedJobs(List.copyOf(pausedJobs));
+        status = sample;
+    }
+
+    /**
+     * Reads INFO of every node and keeps the worst node's memory, fragmentation and
+     * replica lag, and the ops of all nodes together.
+     */
+    private void readInfo(ResourceGuardStatus sample) {
+        Properties info = redisTemplate.execute((RedisCallback<Properties>) connection -> connection.serverCommands().info());
+        if (info == null) {
+            return;
+        }
+
+        // In cluster mode every field is prefixed with its node, as in "host:port.used_memory"
+        Map<String, Properties> nodes = new HashMap<>();
+        info.forEach((key, value) -> {
+            String name = key.toString();
+            int dot = name.lastIndexOf('.');
+            nodes.computeIfAbsent(dot < 0 ? "" : name.substring(0, dot), node -> new Properties())
+                    .setProperty(name.substring(dot + 1), value.toString());
+        });
+
+        for (Properties node : nodes.values()) {
+            long used = longField(node, "used_memory");
+            long max = longField(node, "maxmemory");
+            double ratio = max > 0 ? (double) used / max : 0.0;
+            if (ratio > sample.getMemoryRatio() || (ratio == sample.getMemoryRatio() && used > sample.getUsedMemory())) {
+                sample.setMemoryRatio(ratio);
+                sample.setUsedMemory(used);
+                sample.setMaxMemory(max);
+            }
+            if (used >= FRAGMENTATION_MIN_MEMORY) {
+                sample.setFragmentationRatio(Math.max(sample.getFragmentationRatio(),
+                        Double.parseDouble(node.getProperty("mem_fragmentation_ratio", "0"))));
+            }
+            sample.setOpsPerSecond(sample.getOpsPerSecond() + longField(node, "instantaneous_ops_per_sec"));
+            sample.setReplicationLagSeconds(Math.max(sample.getReplicationLagSeconds(), replicaLag(node)));
+        }
+    }
+
+    /**
+     * Returns the largest lag of the node's replicas, listed as
+     * "slave0:ip=...,port=...,state=online,offset=...,lag=1".
+     */
+    private static long replicaLag(Properties node) {
+        long lag = 0;
+        for (String name : node.stringPropertyNames()) {
+            if (name.matches("slave\\d+")) {
+                for (String part : node.getProperty(name).split(",")) {
+                    if (part.startsWith("lag=")) {
+                        lag = Math.max(lag, Long.parseLong(part.substring(4)));
+                    }
+                }
+            }
+        }
+        return lag;
+    }
+
+    /**
+     * Returns the largest latency spike, in milliseconds, the LATENCY monitor
+     * recorded since the previous sample. Redis only records spikes once its
+     * latency-monitor-threshold is set.
+     */
+    @SuppressWarnings("unchecked")
+    private long latestLatencySpike() {
+        long timeout = properties.getRedis().getForeground().getCommandTimeout().toMillis();
+        List<Object> events = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            RedisClusterAsyncCommands<byte[], byte[]> commands =
+                    (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+            RedisFuture<List<Object>> future = commands.dispatch(LATENCY, new ArrayOutput<>(ByteArrayCodec.INSTANCE),
+                    new CommandArgs<>(ByteArrayCodec.INSTANCE).add("LATEST"));
+            return LettuceFutures.awaitOrCancel(future, timeout, TimeUnit.MILLISECONDS);
+        });
+        if (events == null) {
+            return 0;
+        }
+
+        // Each event is [name, time of its latest spike, that spike in ms, the all-time maximum]
+        long spike = 0;
+        for (Object event : events) {
+            List<Object> fields = (List<Object>) event;
+            String name = new String((byte[]) fields.get(0), StandardCharsets.UTF_8);
+            long time = ((Number) fields.get(1)).longValue();
+            Long previous = latencyEvents.put(name, time);
+            // The first sample only learns which spikes happened before the guard started
+            if (latencySeeded && (previous == null || time > previous)) {
+                spike = Math.max(spike, ((Number) fields.get(2)).longValue());
+            }
+        }
+        latencySeeded = true;
+        return spike;
+    }
+
+    /**
+     * Compares a sample to the thresholds, adding a reason for every one crossed.
+     */
+    private Pressure evaluate(ResourceGuardStatus sample) {
+        LiveMigrateProperties.ResourceGuard config = properties.getResourceGuard();
+        List<String> reasons = sample.getReasons();
+        Pressure pressure = Pressure.NONE;
+        pressure = check(pressure, reasons, "memory ratio", "", sample.getMemoryRatio(),
+                config.getMemoryThrottleRatio(), config.getMemoryPauseRatio());
+        pressure = check(pressure, reasons, "fragmentation ratio", "", sample.getFragmentationRatio(),
+                config.getFragmentationThrottleRatio(), 0);
+        pressure = check(pressure, reasons, "ops", "/s", sample.getOpsPerSecond(),
+                config.getMaxOpsPerSecond(), 0);
+        pressure = check(pressure, reasons, "replication lag", "s", sample.getReplicationLagSeconds(),
+                config.getReplicationLagThrottle().toSeconds(), config.getReplicationLagPause().toSeconds());
+        pressure = check(pressure, reasons, "latency spike", "ms", sample.getLatencyMillis(),
+                config.getLatencyThrottle().toMillis(), config.getLatencyPause().toMillis());
+        return pressure;
+    }
+
+    private static Pressure check(Pressure pressure, List<String> reasons, String measure, String unit,
+                                  double value, double throttleAt, double pauseAt) {
+        Pressure level;
+        double threshold;
+        if (pauseAt > 0 && value >= pauseAt) {
+            level = Pressure.PAUSE;
+            threshold = pauseAt;
+        } else if (throttleAt > 0 && value >= throttleAt) {
+            level = Pressure.THROTTLE;
+            threshold = throttleAt;
+        } else {
+            return pressure;
+        }
+        reasons.add(String.format(Locale.ROOT, "%s %s%s reached the %s threshold %s%s", measure, format(value), unit,
+                level.name().toLowerCase(Locale.ROOT), format(threshold), unit));
+        return level.compareTo(pressure) > 0 ? level : pressure;
+    }
+
+    /**
+     * Moves to the sampled pressure: right away when it rises, after the configured
+     * number of calmer samples in a row when it falls, so migrations do not flap.
+     */
+    private void act(Pressure measured, List<String> reasons) {
+        LiveMigrateProperties.ResourceGuard config = properties.getResourceGuard();
+        Pressure target = applied;
+        if (measured.compareTo(applied) >= 0) {
+            target = measured;
+            calmSamples = 0;
+        } else if (++calmSamples >= config.getClearSamples()) {
+            target = measured;
+            calmSamples = 0;
+        }
+
+        if (target != applied) {
+            int throttledRate = throttledRecordsPerSecond(config);
+            throughputBudget.setPressureLimit(target == Pressure.NONE ? 0 : throttledRate);
+            if (target == Pressure.THROTTLE && applied == Pressure.NONE) {
+                throttleCounter.increment();
+                log.warn("Slowing migrations down to {} records/s: {}", throttledRate,
+                        String.join("; ", reasons));
+            } else if (target == Pressure.NONE) {
+                log.info("Redis pressure cleared, lifting the migration rate limit");
+            }
+            applied = target;
+        }
+
+        if (applied == Pressure.PAUSE) {
+            // Every sample, so migrations started or resumed meanwhile are paused too
+            pauseRunning(reasons.isEmpty() ? "waiting for pressure to clear" : String.join("; ", reasons));
+        } else if (!pausedJobs.isEmpty()) {
+            resumePaused();
+        }
+    }
+
+    /**
+     * The global rate kept while slowed down: a share of the configured global rate,
+     * or of the live sweep's pace when no global rate is configured. At least 1, since
+     * a pressure limit of 0 would lift the limit altogether.
+     */
+    private int throttledRecordsPerSecond(LiveMigrateProperties.ResourceGuard config) {
+        int global = properties.getJobs().getGlobalRecordsPerSecond();
+        double normal = global > 0 ? global : migrationCoordinator.getPacedRecordsPerSecond();
+        return Math.max(1, (int) Math.ceil(normal * config.getThrottleFraction()));
+    }
+
+    private void pauseRunning(String reason) {
+        coordinators().forEach((job, coordinator) -> {
+            if (coordinator.pauseMigration(REASON_PREFIX + reason)) {
+                pausedJobs.add(job);
+                pauseCounter.increment();
+                log.warn("Paused migration job {}: {}", job, reason);
+            }
+        });
+    }
+
+    private void resumePaused() {
+        for (String job : List.copyOf(pausedJobs)) {
+            pausedJobs.remove(job);
+            resumeCounter.increment();
+            log.info("Resuming migration job {}, Redis pressure has eased", job);
+            try {
+                if (KeyLayout.DEFAULT_JOB.equals(job)) {
+                    resumer.submit(() -> {
+                        try {
+                            migrationCoordinator.resumeMigration();
+                        } catch (IllegalStateException e) {
+                            log.warn("Could not resume migration job {}: {}", job, e.getMessage());
+                        }
+                    });
+                } else {
+                    migrationJobs.resume(job);
+                }
+            } catch (IllegalArgumentException e) {
+                // The job was deleted while it was paused
+                log.debug("Not resuming migration job {}: {}", job, e.getMessage());
+            }
+        }
+    }
+
+    private Map<String, MigrationCoordinator> coordinators() {
+        Map<String, MigrationCoordinator> coordinators = new LinkedHashMap<>();
+        coordinators.put(KeyLayout.DEFAULT_JOB, migrationCoordinator);
+        migrationJobs.list().forEach(job -> coordinators.put(job.name(), job.coordinator()));
+        return coordinators;
+    }
+
+    private static long longField(Properties node, String name) {
+        return Long.parseLong(node.getProperty(name, "0"));
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value)
+                ? Long.toString((long) value)
+                : String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private Counter actionCounter(String action) {
+        return Counter.builder("redis.guard.actions")
+                .description("Times the guard slowed down, paused or resumed migrations")
+                .tag("action", action)
+                .register(meterRegistry);
+    }
+}
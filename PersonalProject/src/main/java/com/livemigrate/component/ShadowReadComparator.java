@@ -0,0 +1,185 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.model.CustomerData;
+import com.livemigrate.model.CustomerRecordV1;
+import com.livemigrate.model.CustomerRecordV2;
+import com.livemigrate.model.MigrationState;
+import com.livemigrate.service.RecordService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Compares V1 and V2 of a sample of proxied reads while a migration runs, so
+ * differences between the versions show up long before validation.
+ *
+ * For a sampled read the version that was not served is fetched and compared
+ * field by field on a worker thread, never on the request path. Comparisons wait
+ * in a bounded queue; when it is full they are dropped rather than slowing reads
+ * down. Only the fields both versions carry are compared, with V2 down-converted
+ * the way a rollback would.
+ *
+ * Once a record is migrated, foreground writes only go to V2, so the versions of a
+ * record written since are expected to differ. Those are counted as modified, not
+ * as diverged, which keeps the divergence counts to transform errors.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ShadowReadComparator {
+    // Migration states in which both versions of a record may exist and reads can be served from either
+    private static final Set<MigrationState> SHADOWED_STATES = Set.of(
+            MigrationState.MIGRATING, MigrationState.CATCHING_UP, MigrationState.VALIDATING);
+
+    private static final Map<String, Function<CustomerRecordV1, Object>> COMPARED_FIELDS = new LinkedHashMap<>();
+
+    static {
+        COMPARED_FIELDS.put("createdAt", CustomerRecordV1::getCreatedAt);
+        COMPARED_FIELDS.put("customerData.name", record -> customerData(record).map(CustomerData::getName).orElse(null));
+        COMPARED_FIELDS.put("customerData.email", record -> customerData(record).map(CustomerData::getEmail).orElse(null));
+        COMPARED_FIELDS.put("customerData.phone", record -> customerData(record).map(CustomerData::getPhone).orElse(null));
+        COMPARED_FIELDS.put("checksum", CustomerRecordV1::getChecksum);
+    }
+
+    private final StateTracker stateTracker;
+    private final RecordService recordService;
+    private final RecordTransformer recordTransformer;
+    private final LiveMigrateProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Counter> divergenceCounters = new HashMap<>();
+    private ThreadPoolExecutor executor;
+    private Counter matchCounter;
+    private Counter divergedCounter;
+    private Counter modifiedCounter;
+    private Counter missingCounter;
+    private Counter droppedCounter;
+
+    @PostConstruct
+    void start() {
+        LiveMigrateProperties.ShadowReads config = properties.getShadowReads();
+        executor = new ThreadPoolExecutor(config.getThreads(), config.getThreads(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()), runnable -> {
+                    Thread thread = new Thread(runnable, "shadow-read");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        matchCounter = comparisonCounter("match");
+        divergedCounter = comparisonCounter("diverged");
+        modifiedCounter = comparisonCounter("modified");
+        missingCounter = comparisonCounter("missing");
+        droppedCounter = comparisonCounter("dropped");
+        COMPARED_FIELDS.keySet().forEach(field -> divergenceCounters.put(field, Counter.builder("smartproxy.shadow.divergence")
+                .description("Shadow comparisons in which a field differed between V1 and V2")
+                .tag("field", field)
+                .register(meterRegistry)));
+        Gauge.builder("smartproxy.shadow.queue.size", executor, pool -> pool.getQueue().size())
+                .description("Shadow comparisons waiting for a worker")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Schedules a comparison of a record that was just served, if the read is
+     * sampled. Returns right away.
+     *
+     * @param served the record as returned to the caller, V1 or V2
+     */
+    public void sample(UUID recordId, Object served) {
+        LiveMigrateProperties.ShadowReads config = properties.getShadowReads();
+        if (!config.isEnabled() || recordService.isUnifiedLayout()) {
+            return;
+        }
+        if (config.getSampleRate() > 1 && ThreadLocalRandom.current().nextInt(config.getSampleRate()) != 0) {
+            return;
+        }
+        if (!SHADOWED_STATES.contains(stateTracker.getState())) {
+            return;
+        }
+        try {
+            executor.execute(() -> compare(recordId, served));
+        } catch (RejectedExecutionException e) {
+            droppedCounter.increment();
+        }
+    }
+
+    private void compare(UUID recordId, Object served) {
+        try {
+            CustomerRecordV1 v1;
+            Optional<CustomerRecordV2> v2;
+            if (served instanceof CustomerRecordV1 servedV1) {
+                v1 = servedV1;
+                v2 = recordService.getRecordV2(recordId);
+            } else {
+                v2 = Optional.of((CustomerRecordV2) served);
+                v1 = recordService.getRecordV1(recordId).orElse(null);
+            }
+            if (v1 == null || v2.isEmpty()) {
+                // Records read from V1 before the sweep reaches them are expected to land here
+                missingCounter.increment();
+                return;
+            }
+
+            CustomerRecordV1 expected = recordTransformer.downgrade(v2.get());
+            List<String> divergedFields = COMPARED_FIELDS.entrySet().stream()
+                    .filter(field -> !Objects.equals(field.getValue().apply(v1), field.getValue().apply(expected)))
+                    .map(Map.Entry::getKey)
+                    .toList();
+            if (divergedFields.isEmpty()) {
+                matchCounter.increment();
+            } else if (modifiedSinceMigration(v2.get())) {
+                modifiedCounter.increment();
+            } else {
+                divergedFields.forEach(field -> divergenceCounters.get(field).increment());
+                divergedCounter.increment();
+                log.debug("V1 and V2 of record {} diverge in {}", recordId, divergedFields);
+            }
+        } catch (Exception e) {
+            // A failed comparison says nothing about the data, so it is only logged
+            log.warn("Shadow read of record {} failed: {}", recordId, e.toString());
+        }
+    }
+
+    private static boolean modifiedSinceMigration(CustomerRecordV2 record) {
+        Instant migratedAt = record.getMetadata() != null ? record.getMetadata().getMigratedAt() : null;
+        return migratedAt != null && record.getLastModified() != null && record.getLastModified().isAfter(migratedAt);
+    }
+
+    private static Optional<CustomerData> customerData(CustomerRecordV1 record) {
+        return Optional.ofNullable(record.getCustomerData());
+    }
+
+    private Counter comparisonCounter(String result) {
+        return Counter.builder("smartproxy.shadow.reads")
+                .description("Sampled reads whose other version was compared, by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -1,46 +1,107 @@
 package com.livemigrate.component;
 
+import com.livemigrate.config.LiveMigrateProperties;
 import com.livemigrate.model.*;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.livemigrate.service.NearCache;
+import com.livemigrate.service.RecordFieldCodec;
 import com.livemigrate.service.RecordService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class SmartProxy {
+    // Payload sizes are measured on one in this many reads, to keep serialization off the hot path
+    private static final int PAYLOAD_SAMPLE_RATE = 16;
+
     private final VersionSelector versionSelector;
+    private final StateTracker stateTracker;
     private final RecordService recordService;
+    private final RecordTransformer recordTransformer;
+    private final RecordFieldCodec fieldCodec;
+    private final NearCache nearCache;
+    private final AccessFrequencyTracker accessTracker;
+    private final AccessHistoryRecorder accessHistory;
+    private final ShadowReadComparator shadowReads;
+    private final MeterRegistry meterRegistry;
+    private final LiveMigrateProperties properties;
 
-    // Cache for handling in-flight requests during migration
+    // Cache for handling in-flight requests during migration. Neither this nor the
+    // projection cache sees writes made on other nodes, so both are bypassed while
+    // the tracking-based near cache is serving reads.
     private final ConcurrentHashMap<UUID, Object> requestCache = new ConcurrentHashMap<>();
 
+    // Projected responses, cached separately from full records and keyed by the resolved field list
+    private final ConcurrentHashMap<UUID, ConcurrentHashMap<List<String>, ObjectNode>> projectionCache =
+            new ConcurrentHashMap<>();
+
+    private final AtomicLong readCounter = new AtomicLong();
+
+    private Timer fullReadTimer;
+    private Timer projectedReadTimer;
+    private DistributionSummary fullPayloadSummary;
+    private DistributionSummary projectedPayloadSummary;
+    private Counter fallbackCounter;
+
+    @PostConstruct
+    void registerMetrics() {
+        fullReadTimer = readTimer("full");
+        projectedReadTimer = readTimer("projected");
+        fullPayloadSummary = payloadSummary("full");
+        projectedPayloadSummary = payloadSummary("projected");
+        fallbackCounter = Counter.builder("smartproxy.read.fallback")
+                .description("Reads of not yet migrated records that missed V2 and fell back to V1")
+                .register(meterRegistry);
+    }
+
     /**
      * Retrieves a customer record, automatically handling version selection
      * and concurrent access during migration.
      */
     public Optional<Object> getRecord(UUID recordId) {
+        long start = System.nanoTime();
+        accessTracker.recordAccess(recordId);
+
         // Check cache first for in-flight requests
-        Object cachedRecord = requestCache.get(recordId);
+        Object cachedRecord = nearCache.isEnabled() ? null : requestCache.get(recordId);
         if (cachedRecord != null) {
+            accessHistory.recordAccess(recordId, "record-read");
             return Optional.of(cachedRecord);
         }
 
         try {
-            RecordVersion version = versionSelector.getVersion(recordId);
-            Optional<Object> record = switch (version) {
-                case V1 -> recordService.getRecordV1(recordId).map(r -> (Object) r);
-                case V2 -> recordService.getRecordV2(recordId).map(r -> (Object) r);
-                case IN_MIGRATION -> handleMigrationStateRead(recordId);
-            };
+            Optional<Object> record = readRecord(recordId);
+
+            record.ifPresent(r -> accessHistory.recordAccess(recordId, "record-read"));
+            record.ifPresent(r -> shadowReads.sample(recordId, r));
 
             // Cache the result for subsequent requests
-            record.ifPresent(r -> requestCache.put(recordId, r));
+            if (!nearCache.isEnabled()) {
+                record.ifPresent(r -> requestCache.put(recordId, r));
+            }
+            record.ifPresent(r -> samplePayload(fullPayloadSummary, r));
+            fullReadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
             return record;
 
         } catch (Exception e) {
@@ -49,12 +110,173 @@ public class SmartProxy {
         }
     }
 
+    /**
+     * Retrieves several records at once, resolving their versions in one round trip
+     * and reading each version with a single batched fetch. Records that are being
+     * migrated are read from V2 and fall back to V1 if they are not there yet.
+     * Missing records are absent from the result, which keeps the order of the IDs.
+     *
+     * Unlike single reads these are not counted as record accesses, since bulk
+     * reads would otherwise dominate the hot record statistics and access history.
+     */
+    public Map<UUID, Object> getRecords(List<UUID> recordIds) {
+        try {
+            if (recordService.isUnifiedLayout()) {
+                return recordService.getRecords(recordIds);
+            }
+            if (resolvesOnServer()) {
+                Map<UUID, Object> records = new LinkedHashMap<>();
+                recordService.resolveRecords(recordIds).forEach((id, resolved) -> {
+                    if (resolved.fallback()) {
+                        fallbackCounter.increment();
+                    }
+                    records.put(id, resolved.record());
+                });
+                return records;
+            }
+            Map<UUID, RecordVersion> versions = versionSelector.getVersions(recordIds);
+            List<UUID> v1Ids = new ArrayList<>();
+            List<UUID> v2Ids = new ArrayList<>();
+            versions.forEach((id, version) -> (version == RecordVersion.V1 ? v1Ids : v2Ids).add(id));
+
+            Map<UUID, CustomerRecordV2> v2Records = recordService.getRecordsV2(v2Ids);
+            List<UUID> fallbackIds = v2Ids.stream()
+                    .filter(id -> !v2Records.containsKey(id) && versions.get(id) == RecordVersion.IN_MIGRATION)
+                    .toList();
+            fallbackCounter.increment(fallbackIds.size());
+            v1Ids.addAll(fallbackIds);
+            Map<UUID, CustomerRecordV1> v1Records = recordService.getRecordsV1(v1Ids);
+
+            Map<UUID, Object> records = new LinkedHashMap<>();
+            for (UUID id : recordIds) {
+                Object record = v2Records.containsKey(id) ? v2Records.get(id) : v1Records.get(id);
+                if (record != null) {
+                    records.put(id, record);
+                }
+            }
+            return records;
+        } catch (Exception e) {
+            log.error("Error retrieving batch of {} records", recordIds.size(), e);
+            throw new RuntimeException("Error retrieving records", e);
+        }
+    }
+
+    /**
+     * Pages through all records in ID order, starting after the given cursor. Records
+     * are fetched in batches and handed to the consumer one batch at a time, so at
+     * most one batch is held in memory.
+     *
+     * @return the cursor for the next page, or null if the listing is complete
+     */
+    public UUID listRecords(UUID cursor, int limit, int batchSize, Consumer<Collection<Object>> consumer) {
+        UUID last = cursor;
+        int listed = 0;
+        while (listed < limit) {
+            int requested = Math.min(batchSize, limit - listed);
+            List<UUID> ids = recordService.listRecordIds(last, requested);
+            if (!ids.isEmpty()) {
+                consumer.accept(getRecords(ids).values());
+                listed += ids.size();
+                last = ids.get(ids.size() - 1);
+            }
+            // A short batch means the end of the ID index was reached
+            if (ids.size() < requested) {
+                return null;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Retrieves one page of the V2 records whose indexed field has the given value,
+     * in ID order. Only the records on the page are read, with one batched fetch like
+     * {@link #getRecords}, so the cost does not grow with the number of matches. The
+     * next cursor is null once the last page is reached.
+     *
+     * The indexes only cover V2 records, so nothing is found while reads go to V1
+     * alone: before a migration and after a rollback.
+     */
+    public IndexPage findRecords(IndexedField field, String value, UUID cursor, int limit) {
+        MigrationState state = stateTracker.getState();
+        if (state == MigrationState.INITIALIZED || state == MigrationState.ROLLED_BACK) {
+            return new IndexPage(List.of(), null);
+        }
+        List<UUID> ids = recordService.findByIndex(field, value, cursor, limit);
+        List<Object> records = List.copyOf(getRecords(ids).values());
+        // A full page means there may be more matches after its last ID
+        UUID nextCursor = ids.size() < limit ? null : ids.get(ids.size() - 1);
+        return new IndexPage(records, nextCursor);
+    }
+
+    public record IndexPage(List<Object> records, UUID nextCursor) {
+    }
+
+    /**
+     * Retrieves only the requested fields of a customer record. The projection is
+     * pushed down to the storage layer, so for V2 records only those fields are
+     * fetched and deserialized. Field names are those accepted by
+     * {@link RecordFieldCodec#resolveFields}; fields a record version does not
+     * have are omitted from the result.
+     *
+     * @throws IllegalArgumentException if an unknown field is requested
+     */
+    public Optional<ObjectNode> getRecord(UUID recordId, Collection<String> fields) {
+        long start = System.nanoTime();
+        List<String> resolvedFields = fieldCodec.resolveFields(fields);
+        accessTracker.recordAccess(recordId);
+
+        Map<List<String>, ObjectNode> cachedProjections = nearCache.isEnabled() ? null : projectionCache.get(recordId);
+        if (cachedProjections != null && cachedProjections.containsKey(resolvedFields)) {
+            accessHistory.recordAccess(recordId, "projected-read");
+            return Optional.of(cachedProjections.get(resolvedFields));
+        }
+
+        try {
+            // Unified records are JSON documents, which are read whole either way
+            Optional<Object> record = recordService.isUnifiedLayout()
+                    ? recordService.getRecord(recordId)
+                    : switch (versionSelector.getVersion(recordId)) {
+                        case V1 -> recordService.getRecordV1(recordId).map(r -> (Object) r);
+                        case V2 -> recordService.getRecordV2(recordId, resolvedFields).map(r -> (Object) r);
+                        case IN_MIGRATION -> recordService.getRecordV2(recordId, resolvedFields)
+                                .map(r -> (Object) r)
+                                .or(() -> {
+                                    fallbackCounter.increment();
+                                    return recordService.getRecordV1(recordId);
+                                });
+                    };
+
+            Optional<ObjectNode> projection = record.map(r -> fieldCodec.project(r, resolvedFields));
+            projection.ifPresent(p -> accessHistory.recordAccess(recordId, "projected-read"));
+            if (!nearCache.isEnabled()) {
+                projection.ifPresent(p -> projectionCache
+                        .computeIfAbsent(recordId, id -> new ConcurrentHashMap<>())
+                        .put(resolvedFields, p));
+            }
+            projection.ifPresent(p -> samplePayload(projectedPayloadSummary, p));
+            projectedReadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return projection;
+
+        } catch (Exception e) {
+            log.error("Error retrieving fields {} of record {}", resolvedFields, recordId, e);
+            throw new RuntimeException("Error retrieving record", e);
+        }
+    }
+
     /**
      * Updates a customer record, handling version-specific logic and
      * ensuring consistency during migration.
      */
     public void updateRecord(UUID recordId, Object recordData) {
         try {
+            if (recordService.isUnifiedLayout()) {
+                handleUnifiedWrite(recordId, recordData);
+                if (!nearCache.isEnabled()) {
+                    requestCache.remove(recordId);
+                }
+                projectionCache.remove(recordId);
+                return;
+            }
             RecordVersion version = versionSelector.getVersion(recordId);
 
             switch (version) {
@@ -65,16 +287,21 @@ public class SmartProxy {
                     recordService.saveRecordV1((CustomerRecordV1) recordData);
                 }
                 case V2 -> {
-                    if (!(recordData instanceof CustomerRecordV2)) {
+                    if (!(recordData instanceof CustomerRecordV2 v2Record)) {
                         throw new IllegalArgumentException("Invalid record format for V2");
                     }
-                    recordService.saveRecordV2((CustomerRecordV2) recordData);
+                    // V1 is no longer written for this record, which shadow reads recognise by this
+                    v2Record.setLastModified(Instant.now());
+                    recordService.saveRecordV2(v2Record);
                 }
                 case IN_MIGRATION -> handleMigrationStateWrite(recordId, recordData);
             }
 
             // Update cache
-            requestCache.put(recordId, recordData);
+            if (!nearCache.isEnabled()) {
+                requestCache.put(recordId, recordData);
+            }
+            projectionCache.remove(recordId);
 
         } catch (Exception e) {
             log.error("Error updating record {}", recordId, e);
@@ -82,6 +309,36 @@ public class SmartProxy {
         }
     }
 
+    private Optional<Object> readRecord(UUID recordId) {
+        // In the unified layout the stored record says its own version
+        if (recordService.isUnifiedLayout()) {
+            return recordService.getRecord(recordId);
+        }
+        if (resolvesOnServer()) {
+            RecordService.ResolvedRecord resolved = recordService.resolveRecords(List.of(recordId)).get(recordId);
+            if (resolved != null && resolved.fallback()) {
+                fallbackCounter.increment();
+            }
+            return Optional.ofNullable(resolved).map(RecordService.ResolvedRecord::record);
+        }
+        return switch (versionSelector.getVersion(recordId)) {
+            case V1 -> recordService.getRecordV1(recordId).map(r -> (Object) r);
+            case V2 -> recordService.getRecordV2(recordId).map(r -> (Object) r);
+            case IN_MIGRATION -> handleMigrationStateRead(recordId);
+        };
+    }
+
+    /**
+     * Whether a read resolves the record's version and fetches it in a single
+     * script call. With the near cache the state and migrated marks are local
+     * already, and the script would bypass the cached records.
+     */
+    private boolean resolvesOnServer() {
+        return properties.getProxy().isServerSideResolution()
+                && !nearCache.isEnabled()
+                && recordService.supportsServerSideResolution();
+    }
+
     /**
      * Handles read operations for records that are currently being migrated.
      */
@@ -92,6 +349,7 @@ public class SmartProxy {
             return Optional.of(v2Record.get());
         }
 
+        fallbackCounter.increment();
         return recordService.getRecordV1(recordId).map(r -> (Object) r);
     }
 
@@ -102,39 +360,39 @@ public class SmartProxy {
         // During migration, write to both versions to maintain consistency
         if (recordData instanceof CustomerRecordV1 v1Record) {
             recordService.saveRecordV1(v1Record);
-            // Also update V2 if it exists
-            recordService.getRecordV2(recordId).ifPresent(v2Record -> {
-                CustomerRecordV2 updatedV2 = updateV2FromV1(v2Record, v1Record);
-                recordService.saveRecordV2(updatedV2);
-            });
+            // Also update V2 if it exists, rewriting only the fields that come from V1
+            recordService.patchRecordV2(recordId, recordTransformer.v1SourcedFields(v1Record));
         } else if (recordData instanceof CustomerRecordV2 v2Record) {
             recordService.saveRecordV2(v2Record);
             // Create corresponding V1 record
-            CustomerRecordV1 v1Record = createV1FromV2(v2Record);
+            CustomerRecordV1 v1Record = recordTransformer.downgrade(v2Record);
             recordService.saveRecordV1(v1Record);
         }
     }
 
     /**
-     * Updates a V2 record with changes from a V1 record while preserving V2-specific fields.
-     */
-    private CustomerRecordV2 updateV2FromV1(CustomerRecordV2 v2Record, CustomerRecordV1 v1Record) {
-        v2Record.setCustomerData(v1Record.getCustomerData());
-        v2Record.setChecksum(v1Record.getChecksum());
-        v2Record.setLastModified(java.time.Instant.now());
-        return v2Record;
-    }
-
-    /**
-     * Creates a V1 record from a V2 record by extracting compatible fields.
+     * Handles writes in the unified layout, where a record has a single key that
+     * holds either version. V1 data for a record that is already upgraded only
+     * refreshes the fields that come from V1. V2 data upgrades the record in place,
+     * unless reads still go to V1 for it, or is stored down-converted while a
+     * rollback is turning records back into V1.
      */
-    private CustomerRecordV1 createV1FromV2(CustomerRecordV2 v2Record) {
-        CustomerRecordV1 v1Record = new CustomerRecordV1();
-        v1Record.setId(v2Record.getId());
-        v1Record.setCreatedAt(v2Record.getCreatedAt());
-        v1Record.setCustomerData(v2Record.getCustomerData());
-        v1Record.setChecksum(v2Record.getChecksum());
-        return v1Record;
+    private void handleUnifiedWrite(UUID recordId, Object recordData) {
+        if (recordData instanceof CustomerRecordV1 v1Record) {
+            if (!recordService.patchRecordV2(recordId, recordTransformer.v1SourcedFields(v1Record))) {
+                recordService.saveRecordV1(v1Record);
+            }
+        } else if (recordData instanceof CustomerRecordV2 v2Record) {
+            if (stateTracker.getState() == MigrationState.ROLLING_BACK) {
+                recordService.saveRecordV1(recordTransformer.downgrade(v2Record));
+            } else if (versionSelector.getVersion(recordId) == RecordVersion.V1) {
+                throw new IllegalArgumentException("Invalid record format for V1");
+            } else {
+                recordService.saveRecordV2(v2Record);
+                // The sweep would otherwise look for a V1 record that is no longer there
+                versionSelector.markAsMigrated(recordId);
+            }
+        }
     }
 
     /**
@@ -142,5 +400,29 @@ public class SmartProxy {
      */
     public void clearCache() {
         requestCache.clear();
+        projectionCache.clear();
+    }
+
+    private void samplePayload(DistributionSummary summary, Object payload) {
+        if (readCounter.incrementAndGet() % PAYLOAD_SAMPLE_RATE == 0) {
+            summary.record(fieldCodec.encodedSize(payload));
+        }
+    }
+
+    private Timer readTimer(String projection) {
+        return Timer.builder("smartproxy.read.time")
+                .description("Time taken to read records through SmartProxy")
+                .tag("projection", projection)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary payloadSummary(String projection) {
+        return DistributionSummary.builder("smartproxy.read.payload")
+                .description("Serialized size of records returned by SmartProxy (sampled)")
+                .baseUnit("bytes")
+                .tag("projection", projection)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
     }
 }
\ No newline at end of file
@@ -1,57 +1,107 @@
 package com.livemigrate.component;
 
+import com.livemigrate.config.KeyLayout;
 import com.livemigrate.model.MigrationState;
+import com.livemigrate.service.NearCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.time.Instant;
 import java.util.Optional;
 import java.util.UUID;
 
 @Component
 @RequiredArgsConstructor
 public class StateTracker {
-    private static final String MIGRATION_STATE_KEY = "migration:state";
-    private static final String MIGRATION_PROGRESS_KEY = "migration:progress";
-    private static final String LAST_PROCESSED_ID_KEY = "migration:last_processed_id";
-
     private final RedisTemplate<String, Object> redisTemplate;
+    private final KeyLayout keyLayout;
+    private final NearCache nearCache;
 
     // State management methods
     public void setState(MigrationState state) {
-        redisTemplate.opsForValue().set(MIGRATION_STATE_KEY, state.name());
+        redisTemplate.opsForValue().set(keyLayout.migrationState(), state.name());
+        nearCache.invalidate(keyLayout.migrationState());
     }
 
+    // Read on every proxied request, so it is served from the near cache
     public MigrationState getState() {
-        String state = (String) redisTemplate.opsForValue().get(MIGRATION_STATE_KEY);
+        String state = (String) nearCache.getValue(keyLayout.migrationState());
         return state != null ? MigrationState.valueOf(state) : MigrationState.INITIALIZED;
     }
 
     // Progress tracking methods
     public void updateProgress(long processed, long total) {
         double progress = (double) processed / total * 100;
-        redisTemplate.opsForValue().set(MIGRATION_PROGRESS_KEY, progress);
+        redisTemplate.opsForValue().set(keyLayout.migrationProgress(), progress);
     }
 
     public double getProgress() {
-        Double progress = (Double) redisTemplate.opsForValue().get(MIGRATION_PROGRESS_KEY);
+        Double progress = (Double) redisTemplate.opsForValue().get(keyLayout.migrationProgress());
         return progress != null ? progress : 0.0;
     }
 
     // Checkpoint management
     public void saveCheckpoint(UUID lastProcessedId) {
-        redisTemplate.opsForValue().set(LAST_PROCESSED_ID_KEY, lastProcessedId.toString());
+        redisTemplate.opsForValue().set(keyLayout.lastProcessedId(), lastProcessedId.toString());
     }
 
     public Optional<UUID> getLastCheckpoint() {
-        String lastId = (String) redisTemplate.opsForValue().get(LAST_PROCESSED_ID_KEY);
+        String lastId = (String) redisTemplate.opsForValue().get(keyLayout.lastProcessedId());
+        return lastId != null ? Optional.of(UUID.fromString(lastId)) : Optional.empty();
+    }
+
+    // Forgets where a migration stopped, so the next one starts from scratch
+    public void clearCheckpoint() {
+        redisTemplate.delete(keyLayout.lastProcessedId());
+        redisTemplate.delete(keyLayout.completedAt());
+    }
+
+    // Rollback checkpoint, kept apart from the migration's
+    public void saveRollbackCheckpoint(UUID lastRolledBackId) {
+        redisTemplate.opsForValue().set(keyLayout.rollbackCheckpoint(), lastRolledBackId.toString());
+    }
+
+    public Optional<UUID> getRollbackCheckpoint() {
+        String lastId = (String) redisTemplate.opsForValue().get(keyLayout.rollbackCheckpoint());
         return lastId != null ? Optional.of(UUID.fromString(lastId)) : Optional.empty();
     }
 
+    public void clearRollbackCheckpoint() {
+        redisTemplate.delete(keyLayout.rollbackCheckpoint());
+    }
+
+    // Why a paused migration was paused, cleared when it resumes
+    public void setPauseReason(String reason) {
+        redisTemplate.opsForValue().set(keyLayout.pauseReason(), reason);
+    }
+
+    public Optional<String> getPauseReason() {
+        return Optional.ofNullable((String) redisTemplate.opsForValue().get(keyLayout.pauseReason()));
+    }
+
+    public void clearPauseReason() {
+        redisTemplate.delete(keyLayout.pauseReason());
+    }
+
+    // Completion tracking, used to enforce retention windows after cutover
+    public void markCompleted() {
+        redisTemplate.opsForValue().set(keyLayout.completedAt(), Instant.now().toEpochMilli());
+    }
+
+    public Optional<Instant> getCompletedAt() {
+        Number completedAt = (Number) redisTemplate.opsForValue().get(keyLayout.completedAt());
+        return completedAt != null ? Optional.of(Instant.ofEpochMilli(completedAt.longValue())) : Optional.empty();
+    }
+
     // Reset state tracker
     public void reset() {
-        redisTemplate.delete(MIGRATION_STATE_KEY);
-        redisTemplate.delete(MIGRATION_PROGRESS_KEY);
-        redisTemplate.delete(LAST_PROCESSED_ID_KEY);
+        redisTemplate.delete(keyLayout.migrationState());
+        nearCache.invalidate(keyLayout.migrationState());
+        redisTemplate.delete(keyLayout.migrationProgress());
+        redisTemplate.delete(keyLayout.lastProcessedId());
+        redisTemplate.delete(keyLayout.completedAt());
+        redisTemplate.delete(keyLayout.rollbackCheckpoint());
+        redisTemplate.delete(keyLayout.pauseReason());
     }
 }
\ No newline at end of file
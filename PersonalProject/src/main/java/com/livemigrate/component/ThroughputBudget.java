@@ -0,0 +1,136 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.LiveMigrateProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares the global migration throughput between the jobs that are running.
+ *
+ * The global rate is split max-min fairly: every running job gets an equal share,
+ * except that a job limited below its share only gets its limit and the rest is
+ * divided among the others. Shares are recomputed whenever a job starts or stops.
+ * Each job is then paced on its own, so a job that is waiting does not hold up
+ * the others. When a job's rate changes, time it booked at the old rate is
+ * dropped and waiting callers re-check against the new rate.
+ */
+@Component
+@RequiredArgsConstructor
+public class ThroughputBudget {
+    private final LiveMigrateProperties properties;
+
+    // Configured limit per job, in records per second; 0 for none
+    private final Map<String, Integer> limits = new HashMap<>();
+    private final Map<String, Pacer> running = new HashMap<>();
+    // Global rate imposed while Redis is under pressure; 0 for none
+    private int pressureLimit;
+
+    private static class Pacer {
+        private double rate = Double.POSITIVE_INFINITY;
+        private long nextFreeNanos = System.nanoTime();
+    }
+
+    public synchronized void setLimit(String job, int maxRecordsPerSecond) {
+        limits.put(job, maxRecordsPerSecond);
+        rebalance();
+    }
+
+    public synchronized void removeLimit(String job) {
+        limits.remove(job);
+        rebalance();
+    }
+
+    /**
+     * Lowers the global rate while Redis is under pressure, or lifts that limit again
+     * when given 0. The configured global rate still applies if it is lower.
+     */
+    public synchronized void setPressureLimit(int recordsPerSecond) {
+        pressureLimit = recordsPerSecond;
+        rebalance();
+    }
+
+    /**
+     * Registers a job as running.
+     *
+     * @return false if the maximum number of concurrent migrations is already running
+     */
+    public synchronized boolean activate(String job) {
+        if (!running.containsKey(job) && running.size() >= properties.getJobs().getMaxConcurrent()) {
+            return false;
+        }
+        running.putIfAbsent(job, new Pacer());
+        rebalance();
+        return true;
+    }
+
+    public synchronized void deactivate(String job) {
+        if (running.remove(job) != null) {
+            rebalance();
+        }
+    }
+
+    /**
+     * Waits until the job may process the given number of records.
+     */
+    public synchronized void acquire(String job, int records) throws InterruptedException {
+        while (true) {
+            Pacer pacer = running.get(job);
+            if (pacer == null || Double.isInfinite(pacer.rate)) {
+                return;
+            }
+            long now = System.nanoTime();
+            long waitNanos = pacer.nextFreeNanos - now;
+            if (waitNanos <= 0) {
+                pacer.nextFreeNanos = now + (long) (records * 1_000_000_000.0 / pacer.rate);
+                return;
+            }
+            // Woken early by a rate change, so the wait is worked out again
+            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+        }
+    }
+
+    /**
+     * Returns the rate currently allotted to a running job, or 0 if it is not running
+     * or not limited.
+     */
+    public synchronized double getAllocatedRate(String job) {
+        Pacer pacer = running.get(job);
+        return pacer == null || Double.isInfinite(pacer.rate) ? 0.0 : pacer.rate;
+    }
+
+    private void rebalance() {
+        int global = properties.getJobs().getGlobalRecordsPerSecond();
+        double remaining = global > 0 ? global : Double.POSITIVE_INFINITY;
+        if (pressureLimit > 0) {
+            remaining = Math.min(remaining, pressureLimit);
+        }
+
+        // Water-filling: the most limited jobs are served first, the rest share what is left
+        long now = System.nanoTime();
+        List<String> jobs = running.keySet().stream()
+                .sorted(Comparator.comparingDouble(this::limitOf))
+                .toList();
+        for (int i = 0; i < jobs.size(); i++) {
+            double fairShare = remaining / (jobs.size() - i);
+            double rate = Math.min(limitOf(jobs.get(i)), fairShare);
+            Pacer pacer = running.get(jobs.get(i));
+            if (pacer.rate != rate) {
+                pacer.rate = rate;
+                pacer.nextFreeNanos = Math.min(pacer.nextFreeNanos, now);
+            }
+            remaining -= Double.isInfinite(rate) ? 0 : rate;
+        }
+        notifyAll();
+    }
+
+    private double limitOf(String job) {
+        int limit = limits.getOrDefault(job, properties.getJobs().getMaxRecordsPerSecond());
+        return limit > 0 ? limit : Double.POSITIVE_INFINITY;
+    }
+}
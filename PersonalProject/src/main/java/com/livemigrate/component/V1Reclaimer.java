@@ -0,0 +1,267 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.config.RedisWorkload;
+import com.livemigrate.model.MigrationState;
+import com.livemigrate.model.ReclamationStatus;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Removes V1 data that is no longer read once a migration has completed.
+ *
+ * Keys are discovered with SCAN and removed with UNLINK in batches, so Redis frees
+ * the memory in a background thread and neither side blocks on large deletes.
+ * The job is rate limited, only starts after a retention grace period, and can be
+ * paused between batches. Restarting it is always safe: a new SCAN simply no
+ * longer finds the keys that were already unlinked.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class V1Reclaimer {
+    private static final Duration COMMAND_TIMEOUT = Duration.ofSeconds(10);
+
+    private final StateTracker stateTracker;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final LiveMigrateProperties properties;
+    private final KeyLayout keyLayout;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "v1-reclaimer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong keysReclaimed = new AtomicLong();
+    private final AtomicLong bytesFreed = new AtomicLong();
+    private final Object pauseMonitor = new Object();
+
+    private volatile ReclamationStatus.State state = ReclamationStatus.State.IDLE;
+    private volatile boolean pauseRequested;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    /**
+     * Starts the reclamation job in the background. Fails if the migration has not
+     * completed yet or its retention grace period has not elapsed.
+     */
+    public synchronized void start() {
+        if (state == ReclamationStatus.State.RUNNING || state == ReclamationStatus.State.PAUSED) {
+            throw new IllegalStateException("Reclamation is already in progress");
+        }
+        if (keyLayout.isUnified()) {
+            throw new IllegalStateException("Records are upgraded in place in the unified layout, there is no V1 data to reclaim");
+        }
+        checkReclaimable();
+
+        keysReclaimed.set(0);
+        bytesFreed.set(0);
+        pauseRequested = false;
+        startedAt = Instant.now();
+        finishedAt = null;
+        error = null;
+        state = ReclamationStatus.State.RUNNING;
+
+        executor.submit(() -> RedisWorkload.BACKFILL.run(this::reclaim));
+        log.info("V1 reclamation started");
+    }
+
+    /**
+     * Fails unless the migration is completed and was completed longer ago than the
+     * retention window. A missing completion time is treated as not reclaimable, since
+     * the rollback window cannot be established without it.
+     */
+    private void checkReclaimable() {
+        if (stateTracker.getState() != MigrationState.COMPLETED) {
+            throw new IllegalStateException("V1 data can only be reclaimed after the migration has completed");
+        }
+        Optional<Instant> completedAt = stateTracker.getCompletedAt();
+        if (completedAt.isEmpty()) {
+            throw new IllegalStateException("The migration has no completion time, V1 data is kept");
+        }
+        Instant retainedUntil = completedAt.get().plus(properties.getReclamation().getRetention());
+        if (retainedUntil.isAfter(Instant.now())) {
+            throw new IllegalStateException("V1 data is retained until " + retainedUntil);
+        }
+    }
+
+    /**
+     * Pauses the job after the batch that is currently in flight.
+     */
+    public void pause() {
+        if (state == ReclamationStatus.State.RUNNING) {
+            pauseRequested = true;
+            state = ReclamationStatus.State.PAUSED;
+            log.info("V1 reclamation paused");
+        }
+    }
+
+    /**
+     * Resumes a paused job from where it stopped.
+     */
+    public void resume() {
+        if (state == ReclamationStatus.State.PAUSED) {
+            synchronized (pauseMonitor) {
+                pauseRequested = false;
+                state = ReclamationStatus.State.RUNNING;
+                pauseMonitor.notifyAll();
+            }
+            log.info("V1 reclamation resumed");
+        }
+    }
+
+    public ReclamationStatus getStatus() {
+        ReclamationStatus status = new ReclamationStatus();
+        status.setState(state);
+        status.setKeysReclaimed(keysReclaimed.get());
+        status.setBytesFreed(bytesFreed.get());
+        status.setStartedAt(startedAt);
+        status.setFinishedAt(finishedAt);
+        status.setError(error);
+        return status;
+    }
+
+    private void reclaim() {
+        LiveMigrateProperties.Reclamation config = properties.getReclamation();
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(keyLayout.v1KeyPattern())
+                .count(config.getBatchSize())
+                .build();
+
+        try {
+            if (keyLayout.isClustered()) {
+                // SCAN only covers a single node, so walk every upstream node separately
+                try (RedisClusterConnection connection =
+                             redisTemplate.getRequiredConnectionFactory().getClusterConnection()) {
+                    for (RedisClusterNode node : connection.clusterGetNodes()) {
+                        if (!node.isMaster()) {
+                            continue;
+                        }
+                        try (Cursor<byte[]> cursor = connection.scan(node, options)) {
+                            reclaimKeys(cursor, key -> new String(key, StandardCharsets.UTF_8), config);
+                        }
+                    }
+                }
+            } else {
+                try (Cursor<String> cursor = redisTemplate.scan(options)) {
+                    reclaimKeys(cursor, Function.identity(), config);
+                }
+            }
+
+            // The migrated set is only consulted while a migration is in flight
+            checkReclaimable();
+            reclaimBatch(List.of(keyLayout.migratedRecords()), config.getMaxKeysPerSecond());
+
+            state = ReclamationStatus.State.COMPLETED;
+            log.info("V1 reclamation completed: {} keys, {} bytes freed", keysReclaimed.get(), bytesFreed.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "Interrupted";
+            state = ReclamationStatus.State.FAILED;
+        } catch (Exception e) {
+            log.error("Error during V1 reclamation", e);
+            error = e.getMessage();
+            state = ReclamationStatus.State.FAILED;
+        } finally {
+            finishedAt = Instant.now();
+        }
+    }
+
+    private <T> void reclaimKeys(Iterator<T> keys, Function<T, String> keyDecoder,
+                                 LiveMigrateProperties.Reclamation config) throws InterruptedException {
+        List<String> batch = new ArrayList<>(config.getBatchSize());
+        while (keys.hasNext()) {
+            batch.add(keyDecoder.apply(keys.next()));
+            if (batch.size() >= config.getBatchSize()) {
+                // A rollback or a new migration may have started since the job did
+                checkReclaimable();
+                reclaimBatch(batch, config.getMaxKeysPerSecond());
+                batch.clear();
+                awaitResume();
+            }
+        }
+        if (!batch.isEmpty()) {
+            checkReclaimable();
+            reclaimBatch(batch, config.getMaxKeysPerSecond());
+        }
+    }
+
+    /**
+     * Measures and unlinks one batch of keys, then sleeps long enough to stay under
+     * the configured rate. All commands of a batch are sent without waiting for
+     * individual replies.
+     */
+    private void reclaimBatch(List<String> keys, int maxKeysPerSecond) throws InterruptedException {
+        long batchStart = System.nanoTime();
+
+        Long freed = redisTemplate.execute((RedisCallback<Long>) connection -> {
+            @SuppressWarnings("unchecked")
+            RedisClusterAsyncCommands<byte[], byte[]> commands =
+                    (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+
+            byte[][] rawKeys = keys.stream()
+                    .map(key -> key.getBytes(StandardCharsets.UTF_8))
+                    .toArray(byte[][]::new);
+
+            List<RedisFuture<Long>> sizes = new ArrayList<>(rawKeys.length);
+            for (byte[] rawKey : rawKeys) {
+                sizes.add(commands.memoryUsage(rawKey));
+            }
+            RedisFuture<Long> unlinked = commands.unlink(rawKeys);
+
+            long bytes = 0;
+            for (RedisFuture<Long> size : sizes) {
+                Long value = await(size);
+                bytes += value != null ? value : 0L;
+            }
+            Long count = await(unlinked);
+            keysReclaimed.addAndGet(count != null ? count : 0L);
+            return bytes;
+        });
+        bytesFreed.addAndGet(freed != null ? freed : 0L);
+
+        long budgetNanos = keys.size() * 1_000_000_000L / Math.max(1, maxKeysPerSecond);
+        long remainingMillis = (budgetNanos - (System.nanoTime() - batchStart)) / 1_000_000L;
+        if (remainingMillis > 0) {
+            Thread.sleep(remainingMillis);
+        }
+    }
+
+    private static <T> T await(RedisFuture<T> future) {
+        return LettuceFutures.awaitOrCancel(future, COMMAND_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void awaitResume() throws InterruptedException {
+        synchronized (pauseMonitor) {
+            while (pauseRequested) {
+                pauseMonitor.wait();
+            }
+        }
+    }
+}
@@ -1,40 +1,48 @@
 package com.livemigrate.component;
 
+import com.livemigrate.config.KeyLayout;
 import com.livemigrate.model.MigrationState;
 import com.livemigrate.model.RecordVersion;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Component
 @RequiredArgsConstructor
 public class VersionSelector {
-    private static final String MIGRATED_RECORDS_KEY = "migration:migrated_records";
-
     private final StateTracker stateTracker;
     private final RedisTemplate<String, Object> redisTemplate;
+    private final KeyLayout keyLayout;
 
     public RecordVersion getVersion(UUID recordId) {
         MigrationState currentState = stateTracker.getState();
 
         // If migration hasn't started or is completed, return appropriate version
-        if (currentState == MigrationState.INITIALIZED) {
+        if (currentState == MigrationState.INITIALIZED || currentState == MigrationState.ROLLED_BACK) {
             return RecordVersion.V1;
         } else if (currentState == MigrationState.COMPLETED) {
             return RecordVersion.V2;
+        } else if (currentState == MigrationState.ROLLING_BACK) {
+            // V2 stays authoritative while V1 is rebuilt; writes go to both
+            return RecordVersion.IN_MIGRATION;
         }
 
-        // During migration, check if this record has been migrated
-        Boolean isMigrated = redisTemplate.opsForSet().isMember(
-                MIGRATED_RECORDS_KEY,
-                recordId.toString()
-        );
+        // During migration, check if this record has been migrated. Not near-cached:
+        // every batch commit changes the set, which would invalidate it each time
+        boolean isMigrated = Boolean.TRUE.equals(
+                redisTemplate.opsForSet().isMember(keyLayout.migratedRecords(), recordId.toString()));
 
-        if (Boolean.TRUE.equals(isMigrated)) {
+        if (isMigrated) {
             return RecordVersion.V2;
         } else if (currentState == MigrationState.MIGRATING ||
+                currentState == MigrationState.CATCHING_UP ||
                 currentState == MigrationState.VALIDATING) {
             return RecordVersion.IN_MIGRATION;
         } else {
@@ -42,8 +50,57 @@ public class VersionSelector {
         }
     }
 
+    /**
+     * Resolves the versions of several records at once: the migration state is read
+     * once and the migrated marks with a single SMISMEMBER.
+     */
+    public Map<UUID, RecordVersion> getVersions(List<UUID> recordIds) {
+        MigrationState currentState = stateTracker.getState();
+        Map<UUID, RecordVersion> versions = new LinkedHashMap<>();
+
+        if (currentState == MigrationState.INITIALIZED || currentState == MigrationState.COMPLETED
+                || currentState == MigrationState.ROLLING_BACK || currentState == MigrationState.ROLLED_BACK) {
+            RecordVersion version = switch (currentState) {
+                case COMPLETED -> RecordVersion.V2;
+                case ROLLING_BACK -> RecordVersion.IN_MIGRATION;
+                default -> RecordVersion.V1;
+            };
+            recordIds.forEach(id -> versions.put(id, version));
+            return versions;
+        }
+
+        RecordVersion unmigrated = currentState == MigrationState.MIGRATING ||
+                currentState == MigrationState.CATCHING_UP ||
+                currentState == MigrationState.VALIDATING ? RecordVersion.IN_MIGRATION : RecordVersion.V1;
+        Set<UUID> pending = new HashSet<>(filterUnmigrated(recordIds));
+        recordIds.forEach(id -> versions.put(id, pending.contains(id) ? unmigrated : RecordVersion.V2));
+        return versions;
+    }
+
+    /**
+     * Returns the IDs that have not been migrated yet, in their original order,
+     * using a single SMISMEMBER.
+     */
+    public List<UUID> filterUnmigrated(List<UUID> recordIds) {
+        if (recordIds.isEmpty()) {
+            return recordIds;
+        }
+        Map<Object, Boolean> migrated = redisTemplate.opsForSet().isMember(
+                keyLayout.migratedRecords(), recordIds.stream().map(UUID::toString).toArray());
+        return recordIds.stream()
+                .filter(id -> migrated == null || !Boolean.TRUE.equals(migrated.get(id.toString())))
+                .toList();
+    }
+
     public void markAsMigrated(UUID recordId) {
-        redisTemplate.opsForSet().add(MIGRATED_RECORDS_KEY, recordId.toString());
+        redisTemplate.opsForSet().add(keyLayout.migratedRecords(), recordId.toString());
+    }
+
+    public void markAsMigrated(List<UUID> recordIds) {
+        if (recordIds.isEmpty()) {
+            return;
+        }
+        redisTemplate.opsForSet().add(keyLayout.migratedRecords(), recordIds.stream().map(UUID::toString).toArray());
     }
 
     /**
@@ -53,7 +110,7 @@ public class VersionSelector {
      * @return The number of records that have been migrated to V2 format
      */
     public long getProcessedCount() {
-        Long size = redisTemplate.opsForSet().size(MIGRATED_RECORDS_KEY);
+        Long size = redisTemplate.opsForSet().size(keyLayout.migratedRecords());
         return size != null ? size : 0L;
     }
 
@@ -62,6 +119,6 @@ public class VersionSelector {
      * This is typically used when restarting a migration from scratch.
      */
     public void reset() {
-        redisTemplate.delete(MIGRATED_RECORDS_KEY);
+        redisTemplate.delete(keyLayout.migratedRecords());
     }
 }
\ No newline at end of file
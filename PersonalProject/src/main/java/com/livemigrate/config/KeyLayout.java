@@ -0,0 +1,218 @@
+package com.livemigrate.config;
+
+import com.livemigrate.model.IndexedField;
+
+import java.util.UUID;
+
+/**
+ * Central definition of every Redis key used by LiveMigrate.
+ *
+ * In standalone mode the historical key names are kept as they are. In cluster mode
+ * the record ID of V1 and V2 keys is wrapped in a hash tag, so both versions of a
+ * record always land in the same slot, and all global migration keys share a single
+ * hash tag so they can be used together in multi-key commands and scripts.
+ *
+ * Named migration jobs get a layout of their own from {@link #forJob(String)}:
+ * every key, record keys included, is prefixed with the job name, and in cluster
+ * mode the job's global keys share a hash tag of their own. The default job keeps
+ * the plain layout above.
+ *
+ * With the unified record layout both versions of a record live under a single
+ * record key, and {@link #v1Key(UUID)} and {@link #v2Key(UUID)} both resolve to it.
+ * The stored value says which version it holds, so upgrading a record simply
+ * overwrites the key.
+ */
+public class KeyLayout {
+    private static final String V1_KEY_PREFIX = "record:v1:";
+    private static final String V2_KEY_PREFIX = "record:v2:";
+    private static final String RECORD_KEY_PREFIX = "record:data:";
+    private static final String STAMP_KEY_PREFIX = "record:stamp:";
+    private static final String GLOBAL_HASH_TAG = "{livemigrate}:";
+    private static final String JOB_PREFIX = "job:";
+    public static final String DEFAULT_JOB = "default";
+
+    private final boolean clustered;
+    private final boolean unified;
+    // Null for the default job
+    private final String job;
+
+    public KeyLayout(boolean clustered, boolean unified) {
+        this(clustered, unified, null);
+    }
+
+    private KeyLayout(boolean clustered, boolean unified, String job) {
+        this.clustered = clustered;
+        this.unified = unified;
+        this.job = job;
+    }
+
+    /**
+     * Returns the layout of a named migration job.
+     */
+    public KeyLayout forJob(String name) {
+        return new KeyLayout(clustered, unified, name);
+    }
+
+    public boolean isClustered() {
+        return clustered;
+    }
+
+    public boolean isUnified() {
+        return unified;
+    }
+
+    public String getJob() {
+        return job != null ? job : DEFAULT_JOB;
+    }
+
+    // Record keys
+    public String v1Key(UUID id) {
+        return unified ? recordKey(id) : jobPrefix() + V1_KEY_PREFIX + recordSuffix(id);
+    }
+
+    public String v2Key(UUID id) {
+        return unified ? recordKey(id) : jobPrefix() + V2_KEY_PREFIX + recordSuffix(id);
+    }
+
+    /**
+     * Single key of a record in the unified layout, whichever version it holds.
+     */
+    public String recordKey(UUID id) {
+        return jobPrefix() + RECORD_KEY_PREFIX + recordSuffix(id);
+    }
+
+    /**
+     * Version stamp of a record, bumped by every foreground write.
+     */
+    public String stampKey(UUID id) {
+        return jobPrefix() + STAMP_KEY_PREFIX + recordSuffix(id);
+    }
+
+    public String v1KeyPattern() {
+        return unified ? recordKeyPattern() : jobPrefix() + V1_KEY_PREFIX + "*";
+    }
+
+    public String v2KeyPattern() {
+        return unified ? recordKeyPattern() : jobPrefix() + V2_KEY_PREFIX + "*";
+    }
+
+    public String recordKeyPattern() {
+        return jobPrefix() + RECORD_KEY_PREFIX + "*";
+    }
+
+    public String stampKeyPattern() {
+        return jobPrefix() + STAMP_KEY_PREFIX + "*";
+    }
+
+    /**
+     * Extracts the record ID from a V1, V2 or unified record key, with or without hash tag.
+     */
+    public UUID idFromKey(String key) {
+        String suffix = key.substring(key.lastIndexOf(':') + 1);
+        if (suffix.startsWith("{") && suffix.endsWith("}")) {
+            suffix = suffix.substring(1, suffix.length() - 1);
+        }
+        return UUID.fromString(suffix);
+    }
+
+    // Global record indexes
+    public String recordIds() {
+        return global("record:all_ids");
+    }
+
+    // Same IDs in a lex sorted set, so they can be paged through in order with a stable cursor
+    public String orderedRecordIds() {
+        return global("record:id_index");
+    }
+
+    // Secondary indexes: one lex sorted set per field, plus the values each record is indexed under
+    public String index(IndexedField field) {
+        return global("index:" + field.getProperty());
+    }
+
+    public String indexedValues() {
+        return global("index:record_values");
+    }
+
+    // Migration tracking keys
+    public String migratedRecords() {
+        return global("migration:migrated_records");
+    }
+
+    public String migrationState() {
+        return global("migration:state");
+    }
+
+    public String migrationProgress() {
+        return global("migration:progress");
+    }
+
+    public String lastProcessedId() {
+        return global("migration:last_processed_id");
+    }
+
+    public String completedAt() {
+        return global("migration:completed_at");
+    }
+
+    public String changeStream() {
+        return global("migration:changes");
+    }
+
+    // Set when change capture may have missed notifications, e.g. across a reconnect
+    public String captureGap() {
+        return global("migration:capture_gap");
+    }
+
+    public String rollbackCheckpoint() {
+        return global("migration:rollback_checkpoint");
+    }
+
+    // Why the migration was last paused, e.g. by the Redis resource guard
+    public String pauseReason() {
+        return global("migration:pause_reason");
+    }
+
+    public String hotRecords() {
+        return global("migration:hot_records");
+    }
+
+    // Held for one decay interval by the node that last decayed the hot records
+    public String hotRecordsDecay() {
+        return global("migration:hot_records_decay");
+    }
+
+    // Records whose migration failed: a sorted set scored by the time of the next
+    // attempt, the attempts made so far, and the records given up on with their cause
+    public String retryQueue() {
+        return global("migration:retry_queue");
+    }
+
+    public String retryAttempts() {
+        return global("migration:retry_attempts");
+    }
+
+    public String deadLetters() {
+        return global("migration:dead_letters");
+    }
+
+    // Named jobs, kept by the default layout only
+    public String migrationJobs() {
+        return global("migration:jobs");
+    }
+
+    private String recordSuffix(UUID id) {
+        return clustered ? "{" + id + "}" : id.toString();
+    }
+
+    private String global(String name) {
+        if (!clustered) {
+            return jobPrefix() + name;
+        }
+        return job != null ? "{livemigrate:" + job + "}:" + name : GLOBAL_HASH_TAG + name;
+    }
+
+    private String jobPrefix() {
+        return job != null ? JOB_PREFIX + job + ":" : "";
+    }
+}
@@ -0,0 +1,415 @@
+package com.livemigrate.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Tunable settings for the migration pipeline, bound from the {@code livemigrate.*}
+ * section of application.yaml.
+ */
+@Data
+@ConfigurationProperties(prefix = "livemigrate")
+public class LiveMigrateProperties {
+
+    private Redis redis = new Redis();
+    private Storage storage = new Storage();
+    private Proxy proxy = new Proxy();
+    private ShadowReads shadowReads = new ShadowReads();
+    private Backfill backfill = new Backfill();
+    private Jobs jobs = new Jobs();
+    private HotRecords hotRecords = new HotRecords();
+    private AccessHistory accessHistory = new AccessHistory();
+    private DryRun dryRun = new DryRun();
+    private Profiler profiler = new Profiler();
+    private Listing listing = new Listing();
+    private Bulk bulk = new Bulk();
+    private CatchUp catchUp = new CatchUp();
+    private Failures failures = new Failures();
+    private Journal journal = new Journal();
+    private Reclamation reclamation = new Reclamation();
+    private Rollback rollback = new Rollback();
+    private NearCache nearCache = new NearCache();
+    private ResourceGuard resourceGuard = new ResourceGuard();
+
+    /**
+     * Redis topology settings that are not covered by spring.data.redis.
+     */
+    @Data
+    public static class Redis {
+        // Lettuce ReadFrom setting for request-path record reads in cluster mode, e.g. upstream,
+        // replicaPreferred, nearest. Migration state, migrated marks and stamps are always read from the upstream.
+        private String readFrom = "replicaPreferred";
+        // Connections for SmartProxy requests and other request-path traffic
+        private ConnectionPool foreground = new ConnectionPool();
+        // Connections for the migration, rollback, reclamation and bulk jobs
+        private ConnectionPool backfill = ConnectionPool.backfill();
+    }
+
+    /**
+     * Settings for one of the Redis connection pools. Each pool has its own client
+     * resources, so a large backfill command never queues foreground commands
+     * behind it on the same connection.
+     */
+    @Data
+    public static class ConnectionPool {
+        // Maximum number of connections
+        private int maxActive = 8;
+        // Maximum number of idle connections
+        private int maxIdle = 8;
+        // Minimum number of idle connections
+        private int minIdle = 2;
+        // How long to wait for a free connection before failing
+        private Duration maxWait = Duration.ofSeconds(1);
+        // How long to wait for a command's reply
+        private Duration commandTimeout = Duration.ofSeconds(2);
+        // Pipeline all non-blocking commands over one shared connection instead of one pooled connection per
+        // call. Pooled connections are then only borrowed for blocking and transactional commands.
+        private boolean shareNativeConnection = true;
+
+        static ConnectionPool backfill() {
+            ConnectionPool pool = new ConnectionPool();
+            pool.setMaxActive(4);
+            pool.setMaxIdle(4);
+            pool.setMinIdle(1);
+            pool.setMaxWait(Duration.ofSeconds(10));
+            pool.setCommandTimeout(Duration.ofSeconds(10));
+            return pool;
+        }
+    }
+
+    /**
+     * Record storage layout settings.
+     */
+    @Data
+    public static class Storage {
+        // How V2 records are stored: one JSON document per key, or one hash field per record field
+        private V2Layout v2Layout = V2Layout.JSON;
+        // Separate V1 and V2 keys per record, or a single key whose value says which version it holds
+        private RecordLayout recordLayout = RecordLayout.SPLIT;
+    }
+
+    public enum V2Layout {
+        JSON,
+        HASH
+    }
+
+    public enum RecordLayout {
+        SPLIT,
+        UNIFIED
+    }
+
+    /**
+     * Settings for reads through the SmartProxy.
+     */
+    @Data
+    public static class Proxy {
+        // Resolve the version and read the record in one script call, when the near cache is off
+        private boolean serverSideResolution = true;
+    }
+
+    /**
+     * Settings for comparing V1 and V2 of sampled reads during a migration.
+     */
+    @Data
+    public static class ShadowReads {
+        // Fetch and compare the version that was not served, off the request thread
+        private boolean enabled = false;
+
+        // One in this many reads is compared
+        private int sampleRate = 100;
+
+        // Comparisons waiting for a worker; further ones are dropped
+        private int queueCapacity = 1000;
+
+        // Threads doing the comparisons
+        private int threads = 1;
+    }
+
+    /**
+     * Settings for the backfill sweep that copies V1 records to V2.
+     */
+    @Data
+    public static class Backfill {
+        // How often records that were written by the foreground mid-batch are re-migrated
+        // before they are left to the catch-up stage
+        private int maxConflictRetries = 3;
+
+        // Lifetime of a record's version stamp after its last write. It only has to
+        // outlive a single batch; a stamp that expired restarts at the current time
+        // in microseconds, so it cannot repeat a value a backfill read earlier.
+        private Duration stampTtl = Duration.ofHours(1);
+
+        // Order in which records are migrated
+        private MigrationOrdering ordering = MigrationOrdering.SEQUENTIAL;
+    }
+
+    public enum MigrationOrdering {
+        // Walk record IDs in sorted order
+        SEQUENTIAL,
+        // Migrate the most frequently read records first, then walk the remaining IDs
+        HOT_FIRST
+    }
+
+    /**
+     * Settings for the read-frequency tracking that feeds hot-first migration.
+     */
+    @Data
+    public static class HotRecords {
+        // One in this many reads is counted
+        private int sampleRate = 16;
+
+        // Counters per sketch row; more counters mean fewer hash collisions
+        private int sketchWidth = 4096;
+
+        // Number of hottest records published to Redis and migrated first
+        private int topK = 1000;
+
+        // How often this node's hottest records are pushed to Redis
+        private Duration publishInterval = Duration.ofSeconds(10);
+
+        // How often all counts are halved, so the ranking follows recent traffic
+        private Duration decayInterval = Duration.ofMinutes(5);
+    }
+
+    /**
+     * Settings for migration dry runs.
+     */
+    @Data
+    public static class DryRun {
+        // Records sampled by default; 385 gives a ±5% margin at 95% confidence for large datasets
+        private int sampleSize = 385;
+    }
+
+    /**
+     * Settings for the keyspace memory profiler.
+     */
+    @Data
+    public static class Profiler {
+        // Keys per namespace measured with MEMORY USAGE; all keys are still counted
+        private int sampleSize = 1000;
+
+        // SCAN COUNT hint per iteration
+        private int scanCount = 1000;
+
+        // Largest keys reported per namespace, picked from all keys rather than the sample
+        private int outliers = 10;
+    }
+
+    /**
+     * Settings for retrying records whose migration failed.
+     */
+    @Data
+    public static class Failures {
+        // Attempts per record, the first one included, before it is dead-lettered
+        private int maxAttempts = 5;
+
+        // Delay before the first retry, doubled for every further attempt
+        private Duration initialBackoff = Duration.ofSeconds(1);
+
+        // Upper bound for the delay between two attempts
+        private Duration maxBackoff = Duration.ofMinutes(1);
+
+        // Due records retried per batch
+        private int retryBatchSize = 100;
+    }
+
+    /**
+     * Settings for running several named migration jobs side by side.
+     */
+    @Data
+    public static class Jobs {
+        // Records per second shared fairly by all running migrations; 0 for no global limit
+        private int globalRecordsPerSecond = 0;
+
+        // Limit of the default job and of jobs created without one; 0 for no limit
+        private int maxRecordsPerSecond = 0;
+
+        // Migrations allowed to run at the same time, the default job included
+        private int maxConcurrent = 4;
+    }
+
+    /**
+     * Settings for the local migration journal.
+     */
+    @Data
+    public static class Journal {
+        // Entries a compaction keeps, and the most that are checked when reconciling
+        public static final int RETAINED_ENTRIES = 16;
+
+        private boolean enabled = true;
+
+        // Memory-mapped journal file, local to this node
+        private String path = "data/migration.journal";
+
+        // Batch entries kept before the journal is compacted to its latest entries;
+        // has to leave room for new entries after the retained ones
+        private int maxEntries = 100000;
+
+        public void setMaxEntries(int maxEntries) {
+            if (maxEntries <= RETAINED_ENTRIES) {
+                throw new IllegalArgumentException(
+                        "livemigrate.journal.max-entries must be greater than " + RETAINED_ENTRIES);
+            }
+            this.maxEntries = maxEntries;
+        }
+
+        // Force every entry to disk; without it entries survive process crashes but not power loss
+        private boolean sync = false;
+    }
+
+    /**
+     * Settings for the paginated record listing.
+     */
+    @Data
+    public static class Listing {
+        // Records fetched and written to the response at a time
+        private int batchSize = 200;
+
+        // Largest page a single request may ask for
+        private int maxLimit = 10000;
+    }
+
+    /**
+     * Settings for bulk NDJSON export and import.
+     */
+    @Data
+    public static class Bulk {
+        // Records read or written per batch
+        private int batchSize = 1000;
+
+        // Threads parsing, transforming and writing batches; 0 uses one per core
+        private int parallelism = 0;
+
+        // Parsed batches waiting to be written before reading pauses
+        private int maxInFlightBatches = 8;
+
+        public int effectiveParallelism() {
+            return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    /**
+     * Settings for maintaining the access history fields of V2 records.
+     */
+    @Data
+    public static class AccessHistory {
+        // Record reads through the SmartProxy into accessCount, lastAccessTime and recentAccesses.
+        // Only applies to the hash V2 layout, where a flush touches just those fields
+        private boolean enabled = true;
+
+        // How often buffered accesses are written; longer intervals coalesce more reads per write
+        private Duration flushInterval = Duration.ofSeconds(5);
+
+        // Accesses buffered between flushes before further ones are dropped
+        private int bufferCapacity = 100000;
+
+        // Size of the recentAccesses ring kept per record
+        private int recentAccessLimit = 10;
+    }
+
+    /**
+     * Settings for the change-capture catch-up stage that runs between the
+     * backfill sweep and the final switch.
+     */
+    @Data
+    public static class CatchUp {
+        // Maximum number of change log entries replayed per catch-up batch
+        private int batchSize = 100;
+
+        // Catch-up hands over to validation once fewer entries than this remain
+        private long lagThreshold = 10;
+
+        // Upper bound on catch-up batches, so a write-heavy workload cannot stall cutover forever
+        private int maxBatches = 1000;
+
+        // Longest the change log may take to drain at cutover; the migration pauses when it is exceeded
+        private Duration drainTimeout = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Settings for the background job that removes V1 data after cutover.
+     */
+    @Data
+    public static class Reclamation {
+        // Keys scanned and unlinked per batch
+        private int batchSize = 500;
+
+        // Upper bound on deletions per second, to keep the job out of the way of live traffic
+        private int maxKeysPerSecond = 5000;
+
+        // How long V1 data is kept after the migration completed, as a rollback window
+        private Duration retention = Duration.ofHours(24);
+    }
+
+    /**
+     * Settings for rolling a completed migration back to V1.
+     */
+    @Data
+    public static class Rollback {
+        // Records read, down-converted and written per batch
+        private int batchSize = 500;
+
+        // Batches down-converted and written in parallel; 0 uses one thread per core
+        private int parallelism = 0;
+
+        // Upper bound on records rolled back per second, across all threads
+        private int maxRecordsPerSecond = 5000;
+
+        public int effectiveParallelism() {
+            return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    /**
+     * Settings for the client-side near cache kept coherent by Redis key tracking.
+     */
+    @Data
+    public static class NearCache {
+        // Serve record and state reads from local memory (standalone Redis only)
+        private boolean enabled = true;
+
+        // Maximum number of values and hash fields held locally before keys are evicted
+        private int maxEntries = 10000;
+    }
+
+    /**
+     * Settings for slowing down or pausing migrations while Redis is under memory,
+     * replication or latency pressure. Ratios and limits of 0 are not checked.
+     */
+    @Data
+    public static class ResourceGuard {
+        // Sample Redis INFO and the LATENCY monitor and act on the thresholds below
+        private boolean enabled = true;
+
+        // Time between samples
+        private Duration interval = Duration.ofSeconds(5);
+
+        // Used memory as a share of maxmemory at which migrations are slowed down, and paused
+        private double memoryThrottleRatio = 0.75;
+        private double memoryPauseRatio = 0.90;
+
+        // Memory fragmentation ratio at which migrations are slowed down; fragmentation
+        // mostly stays high after load drops, so this is off unless set
+        private double fragmentationThrottleRatio = 0;
+
+        // Commands per second at which migrations are slowed down
+        private long maxOpsPerSecond = 0;
+
+        // Replica lag at which migrations are slowed down, and paused
+        private Duration replicationLagThrottle = Duration.ofSeconds(5);
+        private Duration replicationLagPause = Duration.ofSeconds(30);
+
+        // Latency spike reported by the LATENCY monitor at which migrations are slowed down, and paused
+        private Duration latencyThrottle = Duration.ofMillis(100);
+        private Duration latencyPause = Duration.ofMillis(500);
+
+        // Share of the normal global rate kept by all migrations while they are slowed down.
+        // The normal rate is jobs.global-records-per-second, or the live sweep's pace if unset
+        private double throttleFraction = 0.25;
+
+        // Consecutive samples without pressure before migrations speed up or resume again
+        private int clearSamples = 3;
+    }
+}
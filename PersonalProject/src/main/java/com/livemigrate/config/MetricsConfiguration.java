@@ -3,6 +3,7 @@ package com.livemigrate.config;
 import io.micrometer.core.instrument.*;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -21,6 +22,15 @@ public class MetricsConfiguration {
         return new SimpleMeterRegistry();
     }
 
+    /**
+     * Tags every metric with the migration job it belongs to. Named jobs override the
+     * tag with their own name, so all meters of a name share the same tag keys.
+     */
+    @Bean
+    public MeterRegistryCustomizer<MeterRegistry> jobTagCustomizer() {
+        return registry -> registry.config().commonTags("job", KeyLayout.DEFAULT_JOB);
+    }
+
     /**
      * Creates a Timer metric to track the duration of record transformations.
      * This helps us monitor the performance of our migration process.
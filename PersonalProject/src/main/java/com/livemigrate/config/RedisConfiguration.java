@@ -4,15 +4,35 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
 import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.metrics.MicrometerCommandLatencyRecorder;
+import io.lettuce.core.metrics.MicrometerOptions;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.core.type.AnnotatedTypeMetadata;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 
@@ -42,11 +62,133 @@ public class RedisConfiguration {
     }
 
     /**
-     * Creates and configures the Redis connection factory with appropriate timeouts
-     * and connection pooling settings.
+     * Describes how keys are laid out, depending on whether we talk to a cluster and
+     * on the configured record layout.
      */
     @Bean
-    public RedisConnectionFactory redisConnectionFactory(RedisProperties properties) {
+    public KeyLayout keyLayout(RedisProperties properties, LiveMigrateProperties liveMigrateProperties) {
+        LiveMigrateProperties.Storage storage = liveMigrateProperties.getStorage();
+        boolean unified = storage.getRecordLayout() == LiveMigrateProperties.RecordLayout.UNIFIED;
+        // Both versions share the key, so V2 cannot be a hash while V1 is a document
+        if (unified && storage.getV2Layout() != LiveMigrateProperties.V2Layout.JSON) {
+            throw new IllegalStateException("The unified record layout requires livemigrate.storage.v2-layout=json");
+        }
+        return new KeyLayout(isClusterMode(properties), unified);
+    }
+
+    /**
+     * Client resources for the foreground pool. Command latencies, which include the
+     * time a command waits behind earlier ones on its connection, are recorded with
+     * a pool=foreground tag.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ClientResources foregroundClientResources(MeterRegistry meterRegistry) {
+        return clientResources("foreground", meterRegistry);
+    }
+
+    /**
+     * Client resources for the backfill pool, recorded with a pool=backfill tag.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ClientResources backfillClientResources(MeterRegistry meterRegistry) {
+        return clientResources("backfill", meterRegistry);
+    }
+
+    /**
+     * Creates the connection factory for request-path traffic. It is the primary
+     * one, so components that need the native client or subscribe to notifications
+     * get a plain Lettuce factory.
+     */
+    @Bean
+    @Primary
+    public RedisConnectionFactory redisConnectionFactory(RedisProperties properties,
+                                                         LiveMigrateProperties liveMigrateProperties,
+                                                         @Qualifier("foregroundClientResources") ClientResources clientResources) {
+        return connectionFactory(properties, liveMigrateProperties.getRedis().getForeground(), clientResources,
+                ReadFrom.UPSTREAM);
+    }
+
+    /**
+     * Creates the connection factory for request-path record reads. It reads from
+     * where livemigrate.redis.read-from says; everything else, the migration state,
+     * migrated marks and version stamps included, is read from the upstream so
+     * routing decisions never see a lagging replica. Standalone Redis has no
+     * replicas to read from, so there the bean does not exist and these reads use
+     * the foreground factory.
+     */
+    @Bean
+    @Conditional(ClusterModeCondition.class)
+    public RedisConnectionFactory replicaReadConnectionFactory(RedisProperties properties,
+                                                               LiveMigrateProperties liveMigrateProperties,
+                                                               @Qualifier("foregroundClientResources") ClientResources clientResources) {
+        return connectionFactory(properties, liveMigrateProperties.getRedis().getForeground(), clientResources,
+                ReadFrom.valueOf(liveMigrateProperties.getRedis().getReadFrom()));
+    }
+
+    /**
+     * Creates the connection factory for the migration and other bulk jobs.
+     */
+    @Bean
+    public RedisConnectionFactory backfillConnectionFactory(RedisProperties properties,
+                                                            LiveMigrateProperties liveMigrateProperties,
+                                                            @Qualifier("backfillClientResources") ClientResources clientResources) {
+        return connectionFactory(properties, liveMigrateProperties.getRedis().getBackfill(), clientResources,
+                ReadFrom.UPSTREAM);
+    }
+
+    private static ClientResources clientResources(String pool, MeterRegistry meterRegistry) {
+        MicrometerOptions options = MicrometerOptions.builder()
+                .histogram(true)
+                .tags(Tags.of("pool", pool))
+                .build();
+        return DefaultClientResources.builder()
+                .commandLatencyRecorder(new MicrometerCommandLatencyRecorder(meterRegistry, options))
+                .build();
+    }
+
+    /**
+     * Creates a Lettuce connection factory with the given pool's timeouts and
+     * pooling settings. When cluster nodes are configured, a cluster connection is
+     * created instead of a standalone one, reading from the given nodes.
+     */
+    private LettuceConnectionFactory connectionFactory(RedisProperties properties,
+                                                       LiveMigrateProperties.ConnectionPool pool,
+                                                       ClientResources clientResources,
+                                                       ReadFrom readFrom) {
+        LettucePoolingClientConfiguration.LettucePoolingClientConfigurationBuilder builder =
+                LettucePoolingClientConfiguration.builder();
+        builder.clientResources(clientResources);
+        builder.commandTimeout(pool.getCommandTimeout());
+
+        GenericObjectPoolConfig<?> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(pool.getMaxActive());
+        poolConfig.setMaxIdle(pool.getMaxIdle());
+        poolConfig.setMinIdle(pool.getMinIdle());
+        poolConfig.setMaxWait(pool.getMaxWait());
+        builder.poolConfig(poolConfig);
+
+        LettuceConnectionFactory factory;
+        if (isClusterMode(properties)) {
+            // Follow slot migrations and failovers
+            ClusterTopologyRefreshOptions refreshOptions = ClusterTopologyRefreshOptions.builder()
+                    .enableAllAdaptiveRefreshTriggers()
+                    .enablePeriodicRefresh(Duration.ofSeconds(30))
+                    .build();
+            builder.clientOptions(ClusterClientOptions.builder()
+                    .topologyRefreshOptions(refreshOptions)
+                    .build());
+            builder.readFrom(readFrom);
+
+            factory = new LettuceConnectionFactory(clusterConfiguration(properties), builder.build());
+        } else {
+            factory = new LettuceConnectionFactory(standaloneConfiguration(properties), builder.build());
+        }
+        // Shared: non-blocking commands are pipelined over one connection; otherwise each call borrows its own
+        factory.setShareNativeConnection(pool.isShareNativeConnection());
+        return factory;
+    }
+
+    private RedisStandaloneConfiguration standaloneConfiguration(RedisProperties properties) {
         // Create the standalone configuration
         RedisStandaloneConfiguration standaloneConfig = new RedisStandaloneConfiguration();
         standaloneConfig.setHostName(properties.getHost() != null ? properties.getHost() : "localhost");
@@ -60,45 +202,61 @@ public class RedisConfiguration {
         if (properties.getPassword() != null && !properties.getPassword().isEmpty()) {
             standaloneConfig.setPassword(properties.getPassword());
         }
+        return standaloneConfig;
+    }
 
-        // Configure connection pooling settings
-        LettucePoolingClientConfiguration.LettucePoolingClientConfigurationBuilder builder =
-                LettucePoolingClientConfiguration.builder();
+    private RedisClusterConfiguration clusterConfiguration(RedisProperties properties) {
+        RedisProperties.Cluster cluster = properties.getCluster();
+        RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration(cluster.getNodes());
+        if (cluster.getMaxRedirects() != null) {
+            clusterConfig.setMaxRedirects(cluster.getMaxRedirects());
+        }
 
-        // Set command timeout - using a default of 2 seconds if not specified
-        Duration timeout = properties.getTimeout() != null ? properties.getTimeout() : Duration.ofSeconds(2);
-        builder.commandTimeout(timeout);
-
-        // Configure connection pooling if enabled
-        if (properties.getLettuce() != null && properties.getLettuce().getPool() != null) {
-            GenericObjectPoolConfig<?> poolConfig = new GenericObjectPoolConfig<>();
-            RedisProperties.Pool poolProps = properties.getLettuce().getPool();
-
-            poolConfig.setMaxTotal(poolProps.getMaxActive());
-            poolConfig.setMaxIdle(poolProps.getMaxIdle());
-            poolConfig.setMinIdle(poolProps.getMinIdle());
-            if (poolProps.getMaxWait() != null) {
-                poolConfig.setMaxWait(poolProps.getMaxWait());
-            } else {
-                poolConfig.setMaxWait(Duration.ofMillis(1000));
-            }
-
-            builder.poolConfig(poolConfig);
+        // Set authentication if provided
+        if (properties.getUsername() != null) {
+            clusterConfig.setUsername(properties.getUsername());
+        }
+        if (properties.getPassword() != null && !properties.getPassword().isEmpty()) {
+            clusterConfig.setPassword(properties.getPassword());
         }
+        return clusterConfig;
+    }
 
-        return new LettuceConnectionFactory(standaloneConfig, builder.build());
+    private static boolean isClusterMode(RedisProperties properties) {
+        return properties.getCluster() != null
+                && properties.getCluster().getNodes() != null
+                && !properties.getCluster().getNodes().isEmpty();
+    }
+
+    /**
+     * Matches when cluster nodes are configured, the same test as {@link #isClusterMode}
+     * made before the properties are bound.
+     */
+    static class ClusterModeCondition implements Condition {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return Binder.get(context.getEnvironment())
+                    .bind("spring.data.redis.cluster.nodes", Bindable.listOf(String.class))
+                    .map(nodes -> !nodes.isEmpty())
+                    .orElse(false);
+        }
     }
 
     /**
      * Creates and configures the RedisTemplate with appropriate serializers for
-     * different types of data.
+     * different types of data. Commands issued while a thread is marked as
+     * {@link RedisWorkload#BACKFILL} use the backfill pool.
      */
     @Bean
     public RedisTemplate<String, Object> redisTemplate(
             RedisConnectionFactory connectionFactory,
+            @Qualifier("backfillConnectionFactory") RedisConnectionFactory backfillConnectionFactory,
+            @Qualifier("replicaReadConnectionFactory") ObjectProvider<RedisConnectionFactory> replicaReadConnectionFactory,
             GenericJackson2JsonRedisSerializer jsonSerializer) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
-        template.setConnectionFactory(connectionFactory);
+        // Each command goes to the pool of the workload that issues it
+        template.setConnectionFactory(new WorkloadRoutingConnectionFactory(connectionFactory, backfillConnectionFactory,
+                replicaReadConnectionFactory.getIfAvailable()));
 
         // Configure serializers
         StringRedisSerializer stringSerializer = new StringRedisSerializer();
@@ -113,4 +271,15 @@ public class RedisConfiguration {
 
         return template;
     }
-}
\ No newline at end of file
+
+    /**
+     * Creates the listener container used to subscribe to keyspace notifications,
+     * e.g. for capturing V1 writes while a migration is running.
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+}
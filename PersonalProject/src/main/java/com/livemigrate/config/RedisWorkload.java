@@ -0,0 +1,61 @@
+package com.livemigrate.config;
+
+/**
+ * The kind of Redis traffic the current thread produces, which decides the
+ * connection pool its commands go to. Threads are foreground by default; the
+ * migration, rollback, reclamation and bulk jobs mark themselves as backfill for
+ * as long as they run.
+ */
+public enum RedisWorkload {
+    FOREGROUND,
+    BACKFILL,
+    // Request-path reads of record payloads, which may be served by a cluster replica
+    REPLICA_READ;
+
+    private static final ThreadLocal<RedisWorkload> CURRENT = ThreadLocal.withInitial(() -> FOREGROUND);
+
+    public static RedisWorkload current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs the action with the current thread marked as producing this workload,
+     * restoring the previous one afterwards.
+     */
+    public <E extends Exception> void run(Task<E> action) throws E {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the action with the current thread marked as producing this workload,
+     * restoring the previous one afterwards, and returns its result.
+     */
+    public <T, E extends Exception> T call(Action<T, E> action) throws E {
+        RedisWorkload previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.call();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Work that runs as a workload, and may throw the checked exception E.
+     */
+    @FunctionalInterface
+    public interface Task<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * Work with a result that runs as a workload, and may throw the checked exception E.
+     */
+    @FunctionalInterface
+    public interface Action<T, E extends Exception> {
+        T call() throws E;
+    }
+}
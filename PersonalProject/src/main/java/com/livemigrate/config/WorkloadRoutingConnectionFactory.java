@@ -0,0 +1,57 @@
+package com.livemigrate.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+
+/**
+ * Hands out connections from the foreground or the backfill pool, depending on
+ * the {@link RedisWorkload} of the calling thread. This lets the components share
+ * one RedisTemplate while the migration's large batches stay off the connections
+ * that serve requests. Record reads marked as {@link RedisWorkload#REPLICA_READ}
+ * go to a foreground-sized pool that may read from cluster replicas, or to the
+ * foreground pool when there is none.
+ */
+@RequiredArgsConstructor
+public class WorkloadRoutingConnectionFactory implements RedisConnectionFactory {
+    private final RedisConnectionFactory foreground;
+    private final RedisConnectionFactory backfill;
+    // Null without replicas to read from (standalone Redis)
+    private final RedisConnectionFactory replicaReads;
+
+    @Override
+    public RedisConnection getConnection() {
+        return current().getConnection();
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        return current().getClusterConnection();
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return foreground.getConvertPipelineAndTxResults();
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        return current().getSentinelConnection();
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return foreground.translateExceptionIfPossible(ex);
+    }
+
+    private RedisConnectionFactory current() {
+        return switch (RedisWorkload.current()) {
+            case FOREGROUND -> foreground;
+            case BACKFILL -> backfill;
+            case REPLICA_READ -> replicaReads != null ? replicaReads : foreground;
+        };
+    }
+}
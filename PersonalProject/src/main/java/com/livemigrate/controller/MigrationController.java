@@ -1,14 +1,40 @@
 package com.livemigrate.controller;
 
+import com.livemigrate.component.KeyspaceProfiler;
 import com.livemigrate.component.MigrationCoordinator;
+import com.livemigrate.component.MigrationFailures;
+import com.livemigrate.component.MigrationJobs;
+import com.livemigrate.component.MigrationRollback;
+import com.livemigrate.component.OfflineMigrator;
+import com.livemigrate.component.RecordLayoutConverter;
+import com.livemigrate.component.RedisResourceGuard;
 import com.livemigrate.component.SmartProxy;
 import com.livemigrate.component.StateTracker;
+import com.livemigrate.component.V1Reclaimer;
+import com.livemigrate.config.LiveMigrateProperties;
 import com.livemigrate.model.CustomerRecordV1;
 import com.livemigrate.model.CustomerRecordV2;
+import com.livemigrate.model.DryRunReport;
+import com.livemigrate.model.IndexedField;
+import com.livemigrate.model.KeyspaceProfile;
+import com.livemigrate.model.LayoutConversionReport;
+import com.livemigrate.model.MigrationJobStatus;
 import com.livemigrate.model.MigrationState;
+import com.livemigrate.model.OfflineMigrationReport;
+import com.livemigrate.model.ReclamationStatus;
+import com.livemigrate.model.RecordVersion;
+import com.livemigrate.model.ResourceGuardStatus;
+import com.livemigrate.model.RollbackStatus;
+import com.livemigrate.service.RecordService;
 import com.livemigrate.service.TestDataGenerator;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -17,7 +43,10 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,9 +58,20 @@ import java.util.UUID;
 public class MigrationController {
 
     private final MigrationCoordinator migrationCoordinator;
+    private final OfflineMigrator offlineMigrator;
+    private final RecordLayoutConverter recordLayoutConverter;
+    private final MigrationFailures migrationFailures;
     private final StateTracker stateTracker;
     private final SmartProxy smartProxy;
     private final TestDataGenerator testDataGenerator;
+    private final V1Reclaimer v1Reclaimer;
+    private final MigrationRollback migrationRollback;
+    private final MigrationJobs migrationJobs;
+    private final LiveMigrateProperties properties;
+    private final KeyspaceProfiler keyspaceProfiler;
+    private final RedisResourceGuard redisResourceGuard;
+    private final ObjectMapper objectMapper;
+    private final RecordService recordService;
 
     @PostMapping("/migration/start")
     public ResponseEntity<Map<String, String>> startMigration() {
@@ -71,14 +111,482 @@ public class MigrationController {
         MigrationStatus status = new MigrationStatus();
         status.setState(stateTracker.getState());
         status.setProgress(stateTracker.getProgress());
+        if (status.getState() == MigrationState.PAUSED) {
+            status.setPauseReason(stateTracker.getPauseReason().orElse(null));
+        }
         return ResponseEntity.ok(status);
     }
 
+    @PostMapping("/migration/dry-run")
+    public ResponseEntity<Object> dryRunMigration(@RequestParam(required = false) Integer sampleSize) {
+        try {
+            int size = sampleSize != null ? sampleSize : properties.getDryRun().getSampleSize();
+            DryRunReport report = migrationCoordinator.dryRun(size);
+            return ResponseEntity.ok(report);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Migrates everything at once while writes are frozen: from an NDJSON snapshot
+     * in the request body (source=snapshot) or from the V1 keys in Redis
+     * (source=keyspace).
+     */
+    @PostMapping("/migration/offline")
+    public ResponseEntity<Object> offlineMigration(
+            @RequestParam(defaultValue = "keyspace") String source,
+            HttpServletRequest request) {
+        try {
+            OfflineMigrationReport report = switch (source) {
+                case "snapshot" -> offlineMigrator.migrateSnapshot(request.getInputStream());
+                case "keyspace" -> offlineMigrator.migrateKeyspace();
+                default -> throw new IllegalArgumentException("Unknown source: " + source);
+            };
+            return ResponseEntity.ok(report);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Offline migration failed: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Copies all records from the split V1/V2 keys to one key per record, for
+     * switching to the unified layout. Writes have to be stopped until the
+     * application is restarted with that layout.
+     */
+    @PostMapping("/storage/convert")
+    public ResponseEntity<Object> convertRecordLayout(@RequestParam(defaultValue = "false") boolean removeSource) {
+        try {
+            LayoutConversionReport report = recordLayoutConverter.convert(removeSource);
+            return ResponseEntity.ok(report);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Layout conversion failed: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/migration/dead-letters")
+    public ResponseEntity<Map<String, Object>> getDeadLetters(@RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("count", migrationFailures.getDeadLetterCount());
+        response.put("pendingRetries", migrationFailures.getPendingRetryCount());
+        response.put("deadLetters", migrationFailures.getDeadLetters(Math.max(1, limit)));
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Puts the given dead-lettered records, or all of them without a body, back into
+     * the retry queue.
+     */
+    @PostMapping("/migration/dead-letters/redrive")
+    public ResponseEntity<Map<String, Object>> redriveDeadLetters(@RequestBody(required = false) List<UUID> ids) {
+        try {
+            int redriven = migrationCoordinator.redriveDeadLetters(ids != null ? ids : List.of());
+            return ResponseEntity.ok(Map.of("redriven", redriven));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Failed to re-drive dead letters: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Creates a named migration job with its own keyspace, e.g. for a tenant.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<Object> createJob(
+            @RequestParam String name,
+            @RequestParam(required = false) Integer maxRecordsPerSecond) {
+        try {
+            migrationJobs.create(name, maxRecordsPerSecond);
+            return ResponseEntity.ok(migrationJobs.getStatus(name));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<List<MigrationJobStatus>> listJobs() {
+        return ResponseEntity.ok(migrationJobs.list().stream()
+                .map(job -> migrationJobs.getStatus(job.name()))
+                .toList());
+    }
+
+    @GetMapping("/jobs/{name}/status")
+    public ResponseEntity<Object> getJobStatus(@PathVariable String name) {
+        try {
+            return ResponseEntity.ok(migrationJobs.getStatus(name));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/jobs/{name}/start")
+    public ResponseEntity<Map<String, String>> startJob(@PathVariable String name) {
+        try {
+            migrationJobs.start(name);
+            return ResponseEntity.ok(Map.of("message", "Migration of job " + name + " started"));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/jobs/{name}/pause")
+    public ResponseEntity<Map<String, String>> pauseJob(@PathVariable String name) {
+        try {
+            migrationJobs.pause(name);
+            return ResponseEntity.ok(Map.of("message", "Migration of job " + name + " paused"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/jobs/{name}/resume")
+    public ResponseEntity<Map<String, String>> resumeJob(@PathVariable String name) {
+        try {
+            migrationJobs.resume(name);
+            return ResponseEntity.ok(Map.of("message", "Migration of job " + name + " resumed"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PutMapping("/jobs/{name}/limit")
+    public ResponseEntity<Object> updateJobLimit(
+            @PathVariable String name,
+            @RequestParam int maxRecordsPerSecond) {
+        try {
+            migrationJobs.updateLimit(name, maxRecordsPerSecond);
+            return ResponseEntity.ok(migrationJobs.getStatus(name));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/jobs/{name}")
+    public ResponseEntity<Map<String, String>> deleteJob(@PathVariable String name) {
+        try {
+            migrationJobs.delete(name);
+            return ResponseEntity.ok(Map.of("message", "Migration job " + name + " deleted"));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/jobs/{name}/records/{id}")
+    public ResponseEntity<Object> getJobRecord(@PathVariable String name, @PathVariable UUID id) {
+        try {
+            return migrationJobs.get(name).proxy().getRecord(id)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PutMapping("/jobs/{name}/records/v1/{id}")
+    public ResponseEntity<Map<String, String>> updateJobRecordV1(
+            @PathVariable String name,
+            @PathVariable UUID id,
+            @RequestBody CustomerRecordV1 record) {
+        return updateJobRecord(name, id, record.getId(), record);
+    }
+
+    @PutMapping("/jobs/{name}/records/v2/{id}")
+    public ResponseEntity<Map<String, String>> updateJobRecordV2(
+            @PathVariable String name,
+            @PathVariable UUID id,
+            @RequestBody CustomerRecordV2 record) {
+        return updateJobRecord(name, id, record.getId(), record);
+    }
+
+    private ResponseEntity<Map<String, String>> updateJobRecord(String name, UUID id, UUID recordId, Object record) {
+        if (!id.equals(recordId)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "ID in URL does not match record ID"));
+        }
+        try {
+            migrationJobs.get(name).proxy().updateRecord(id, record);
+            return ResponseEntity.ok(Map.of("message", "Record updated successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Failed to update record: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/jobs/{name}/test-data/generate")
+    public ResponseEntity<Map<String, Object>> generateJobTestData(
+            @PathVariable String name,
+            @RequestParam(defaultValue = "100") int count) {
+        try {
+            if (count <= 0 || count > 10000) {
+                throw new IllegalArgumentException("Count must be between 1 and 10000");
+            }
+            List<UUID> generatedIds = migrationJobs.get(name).testDataGenerator().generateTestRecords(count);
+            return ResponseEntity.ok(Map.of("recordCount", generatedIds.size()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/reclamation/start")
+    public ResponseEntity<Map<String, String>> startReclamation() {
+        try {
+            v1Reclaimer.start();
+            return ResponseEntity.ok(Map.of("message", "V1 reclamation started successfully"));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/reclamation/pause")
+    public ResponseEntity<Map<String, String>> pauseReclamation() {
+        v1Reclaimer.pause();
+        return ResponseEntity.ok(Map.of("message", "V1 reclamation paused successfully"));
+    }
+
+    @PostMapping("/reclamation/resume")
+    public ResponseEntity<Map<String, String>> resumeReclamation() {
+        v1Reclaimer.resume();
+        return ResponseEntity.ok(Map.of("message", "V1 reclamation resumed successfully"));
+    }
+
+    @GetMapping("/reclamation/status")
+    public ResponseEntity<ReclamationStatus> getReclamationStatus() {
+        return ResponseEntity.ok(v1Reclaimer.getStatus());
+    }
+
+    /**
+     * Rebuilds V1 from V2 and routes reads back to V1. Starting it again after a
+     * failure continues from the last checkpoint.
+     */
+    @PostMapping("/rollback/start")
+    public ResponseEntity<Map<String, String>> startRollback() {
+        try {
+            migrationRollback.start();
+            return ResponseEntity.ok(Map.of("message", "Rollback started successfully"));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/rollback/pause")
+    public ResponseEntity<Map<String, String>> pauseRollback() {
+        migrationRollback.pause();
+        return ResponseEntity.ok(Map.of("message", "Rollback paused successfully"));
+    }
+
+    @PostMapping("/rollback/resume")
+    public ResponseEntity<Map<String, String>> resumeRollback() {
+        migrationRollback.resume();
+        return ResponseEntity.ok(Map.of("message", "Rollback resumed successfully"));
+    }
+
+    @GetMapping("/rollback/status")
+    public ResponseEntity<RollbackStatus> getRollbackStatus() {
+        return ResponseEntity.ok(migrationRollback.getStatus());
+    }
+
+    @PostMapping("/keyspace/profile")
+    public ResponseEntity<Map<String, String>> startKeyspaceProfile() {
+        try {
+            keyspaceProfiler.start();
+            return ResponseEntity.ok(Map.of("message", "Keyspace profiling started successfully"));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/keyspace/profile")
+    public ResponseEntity<KeyspaceProfile> getKeyspaceProfile() {
+        return ResponseEntity.ok(keyspaceProfiler.getProfile());
+    }
+
+    @GetMapping("/redis/guard")
+    public ResponseEntity<ResourceGuardStatus> getResourceGuardStatus() {
+        return ResponseEntity.ok(redisResourceGuard.getStatus());
+    }
+
+    /**
+     * Lists records in ID order. The response is streamed as chunked JSON, one
+     * batch of records at a time; pass its nextCursor to get the next page.
+     */
+    @GetMapping("/records")
+    public ResponseEntity<StreamingResponseBody> listRecords(
+            @RequestParam(required = false) UUID cursor,
+            @RequestParam(defaultValue = "1000") int limit) {
+        LiveMigrateProperties.Listing listing = properties.getListing();
+        if (limit <= 0 || limit > listing.getMaxLimit()) {
+            Map<String, String> error = Map.of("error", "Limit must be between 1 and " + listing.getMaxLimit());
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(out -> objectMapper.writeValue(out, error));
+        }
+
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("records");
+                UUID nextCursor = smartProxy.listRecords(cursor, limit, listing.getBatchSize(), batch -> {
+                    try {
+                        for (Object record : batch) {
+                            generator.writeObject(record);
+                        }
+                        generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+                generator.writeStringField("nextCursor", nextCursor != null ? nextCursor.toString() : null);
+                generator.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * Exports all records of one version as NDJSON, optionally gzip-compressed.
+     */
+    @GetMapping("/records/export")
+    public ResponseEntity<StreamingResponseBody> exportRecords(
+            @RequestParam(defaultValue = "V1") RecordVersion version,
+            @RequestParam(defaultValue = "false") boolean compress) {
+        if (version == RecordVersion.IN_MIGRATION) {
+            Map<String, String> error = Map.of("error", "Only V1 and V2 records can be exported");
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(out -> objectMapper.writeValue(out, error));
+        }
+
+        String fileName = "records-" + version.name().toLowerCase() + (compress ? ".ndjson.gz" : ".ndjson");
+        MediaType contentType = MediaType.parseMediaType(compress ? "application/gzip" : "application/x-ndjson");
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(out -> recordService.exportRecords(version, out, compress));
+    }
+
+    /**
+     * Imports NDJSON records of one version, as produced by the export. Gzip
+     * request bodies are detected automatically. V2 records can only be imported
+     * once a migration has started and until it is rolled back: before that, and
+     * after it, reads never go to V2.
+     */
+    @PostMapping("/records/import")
+    public ResponseEntity<Map<String, Object>> importRecords(
+            @RequestParam(defaultValue = "V1") RecordVersion version,
+            HttpServletRequest request) {
+        MigrationState state = stateTracker.getState();
+        if (version == RecordVersion.V2 && !acceptsV2Records(state)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "V2 records cannot be imported in migration state " + state));
+        }
+        try {
+            long imported = recordService.importRecords(version, request.getInputStream());
+            return ResponseEntity.ok(Map.of(
+                    "message", "Records imported successfully",
+                    "imported", imported
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Failed to import records: " + e.getMessage()));
+        }
+    }
+
+    private static boolean acceptsV2Records(MigrationState state) {
+        return switch (state) {
+            case INITIALIZED, PREPARING, ROLLING_BACK, ROLLED_BACK -> false;
+            default -> true;
+        };
+    }
+
     @GetMapping("/records/{id}")
-    public ResponseEntity<Object> getRecord(@PathVariable UUID id) {
-        return smartProxy.getRecord(id)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<Object> getRecord(
+            @PathVariable UUID id,
+            @RequestParam(required = false) List<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return smartProxy.getRecord(id)
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        }
+
+        try {
+            return smartProxy.getRecord(id, fields)
+                    .map(projection -> ResponseEntity.ok((Object) projection))
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/records/index/{field}/{value}")
+    public ResponseEntity<Object> findRecords(
+            @PathVariable String field,
+            @PathVariable String value,
+            @RequestParam(required = false) UUID cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            if (limit <= 0 || limit > 1000) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Limit must be between 1 and 1000"));
+            }
+            SmartProxy.IndexPage page = smartProxy.findRecords(IndexedField.fromName(field), value, cursor, limit);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("records", page.records());
+            response.put("nextCursor", page.nextCursor());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Rebuilds the secondary indexes from the stored V2 records, e.g. for V2 data
+     * written before the indexes were introduced.
+     */
+    @PostMapping("/records/index/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildIndexes() {
+        try {
+            long indexed = recordService.rebuildIndexes(properties.getListing().getBatchSize());
+            return ResponseEntity.ok(Map.of(
+                    "message", "Indexes rebuilt successfully",
+                    "indexed", indexed
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Failed to rebuild indexes: " + e.getMessage()));
+        }
     }
 
     @PutMapping("/records/v1/{id}")
@@ -148,6 +656,7 @@ public class MigrationController {
 class MigrationStatus {
     private MigrationState state;
     private double progress;
+    private String pauseReason;
 
     // Getters and setters
     public MigrationState getState() {
@@ -165,4 +674,12 @@ class MigrationStatus {
     public void setProgress(double progress) {
         this.progress = progress;
     }
-}
\ No newline at end of file
+
+    public String getPauseReason() {
+        return pauseReason;
+    }
+
+    public void setPauseReason(String pauseReason) {
+        this.pauseReason = pauseReason;
+    }
+}
@@ -0,0 +1,17 @@
+package com.livemigrate.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accesses of a single record aggregated over one flush interval.
+ */
+@Data
+public class AccessSummary {
+    private long accessCount;
+    private Instant lastAccessTime;
+    private List<AccessRecord> recentAccesses = new ArrayList<>();  // Oldest first
+}
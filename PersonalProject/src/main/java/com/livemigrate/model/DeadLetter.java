@@ -0,0 +1,17 @@
+package com.livemigrate.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// A record the migration gave up on after its last retry, kept with the cause
+@Data
+public class DeadLetter {
+    private UUID id;
+    // Migration stage the last attempt failed in, e.g. sweep, catch-up or retry
+    private String stage;
+    private String cause;
+    private int attempts;
+    private Instant failedAt;
+}
@@ -0,0 +1,35 @@
+package com.livemigrate.model;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.Map;
+
+// Cost estimate of a migration, computed from a sample of V1 records without writing anything
+@Data
+public class DryRunReport {
+    private long totalRecords;
+    private long remainingRecords;
+    private int sampleSize;
+    private double marginOfError;  // At 95% confidence, for proportions such as validation failure rates
+
+    // Transform time per record, in microseconds
+    private double transformMeanMicros;
+    private double transformP50Micros;
+    private double transformP95Micros;
+    private double transformP99Micros;
+
+    // Serialized sizes as written by the configured serializer and V2 layout
+    private double v1MeanBytes;
+    private double v2MeanBytes;
+    private double sizeGrowthRatio;
+    private double v1MeanMemoryBytes;  // Measured with MEMORY USAGE on the sampled keys
+    private long projectedMemoryGrowthBytes;
+
+    // Duration at the coordinator's batch size and pacing
+    private Duration projectedDuration;
+
+    // Share of records failing each validation check, and missing each field
+    private Map<String, Double> validationFailureRates;
+    private Map<String, Double> missingFieldRates;
+}
@@ -0,0 +1,44 @@
+package com.livemigrate.model;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * V2 metadata fields that have a secondary index, so records can be looked up by
+ * value instead of by ID only.
+ */
+public enum IndexedField {
+    CUSTOMER_SEGMENT("customerSegment", RecordMetadata::getCustomerSegment),
+    DATA_REGION("dataRegion", RecordMetadata::getDataRegion),
+    ACCOUNT_STATUS("accountStatus", RecordMetadata::getAccountStatus);
+
+    private final String property;
+    private final Function<RecordMetadata, String> accessor;
+
+    IndexedField(String property, Function<RecordMetadata, String> accessor) {
+        this.property = property;
+        this.accessor = accessor;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * Returns the value a record is indexed under, or an empty string if it has none.
+     */
+    public String valueOf(CustomerRecordV2 record) {
+        String value = record.getMetadata() != null ? accessor.apply(record.getMetadata()) : null;
+        return value != null ? value : "";
+    }
+
+    /**
+     * Finds an indexed field by its property name ("customerSegment") or constant name.
+     */
+    public static IndexedField fromName(String name) {
+        return Arrays.stream(values())
+                .filter(field -> field.property.equalsIgnoreCase(name) || field.name().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Not an indexed field: " + name));
+    }
+}
@@ -0,0 +1,51 @@
+package com.livemigrate.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Memory footprint of the LiveMigrate key namespaces, measured on a sample of keys
+@Data
+public class KeyspaceProfile {
+    public enum State {
+        IDLE,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private State state = State.IDLE;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+
+    private Map<String, Namespace> namespaces = new LinkedHashMap<>();
+
+    // Exact MEMORY USAGE of the single-key tracking structures (ID index, migrated set, change log, ...)
+    private Map<String, Long> trackingKeyBytes = new LinkedHashMap<>();
+
+    // Mean serialized bytes per V2 record for each RecordSection, and the extrapolated total
+    private Map<RecordSection, Double> sectionMeanBytes = new LinkedHashMap<>();
+    private Map<RecordSection, Long> sectionEstimatedBytes = new LinkedHashMap<>();
+
+    @Data
+    public static class Namespace {
+        private String pattern;
+        private long keyCount;           // Exact, from a full SCAN
+        private int sampledKeys;
+        private double meanBytes;
+        private long estimatedTotalBytes;
+        private Map<String, Long> histogram = new LinkedHashMap<>();  // Upper bucket bound -> sampled keys
+        private List<KeyUsage> largestKeys = new ArrayList<>();
+    }
+
+    @Data
+    public static class KeyUsage {
+        private final String key;
+        private final long bytes;
+    }
+}
@@ -0,0 +1,15 @@
+package com.livemigrate.model;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+// Outcome of converting records from separate V1/V2 keys to one key per record
+@Data
+public class LayoutConversionReport {
+    private long records;
+    private long v1Records;        // Copied as V1: not migrated yet, or reads still go to V1
+    private long v2Records;        // Copied as V2 and marked as migrated
+    private boolean sourceRemoved; // Whether the record:v1 and record:v2 keys were deleted
+    private Duration duration;
+}
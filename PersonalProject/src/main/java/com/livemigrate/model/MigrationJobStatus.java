@@ -0,0 +1,18 @@
+package com.livemigrate.model;
+
+import lombok.Data;
+
+// State of one named migration job
+@Data
+public class MigrationJobStatus {
+    private String name;
+    private MigrationState state;
+    private double progress;
+    private boolean running;
+    // Why the job is paused, e.g. by the Redis resource guard
+    private String pauseReason;
+    // Configured limit in records per second, 0 for none
+    private int maxRecordsPerSecond;
+    // Share of the global budget while running, 0 if not limited
+    private double allocatedRecordsPerSecond;
+}
@@ -5,9 +5,13 @@ public enum MigrationState {
     INITIALIZED,
     PREPARING,
     MIGRATING,
+    CATCHING_UP,
     VALIDATING,
     SWITCHING,
     COMPLETED,
     PAUSED,
-    ERROR
+    ERROR,
+    // Rollback of a completed migration: V1 is rebuilt from V2, then reads go back to V1
+    ROLLING_BACK,
+    ROLLED_BACK
 }
@@ -0,0 +1,18 @@
+package com.livemigrate.model;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+// Outcome of an offline migration, with its throughput compared to the live path
+@Data
+public class OfflineMigrationReport {
+    private String source;         // "snapshot" (NDJSON upload) or "keyspace" (V1 keys in Redis)
+    private long records;
+    private int parallelism;
+    private Duration duration;     // End to end: reading, transforming and loading
+
+    private double recordsPerSecond;
+    private double liveRecordsPerSecond;  // Pacing of the live sweep, before Redis round trips
+    private double speedup;
+}
@@ -0,0 +1,24 @@
+package com.livemigrate.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+// Progress snapshot of the post-cutover V1 reclamation job
+@Data
+public class ReclamationStatus {
+    public enum State {
+        IDLE,
+        RUNNING,
+        PAUSED,
+        COMPLETED,
+        FAILED
+    }
+
+    private State state;
+    private long keysReclaimed;
+    private long bytesFreed;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+}
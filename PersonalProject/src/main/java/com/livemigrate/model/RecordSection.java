@@ -0,0 +1,53 @@
+package com.livemigrate.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Groups the fields of a V2 record into the sections used for field-level storage
+ * and projections. Metadata fields are addressed with a "metadata." prefix, which is
+ * also how they are named inside the Redis hash of a record.
+ */
+public enum RecordSection {
+    CORE("id", "createdAt", "checksum", "version", "lastModified"),
+    CUSTOMER_DATA("customerData"),
+    MIGRATION_TRACKING("metadata.source", "metadata.migratedAt", "metadata.migratedBy", "metadata.migrationBatch"),
+    DATA_QUALITY("metadata.profileCompleteness", "metadata.missingFields", "metadata.validationStatus"),
+    COMPLIANCE("metadata.consentSettings", "metadata.lastConsentUpdate", "metadata.dataRegion",
+            "metadata.appliedPolicies"),
+    COMMUNICATION("metadata.communicationPreferences"),
+    ACCESS_HISTORY("metadata.recentAccesses", "metadata.accessCount", "metadata.lastAccessTime"),
+    BUSINESS("metadata.customerSegment", "metadata.lifetimeValue", "metadata.accountStatus",
+            "metadata.subscribedServices");
+
+    public static final String METADATA_PREFIX = "metadata.";
+
+    private final List<String> fields;
+
+    RecordSection(String... fields) {
+        this.fields = List.of(fields);
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Returns every storable field of a V2 record.
+     */
+    public static List<String> allFields() {
+        return Arrays.stream(values())
+                .flatMap(section -> section.fields.stream())
+                .toList();
+    }
+
+    /**
+     * Finds the section a field belongs to.
+     */
+    public static Optional<RecordSection> ofField(String field) {
+        return Arrays.stream(values())
+                .filter(section -> section.fields.contains(field))
+                .findFirst();
+    }
+}
@@ -0,0 +1,35 @@
+package com.livemigrate.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Latest Redis health sample taken by the resource guard, and what it did about it
+@Data
+public class ResourceGuardStatus {
+    public enum Pressure {
+        NONE,
+        THROTTLE,
+        PAUSE
+    }
+
+    private boolean enabled;
+    private Pressure pressure = Pressure.NONE;
+    // Thresholds crossed by the latest sample
+    private List<String> reasons = new ArrayList<>();
+    // Jobs the guard paused and will resume once the pressure clears
+    private List<String> pausedJobs = new ArrayList<>();
+    private Instant sampledAt;
+    private String error;
+
+    // Worst node for memory, fragmentation, lag and latency; ops summed over all nodes
+    private long usedMemory;
+    private long maxMemory;
+    private double memoryRatio;
+    private double fragmentationRatio;
+    private long opsPerSecond;
+    private long replicationLagSeconds;
+    private long latencyMillis;
+}
@@ -0,0 +1,27 @@
+package com.livemigrate.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+// Progress snapshot of the V2 to V1 rollback job
+@Data
+public class RollbackStatus {
+    public enum State {
+        IDLE,
+        RUNNING,
+        PAUSED,
+        COMPLETED,
+        FAILED
+    }
+
+    private State state;
+    private long recordsRolledBack;
+    private long totalRecords;
+    private double progress;
+    // Records the foreground wrote during their rollback and that were written again
+    private long conflicts;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+}
@@ -0,0 +1,72 @@
+package com.livemigrate.service;
+
+import com.livemigrate.config.RedisWorkload;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs batches on a fixed pool of worker threads with back-pressure: submitting
+ * blocks while the configured number of batches is in flight, so a producer that
+ * is faster than the workers (or than Redis behind them) cannot fill the heap.
+ *
+ * The first failure of any batch is kept and rethrown by {@link #await()}; once
+ * a batch has failed, producers should stop submitting (see {@link #hasFailed()}).
+ */
+public class BoundedBatchExecutor implements AutoCloseable {
+    private final ExecutorService workers;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    public BoundedBatchExecutor(String threadName, int parallelism, int maxInFlight) {
+        this.workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Queues a batch, waiting for a free slot first. The batch runs as the same
+     * {@link RedisWorkload} as the submitting thread.
+     */
+    public void submit(Runnable batch) throws InterruptedException {
+        RedisWorkload workload = RedisWorkload.current();
+        inFlight.acquire();
+        workers.execute(() -> {
+            try {
+                workload.run(batch::run);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    public boolean hasFailed() {
+        return failure.get() != null;
+    }
+
+    /**
+     * Waits until every submitted batch has finished, then rethrows the first failure.
+     */
+    public void await() throws InterruptedException {
+        // All slots free means nothing is in flight any more
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,340 @@
+package com.livemigrate.service;
+
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.config.LiveMigrateProperties;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushListener;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local near-cache for hot keys, kept coherent by Redis server-assisted client-side
+ * caching (RESP3 CLIENT TRACKING).
+ *
+ * All cached reads go through a dedicated tracking connection, so Redis remembers
+ * which keys this node holds and pushes an invalidation as soon as any client, on
+ * any node, modifies one of them. Entries are dropped on invalidation, and the whole
+ * cache is flushed whenever the tracking connection is lost, since invalidations may
+ * have been missed in the meantime. Raw bytes are cached and deserialized per read,
+ * so callers can never mutate a cached value.
+ *
+ * When the cache is disabled, or in cluster mode where tracking would need a
+ * connection per node, every call reads straight from Redis.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NearCache {
+    // Sub-key under which a plain string value is cached
+    private static final String VALUE = "";
+    // Sub-key marking that a cached hash holds all of its fields
+    private static final String ALL_FIELDS = "\0all";
+    private static final byte[] MISSING = new byte[0];
+
+    private final RedisConnectionFactory connectionFactory;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final KeyLayout keyLayout;
+    private final LiveMigrateProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    // Redis key -> cached sub-entries (value or hash fields)
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Object>> entries = new ConcurrentHashMap<>();
+    // Cached values and hash fields over all keys; approximate, recounted before evicting
+    private final AtomicInteger entryCount = new AtomicInteger();
+
+    private StatefulRedisConnection<byte[], byte[]> trackingConnection;
+    private volatile boolean trackingActive;
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    @PostConstruct
+    void connect() {
+        hitCounter = Counter.builder("nearcache.requests").tag("result", "hit").register(meterRegistry);
+        missCounter = Counter.builder("nearcache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("nearcache.keys", entries, Map::size).register(meterRegistry);
+        Gauge.builder("nearcache.entries", entryCount, AtomicInteger::get).register(meterRegistry);
+
+        if (!properties.getNearCache().isEnabled()) {
+            return;
+        }
+        if (keyLayout.isClustered()) {
+            log.warn("Near cache is not supported in cluster mode, reads go straight to Redis");
+            return;
+        }
+
+        RedisClient client = (RedisClient) ((LettuceConnectionFactory) connectionFactory).getRequiredNativeClient();
+        trackingConnection = client.connect(ByteArrayCodec.INSTANCE);
+        trackingConnection.addListener((PushListener) this::onPushMessage);
+        client.addListener(new RedisConnectionStateListener() {
+            @Override
+            public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+                if (connection == trackingConnection) {
+                    enableTracking();
+                }
+            }
+
+            @Override
+            public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+                if (connection == trackingConnection) {
+                    trackingActive = false;
+                    clear();
+                }
+            }
+        });
+        enableTracking();
+    }
+
+    @PreDestroy
+    void close() {
+        if (trackingConnection != null) {
+            trackingConnection.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return trackingConnection != null;
+    }
+
+    /**
+     * Reads and deserializes a string value, as written through the RedisTemplate.
+     */
+    public Object getValue(String key) {
+        byte[] raw = (byte[]) lookup(key, VALUE, () -> {
+            byte[] value = trackingConnection.sync().get(rawKey(key));
+            return value != null ? value : MISSING;
+        });
+        if (raw == null) {
+            raw = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                    connection.stringCommands().get(rawKey(key)));
+        }
+        return raw == null || raw.length == 0 ? null : redisTemplate.getValueSerializer().deserialize(raw);
+    }
+
+    /**
+     * Reads all fields of a hash. Returns an empty map if the key does not exist.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getHash(String key) {
+        if (!trackingActive) {
+            return decodeHash(redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection ->
+                    connection.hashCommands().hGetAll(rawKey(key))));
+        }
+
+        ConcurrentHashMap<String, Object> slot = entries.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        if (slot.containsKey(ALL_FIELDS)) {
+            hitCounter.increment();
+            return (Map<String, String>) slot.get(ALL_FIELDS);
+        }
+
+        missCounter.increment();
+        Map<String, String> fields = decodeHash(trackingConnection.sync().hgetall(rawKey(key)));
+        store(slot, ALL_FIELDS, Collections.unmodifiableMap(fields));
+        return fields;
+    }
+
+    /**
+     * Reads some fields of a hash. Fields that are not set are absent from the result.
+     */
+    public Map<String, String> getHashFields(String key, List<String> fields) {
+        if (!trackingActive) {
+            return readHashFields(key, fields, false);
+        }
+
+        Map<String, String> complete = entries.containsKey(key) && entries.get(key).containsKey(ALL_FIELDS)
+                ? getHash(key) : null;
+        if (complete != null) {
+            Map<String, String> result = new LinkedHashMap<>();
+            fields.forEach(field -> {
+                if (complete.containsKey(field)) {
+                    result.put(field, complete.get(field));
+                }
+            });
+            return result;
+        }
+
+        ConcurrentHashMap<String, Object> slot = entries.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        List<String> missing = fields.stream().filter(field -> !slot.containsKey(field)).toList();
+        if (missing.isEmpty()) {
+            hitCounter.increment();
+        } else {
+            missCounter.increment();
+            Map<String, String> loaded = readHashFields(key, missing, true);
+            missing.forEach(field -> store(slot, field, loaded.containsKey(field) ? loaded.get(field) : MISSING));
+        }
+
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String field : fields) {
+            Object value = slot.get(field);
+            if (value instanceof String string) {
+                result.put(field, string);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops a key locally. Redis invalidates other nodes by itself; this makes a
+     * node's own writes visible to its next read without waiting for the push.
+     */
+    public void invalidate(String key) {
+        remove(key);
+    }
+
+    /**
+     * Returns a cached sub-entry, loading it through the tracking connection on a
+     * miss. Returns null when tracking is not active and the caller has to read
+     * from Redis directly.
+     *
+     * The slot for the key is created before the read is sent. If an invalidation
+     * arrives while the read is in flight, it removes that slot, so the loaded value
+     * ends up in a detached map and is never served.
+     */
+    private Object lookup(String key, String subKey, java.util.function.Supplier<Object> loader) {
+        if (!trackingActive) {
+            return null;
+        }
+
+        ConcurrentHashMap<String, Object> slot = entries.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        Object cached = slot.get(subKey);
+        if (cached != null) {
+            hitCounter.increment();
+            return cached;
+        }
+
+        missCounter.increment();
+        Object loaded = loader.get();
+        store(slot, subKey, loaded);
+        return loaded;
+    }
+
+    private Map<String, String> readHashFields(String key, List<String> fields, boolean tracked) {
+        byte[][] rawFields = fields.stream().map(NearCache::rawKey).toArray(byte[][]::new);
+        List<byte[]> values;
+        if (tracked) {
+            values = trackingConnection.sync().hmget(rawKey(key), rawFields).stream()
+                    .map(keyValue -> keyValue.hasValue() ? keyValue.getValue() : null)
+                    .toList();
+        } else {
+            values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                    connection.hashCommands().hMGet(rawKey(key), rawFields));
+        }
+
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; values != null && i < fields.size(); i++) {
+            if (values.get(i) != null) {
+                result.put(fields.get(i), new String(values.get(i), StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    private void onPushMessage(PushMessage message) {
+        if (!"invalidate".equals(message.getType())) {
+            return;
+        }
+        List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+        Object keys = content.size() > 1 ? content.get(1) : null;
+        if (keys instanceof List<?> invalidated) {
+            invalidated.forEach(key -> remove(String.valueOf(key)));
+        } else {
+            // A null key list means Redis flushed its tracking table, e.g. after FLUSHALL
+            clear();
+        }
+    }
+
+    private void enableTracking() {
+        clear();
+        trackingConnection.async().clientTracking(TrackingArgs.Builder.enabled())
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        log.warn("Could not enable client tracking, near cache stays bypassed", error);
+                        trackingActive = false;
+                    } else {
+                        trackingActive = true;
+                        log.info("Near cache tracking enabled");
+                    }
+                });
+    }
+
+    private void store(ConcurrentHashMap<String, Object> slot, String subKey, Object value) {
+        Object previous = slot.put(subKey, value);
+        entryCount.addAndGet(weight(value) - (previous != null ? weight(previous) : 0));
+        evictIfFull();
+    }
+
+    private void remove(String key) {
+        ConcurrentHashMap<String, Object> slot = entries.remove(key);
+        if (slot != null) {
+            entryCount.addAndGet(-weight(slot));
+        }
+    }
+
+    private void clear() {
+        entries.clear();
+        entryCount.set(0);
+    }
+
+    private void evictIfFull() {
+        int maxEntries = properties.getNearCache().getMaxEntries();
+        if (entryCount.get() <= maxEntries) {
+            return;
+        }
+        // Values stored into a slot that was removed meanwhile are counted but never
+        // uncounted, so the count is corrected before anything is evicted
+        entryCount.set(entries.values().stream().mapToInt(NearCache::weight).sum());
+
+        // Approximate eviction: drop arbitrary keys until a tenth of the room is free.
+        // Redis keeps sending invalidations for them, which are simply ignored.
+        Iterator<String> keys = entries.keySet().iterator();
+        while (entryCount.get() > maxEntries - maxEntries / 10 && keys.hasNext()) {
+            remove(keys.next());
+        }
+    }
+
+    /**
+     * The number of cached entries a sub-entry (or a whole slot) stands for; a
+     * complete hash counts each of its fields.
+     */
+    private static int weight(Object value) {
+        if (value instanceof ConcurrentHashMap<?, ?> slot) {
+            return slot.values().stream().mapToInt(NearCache::weight).sum();
+        }
+        return value instanceof Map<?, ?> fields ? Math.max(1, fields.size()) : 1;
+    }
+
+    private static Map<String, String> decodeHash(Map<byte[], byte[]> fields) {
+        Map<String, String> decoded = new LinkedHashMap<>();
+        if (fields != null) {
+            fields.forEach((field, value) -> decoded.put(
+                    new String(field, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8)));
+        }
+        return decoded;
+    }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,164 @@
+package com.livemigrate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.livemigrate.model.CustomerRecordV2;
+import com.livemigrate.model.RecordSection;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Converts V2 records to and from the field-level hash layout.
+ *
+ * Every top-level field and every metadata field becomes its own hash field holding
+ * plain JSON. Numbers are stored as bare JSON numbers so that counters such as
+ * metadata.accessCount can be updated in place with HINCRBY, and timestamps are
+ * stored as ISO-8601 strings so server-side scripts can handle them losslessly.
+ */
+@Component
+public class RecordFieldCodec {
+    private static final String METADATA_FIELD = "metadata";
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    /**
+     * Splits a record into hash fields.
+     */
+    public Map<String, String> encode(CustomerRecordV2 record) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        ObjectNode root = mapper.valueToTree(record);
+
+        root.fields().forEachRemaining(entry -> {
+            if (!METADATA_FIELD.equals(entry.getKey())) {
+                fields.put(entry.getKey(), entry.getValue().toString());
+            }
+        });
+
+        JsonNode metadata = root.get(METADATA_FIELD);
+        if (metadata != null && metadata.isObject()) {
+            metadata.fields().forEachRemaining(entry ->
+                    fields.put(RecordSection.METADATA_PREFIX + entry.getKey(), entry.getValue().toString()));
+        }
+        return fields;
+    }
+
+    /**
+     * Rebuilds a record from some or all of its hash fields. Fields that are not
+     * present are left at their defaults, which is how projected reads are served.
+     */
+    public CustomerRecordV2 decode(Map<String, String> fields) {
+        try {
+            ObjectNode root = mapper.createObjectNode();
+            ObjectNode metadata = mapper.createObjectNode();
+
+            for (Map.Entry<String, String> entry : fields.entrySet()) {
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                JsonNode value = mapper.readTree(entry.getValue());
+                if (entry.getKey().startsWith(RecordSection.METADATA_PREFIX)) {
+                    metadata.set(entry.getKey().substring(RecordSection.METADATA_PREFIX.length()), value);
+                } else {
+                    root.set(entry.getKey(), value);
+                }
+            }
+
+            if (!metadata.isEmpty()) {
+                root.set(METADATA_FIELD, metadata);
+            }
+            return mapper.treeToValue(root, CustomerRecordV2.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to decode V2 record fields", e);
+        }
+    }
+
+    /**
+     * Encodes a single field value the same way {@link #encode(CustomerRecordV2)} would.
+     */
+    public String encodeValue(Object value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Failed to encode field value", e);
+        }
+    }
+
+    /**
+     * Resolves user-facing field names into hash field names. Accepts hash field
+     * names ("metadata.customerSegment"), bare metadata field names
+     * ("customerSegment"), "metadata" for all metadata fields, and section names
+     * ("ACCESS_HISTORY").
+     */
+    public List<String> resolveFields(Collection<String> names) {
+        List<String> allFields = RecordSection.allFields();
+        Set<String> resolved = new LinkedHashSet<>();
+
+        for (String name : names) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (allFields.contains(trimmed)) {
+                resolved.add(trimmed);
+            } else if (allFields.contains(RecordSection.METADATA_PREFIX + trimmed)) {
+                resolved.add(RecordSection.METADATA_PREFIX + trimmed);
+            } else if (METADATA_FIELD.equals(trimmed)) {
+                allFields.stream()
+                        .filter(field -> field.startsWith(RecordSection.METADATA_PREFIX))
+                        .forEach(resolved::add);
+            } else {
+                RecordSection section = Arrays.stream(RecordSection.values())
+                        .filter(candidate -> candidate.name().equalsIgnoreCase(trimmed))
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalArgumentException("Unknown record field: " + trimmed));
+                resolved.addAll(section.getFields());
+            }
+        }
+        return List.copyOf(resolved);
+    }
+
+    /**
+     * Builds the response body of a projected read: only the requested fields, in
+     * the same nested shape as the full record (metadata fields stay under
+     * "metadata"). The record ID is always included. Works for V1 and V2 records;
+     * fields a record does not have are simply left out.
+     */
+    public ObjectNode project(Object record, List<String> hashFields) {
+        ObjectNode source = mapper.valueToTree(record);
+        ObjectNode projection = mapper.createObjectNode();
+        projection.set("id", source.get("id"));
+
+        for (String field : hashFields) {
+            if (field.startsWith(RecordSection.METADATA_PREFIX)) {
+                String name = field.substring(RecordSection.METADATA_PREFIX.length());
+                JsonNode value = source.path(METADATA_FIELD).get(name);
+                if (value != null) {
+                    ObjectNode metadata = projection.has(METADATA_FIELD)
+                            ? (ObjectNode) projection.get(METADATA_FIELD)
+                            : projection.putObject(METADATA_FIELD);
+                    metadata.set(name, value);
+                }
+            } else if (source.has(field)) {
+                projection.set(field, source.get(field));
+            }
+        }
+        return projection;
+    }
+
+    /**
+     * Returns the size of a value once encoded as JSON, e.g. to measure payloads.
+     */
+    public int encodedSize(Object value) {
+        return encodeValue(value).getBytes(StandardCharsets.UTF_8).length;
+    }
+}
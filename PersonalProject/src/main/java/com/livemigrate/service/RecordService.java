@@ -1,25 +1,143 @@
 package com.livemigrate.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.config.RedisWorkload;
+import com.livemigrate.model.AccessSummary;
 import com.livemigrate.model.CustomerRecordV1;
 import com.livemigrate.model.CustomerRecordV2;
+import com.livemigrate.model.IndexedField;
+import com.livemigrate.model.RecordSection;
+import com.livemigrate.model.RecordVersion;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.zset.DefaultTuple;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.StreamSupport;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class RecordService {
-    // Redis key prefixes for different record versions
-    private static final String V1_KEY_PREFIX = "record:v1:";
-    private static final String V2_KEY_PREFIX = "record:v2:";
-    private static final String RECORD_IDS_KEY = "record:all_ids";
+    private static final Duration BATCH_TIMEOUT = Duration.ofSeconds(10);
+    private static final int BULK_BUFFER_SIZE = 64 * 1024;
+
+    // Separates value and record ID in secondary index members; sorts before any other character
+    private static final char INDEX_SEPARATOR = '\0';
+
+    private static final RedisScript<Long> HASH_PATCH_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/hash_patch.lua"), Long.class);
+    private static final RedisScript<Long> HASH_INCREMENT_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/hash_increment.lua"), Long.class);
+
+    private static final RedisScript<List<String>> COMMIT_BATCH_SCRIPT = listScript("scripts/commit_batch.lua");
+    private static final RedisScript<Long> ACCESS_HISTORY_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/access_history.lua"), Long.class);
+    private static final RedisScript<Long> INDEX_UPDATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/index_update.lua"), Long.class);
+    private static final RedisScript<Long> COMMIT_RECORD_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/commit_record.lua"), Long.class);
+    private static final RedisScript<List<Object>> RESOLVE_READ_SCRIPT = listScript("scripts/resolve_read.lua");
+    private static final RedisScript<Long> WRITE_RECORD_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/write_record.lua"), Long.class);
+
+    // Read-modify-write attempts of a JSON record before a write is given up on
+    private static final int MAX_REWRITE_ATTEMPTS = 10;
+
+    private static final RedisSerializer<Long> LONG_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+
+    @SuppressWarnings("unchecked")
+    private static <T> RedisScript<List<T>> listScript(String path) {
+        return (RedisScript<List<T>>) (RedisScript<?>) RedisScript.of(new ClassPathResource(path), List.class);
+    }
+
+    /**
+     * The result serializer for a script returning a list: script results are
+     * deserialized element by element, so it is the elements' serializer.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> RedisSerializer<List<T>> elementsAs(RedisSerializer<?> elementSerializer) {
+        return (RedisSerializer<List<T>>) elementSerializer;
+    }
 
     private final RedisTemplate<String, Object> redisTemplate;
+    private final KeyLayout keyLayout;
+    private final RecordFieldCodec fieldCodec;
+    private final LiveMigrateProperties properties;
+    private final NearCache nearCache;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Brings the ordered ID index up to date with the record ID set, e.g. for data
+     * written before the index existed. Only runs when the two differ in size.
+     */
+    @PostConstruct
+    void syncOrderedRecordIds() {
+        try {
+            Long ids = redisTemplate.opsForSet().size(keyLayout.recordIds());
+            Long ordered = redisTemplate.opsForZSet().zCard(keyLayout.orderedRecordIds());
+            if (ids == null || ordered == null || ordered >= ids) {
+                return;
+            }
+
+            log.info("Rebuilding ordered record ID index ({} of {} IDs present)", ordered, ids);
+            List<UUID> batch = new ArrayList<>();
+            try (Cursor<Object> cursor = redisTemplate.opsForSet().scan(keyLayout.recordIds(),
+                    ScanOptions.scanOptions().count(1000).build())) {
+                while (cursor.hasNext()) {
+                    batch.add(UUID.fromString(cursor.next().toString()));
+                    if (batch.size() >= 1000) {
+                        addToOrderedIndex(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            addToOrderedIndex(batch);
+        } catch (Exception e) {
+            // Listing stays incomplete until the next start, everything else is unaffected
+            log.error("Error rebuilding ordered record ID index", e);
+        }
+    }
 
     /**
      * Retrieves a V1 record by its ID.
@@ -27,8 +145,10 @@ public class RecordService {
      */
     public Optional<CustomerRecordV1> getRecordV1(UUID id) {
         try {
-            Object record = redisTemplate.opsForValue().get(V1_KEY_PREFIX + id.toString());
+            Object record = recordRead(() -> nearCache.getValue(keyLayout.v1Key(id)));
+            // In the unified layout the key may already hold the upgraded record
             return Optional.ofNullable(record)
+                    .filter(r -> r instanceof CustomerRecordV1)
                     .map(r -> (CustomerRecordV1) r);
         } catch (Exception e) {
             log.error("Error retrieving V1 record {}", id, e);
@@ -42,8 +162,13 @@ public class RecordService {
      */
     public Optional<CustomerRecordV2> getRecordV2(UUID id) {
         try {
-            Object record = redisTemplate.opsForValue().get(V2_KEY_PREFIX + id.toString());
+            if (isHashLayout()) {
+                Map<String, String> fields = recordRead(() -> nearCache.getHash(keyLayout.v2Key(id)));
+                return fields.isEmpty() ? Optional.empty() : Optional.of(fieldCodec.decode(fields));
+            }
+            Object record = recordRead(() -> nearCache.getValue(keyLayout.v2Key(id)));
             return Optional.ofNullable(record)
+                    .filter(r -> r instanceof CustomerRecordV2)
                     .map(r -> (CustomerRecordV2) r);
         } catch (Exception e) {
             log.error("Error retrieving V2 record {}", id, e);
@@ -51,30 +176,289 @@ public class RecordService {
         }
     }
 
+    /**
+     * Retrieves a record in the unified layout, as whichever version it is stored
+     * in. The serializer writes the record's type ahead of every document, which
+     * serves as its version header: a single GET finds the record and tells its
+     * version, without consulting the migrated set.
+     */
+    public Optional<Object> getRecord(UUID id) {
+        try {
+            return Optional.ofNullable(recordRead(() -> nearCache.getValue(keyLayout.recordKey(id))));
+        } catch (Exception e) {
+            log.error("Error retrieving record {}", id, e);
+            throw new RuntimeException("Failed to retrieve record", e);
+        }
+    }
+
+    /**
+     * Retrieves several records of the unified layout at once, each as the version
+     * it is stored in. Missing records are absent from the result.
+     */
+    public Map<UUID, Object> getRecords(List<UUID> ids) {
+        try {
+            return recordRead(() -> multiGet(ids, keyLayout::recordKey, Object.class));
+        } catch (Exception e) {
+            log.error("Error retrieving batch of records", e);
+            throw new RuntimeException("Failed to retrieve records batch", e);
+        }
+    }
+
+    public boolean isUnifiedLayout() {
+        return keyLayout.isUnified();
+    }
+
+    /**
+     * Whether {@link #resolveRecords} can be used: the state, the migrated set and
+     * the record keys only share a node against a standalone Redis, and the unified
+     * layout needs no resolution in the first place.
+     */
+    public boolean supportsServerSideResolution() {
+        return !keyLayout.isClustered() && !keyLayout.isUnified();
+    }
+
+    /**
+     * Resolves which version reads of the given records go to and reads them, all
+     * in one script call. Without it, a read costs a round trip each for the
+     * migration state, the migrated mark, the V2 record and the V1 fallback. The
+     * routing is the same as in {@link com.livemigrate.component.VersionSelector}.
+     * Missing records are absent from the result, which keeps the order of the IDs.
+     */
+    public Map<UUID, ResolvedRecord> resolveRecords(List<UUID> ids) {
+        if (!supportsServerSideResolution()) {
+            throw new IllegalStateException("Server-side read resolution needs a standalone Redis and the split layout");
+        }
+        try {
+            List<String> keys = new ArrayList<>(ids.size() * 2 + 2);
+            keys.add(keyLayout.migrationState());
+            keys.add(keyLayout.migratedRecords());
+            List<String> args = new ArrayList<>(ids.size() + 1);
+            args.add(isHashLayout() ? "hash" : "json");
+            for (UUID id : ids) {
+                keys.add(keyLayout.v1Key(id));
+                keys.add(keyLayout.v2Key(id));
+                args.add(id.toString());
+            }
+
+            List<Object> replies = redisTemplate.execute(RESOLVE_READ_SCRIPT, RedisSerializer.string(),
+                    elementsAs(RedisSerializer.byteArray()), keys, args.toArray());
+
+            Map<UUID, ResolvedRecord> result = new LinkedHashMap<>();
+            for (int i = 0; replies != null && i < ids.size(); i++) {
+                String tag = new String((byte[]) replies.get(i * 2), StandardCharsets.UTF_8);
+                Object value = replies.get(i * 2 + 1);
+                if (value != null) {
+                    result.put(ids.get(i), new ResolvedRecord(decodeResolved(tag, value), "fallback".equals(tag)));
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("Error resolving batch of {} records", ids.size(), e);
+            throw new RuntimeException("Failed to resolve records", e);
+        }
+    }
+
+    /**
+     * Retrieves only the requested fields of a V2 record. With the hash layout only
+     * those fields are transferred and deserialized; with the JSON layout the full
+     * document has to be read and is trimmed afterwards. Field names are resolved
+     * by {@link RecordFieldCodec#resolveFields}.
+     */
+    public Optional<CustomerRecordV2> getRecordV2(UUID id, Collection<String> fields) {
+        List<String> hashFields = fieldCodec.resolveFields(fields);
+        try {
+            if (!isHashLayout()) {
+                return getRecordV2(id).map(record -> project(record, hashFields));
+            }
+
+            Map<String, String> projected = recordRead(() -> nearCache.getHashFields(keyLayout.v2Key(id), hashFields));
+            // A stored field is never nil (nulls are stored as "null"), so all-nil means no record
+            return projected.isEmpty() ? Optional.empty() : Optional.of(fieldCodec.decode(projected));
+        } catch (Exception e) {
+            log.error("Error retrieving fields {} of V2 record {}", fields, id, e);
+            throw new RuntimeException("Failed to retrieve V2 record fields", e);
+        }
+    }
+
+    /**
+     * Updates individual fields of an existing V2 record, e.g. a single
+     * communication preference or the customer data. Keys of the map are field
+     * names as accepted by {@link RecordFieldCodec#resolveFields}, values are the
+     * new field values.
+     *
+     * @return false if the record does not exist, in which case nothing is written
+     */
+    public boolean patchRecordV2(UUID id, Map<String, Object> fieldValues) {
+        try {
+            Map<String, String> encoded = new LinkedHashMap<>();
+            fieldValues.forEach((field, value) -> {
+                List<String> resolved = fieldCodec.resolveFields(List.of(field));
+                if (resolved.size() != 1) {
+                    throw new IllegalArgumentException("Not a single record field: " + field);
+                }
+                encoded.put(resolved.get(0), fieldCodec.encodeValue(value));
+            });
+
+            boolean reindex = touchesIndexedField(encoded.keySet());
+            if (!isHashLayout() || reindex) {
+                // Blob layout: the whole document is rewritten. So is a hash whose indexed
+                // values change, as the new index entries depend on the record as a whole.
+                return rewriteRecordV2(id, reindex, existing -> {
+                    Map<String, String> fields = fieldCodec.encode(existing);
+                    fields.putAll(encoded);
+                    return fieldCodec.decode(fields);
+                }).isPresent();
+            }
+
+            List<String> args = new ArrayList<>(encoded.size() * 2 + 1);
+            args.add(Long.toString(stampTtlMillis()));
+            encoded.forEach((field, value) -> {
+                args.add(field);
+                args.add(value);
+            });
+            Long written = redisTemplate.execute(HASH_PATCH_SCRIPT, RedisSerializer.string(), LONG_SERIALIZER,
+                    List.of(keyLayout.v2Key(id), keyLayout.stampKey(id)), args.toArray());
+            nearCache.invalidate(keyLayout.v2Key(id));
+            return written != null && written >= 0;
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error patching V2 record {}", id, e);
+            throw new RuntimeException("Failed to patch V2 record", e);
+        }
+    }
+
+    /**
+     * Atomically adds to a numeric V2 field such as metadata.accessCount.
+     *
+     * @return the new value, or empty if the record does not exist
+     */
+    public Optional<Long> incrementRecordV2Field(UUID id, String field, long delta) {
+        List<String> resolved = fieldCodec.resolveFields(List.of(field));
+        if (resolved.size() != 1) {
+            throw new IllegalArgumentException("Not a single record field: " + field);
+        }
+        try {
+            if (!isHashLayout()) {
+                return rewriteRecordV2(id, false, existing -> {
+                    Map<String, String> fields = fieldCodec.encode(existing);
+                    long updated = Long.parseLong(fields.getOrDefault(resolved.get(0), "0")) + delta;
+                    fields.put(resolved.get(0), Long.toString(updated));
+                    return fieldCodec.decode(fields);
+                }).map(record -> Long.parseLong(fieldCodec.encode(record).get(resolved.get(0))));
+            }
+
+            Long updated = redisTemplate.execute(HASH_INCREMENT_SCRIPT, RedisSerializer.string(), LONG_SERIALIZER,
+                    List.of(keyLayout.v2Key(id), keyLayout.stampKey(id)),
+                    resolved.get(0), Long.toString(delta), Long.toString(stampTtlMillis()));
+            nearCache.invalidate(keyLayout.v2Key(id));
+            return Optional.ofNullable(updated);
+        } catch (Exception e) {
+            log.error("Error incrementing field {} of V2 record {}", field, id, e);
+            throw new RuntimeException("Failed to increment V2 record field", e);
+        }
+    }
+
+    /**
+     * Applies aggregated access history (access count, last access time and recent
+     * accesses) to existing V2 records. Records that do not exist in V2 yet are
+     * skipped. Version stamps are bumped like for any other foreground write, so a
+     * backfill commit cannot overwrite the history with an older copy.
+     *
+     * Each record is a single script call that touches only the three access fields,
+     * and all calls of a flush are sent without waiting for individual replies. Only
+     * the hash layout is supported: a JSON record would have to be read and rewritten
+     * as a whole per flush, so nothing is written with that layout.
+     *
+     * @param recentLimit maximum number of recent accesses kept per record
+     * @return the number of records updated
+     */
+    public int applyAccessHistory(Map<UUID, AccessSummary> summaries, int recentLimit) {
+        if (summaries.isEmpty()) {
+            return 0;
+        }
+        if (!isHashLayout()) {
+            return 0;
+        }
+        try {
+            byte[] ttl = rawKey(Long.toString(stampTtlMillis()));
+            List<byte[][]> keys = new ArrayList<>(summaries.size());
+            List<byte[][]> args = new ArrayList<>(summaries.size());
+            summaries.forEach((id, summary) -> {
+                keys.add(new byte[][]{rawKey(keyLayout.v2Key(id)), rawKey(keyLayout.stampKey(id))});
+                List<byte[]> recordArgs = new ArrayList<>();
+                recordArgs.add(rawKey(Long.toString(summary.getAccessCount())));
+                recordArgs.add(rawKey(fieldCodec.encodeValue(summary.getLastAccessTime())));
+                recordArgs.add(rawKey(Integer.toString(recentLimit)));
+                recordArgs.add(ttl);
+                summary.getRecentAccesses().forEach(access -> recordArgs.add(rawKey(fieldCodec.encodeValue(access))));
+                args.add(recordArgs.toArray(byte[][]::new));
+            });
+            long updated = evalAll(ACCESS_HISTORY_SCRIPT, keys, args).stream()
+                    .mapToLong(reply -> reply != null ? reply : 0L)
+                    .sum();
+            summaries.keySet().forEach(id -> nearCache.invalidate(keyLayout.v2Key(id)));
+            return (int) updated;
+        } catch (Exception e) {
+            log.error("Error applying access history to {} V2 records", summaries.size(), e);
+            throw new RuntimeException("Failed to apply access history", e);
+        }
+    }
+
     /**
      * Saves a V1 record to the database.
      * This method handles both new records and updates to existing ones.
      */
     public void saveRecordV1(CustomerRecordV1 record) {
         try {
-            String key = V1_KEY_PREFIX + record.getId().toString();
-            redisTemplate.opsForValue().set(key, record);
-            redisTemplate.opsForSet().add(RECORD_IDS_KEY, record.getId().toString());
+            String key = keyLayout.v1Key(record.getId());
+            writeRecord(record.getId(), List.of(key), "json", null, null,
+                    List.of(new String(rawValue(record), StandardCharsets.UTF_8)));
+            redisTemplate.opsForSet().add(keyLayout.recordIds(), record.getId().toString());
+            addToOrderedIndex(List.of(record.getId()));
+            nearCache.invalidate(key);
         } catch (Exception e) {
             log.error("Error saving V1 record {}", record.getId(), e);
             throw new RuntimeException("Failed to save V1 record", e);
         }
     }
 
+    /**
+     * Saves multiple V1 records in a batch operation, e.g. for bulk imports.
+     */
+    public void saveRecordsV1(List<CustomerRecordV1> records) {
+        try {
+            if (records.isEmpty()) {
+                return;
+            }
+            List<UUID> ids = records.stream().map(CustomerRecordV1::getId).toList();
+            redisTemplate.opsForSet().add(keyLayout.recordIds(), ids.stream().map(UUID::toString).toArray());
+            addToOrderedIndex(ids);
+
+            Map<UUID, List<String>> batch = new LinkedHashMap<>();
+            for (CustomerRecordV1 record : records) {
+                batch.put(record.getId(), List.of(new String(rawValue(record), StandardCharsets.UTF_8)));
+            }
+            writeRecords(batch, keyLayout::v1Key, "json", null);
+            ids.forEach(id -> nearCache.invalidate(keyLayout.v1Key(id)));
+        } catch (Exception e) {
+            log.error("Error saving batch of V1 records", e);
+            throw new RuntimeException("Failed to save V1 records batch", e);
+        }
+    }
+
     /**
      * Saves a V2 record to the database.
      * This method handles both new records and updates to existing ones.
      */
     public void saveRecordV2(CustomerRecordV2 record) {
         try {
-            String key = V2_KEY_PREFIX + record.getId().toString();
-            redisTemplate.opsForValue().set(key, record);
-            redisTemplate.opsForSet().add(RECORD_IDS_KEY, record.getId().toString());
+            String key = keyLayout.v2Key(record.getId());
+            writeRecord(record.getId(), List.of(key), isHashLayout() ? "hash" : "json", null,
+                    indexValues(record), encodeForScript(record));
+            redisTemplate.opsForSet().add(keyLayout.recordIds(), record.getId().toString());
+            addToOrderedIndex(List.of(record.getId()));
+            nearCache.invalidate(key);
         } catch (Exception e) {
             log.error("Error saving V2 record {}", record.getId(), e);
             throw new RuntimeException("Failed to save V2 record", e);
@@ -87,26 +471,612 @@ public class RecordService {
      */
     public void saveRecordsV2(List<CustomerRecordV2> records) {
         try {
-            Map<String, Object> batch = new HashMap<>();
+            if (records.isEmpty()) {
+                return;
+            }
+            redisTemplate.opsForSet().add(keyLayout.recordIds(),
+                    records.stream().map(record -> record.getId().toString()).toArray());
+            addToOrderedIndex(records.stream().map(CustomerRecordV2::getId).toList());
+
+            Map<UUID, List<String>> batch = new LinkedHashMap<>();
+            Map<UUID, List<String>> indexed = new LinkedHashMap<>();
             for (CustomerRecordV2 record : records) {
-                String key = V2_KEY_PREFIX + record.getId().toString();
-                batch.put(key, record);
-                redisTemplate.opsForSet().add(RECORD_IDS_KEY, record.getId().toString());
+                batch.put(record.getId(), encodeForScript(record));
+                indexed.put(record.getId(), indexValues(record));
             }
-            redisTemplate.opsForValue().multiSet(batch);
+            writeRecords(batch, keyLayout::v2Key, isHashLayout() ? "hash" : "json", indexed);
+            records.forEach(record -> nearCache.invalidate(keyLayout.v2Key(record.getId())));
         } catch (Exception e) {
             log.error("Error saving batch of V2 records", e);
             throw new RuntimeException("Failed to save V2 records batch", e);
         }
     }
 
+    /**
+     * Commits a whole migration batch in one atomic script call: the V2 records,
+     * their ID index and secondary index entries, their migrated marks, the
+     * progress value and the checkpoint. A crash can therefore never leave V2
+     * data without its migrated mark or checkpoint. The script is sent by SHA and
+     * only re-sent in full if Redis does not know it yet.
+     *
+     * A record is only written if its version stamp still matches the one read
+     * with its V1 source (see {@link #getStampedRecordsV1}). Records that were
+     * written by the foreground in the meantime are skipped and returned, so the
+     * rest of the batch can commit without any locking.
+     *
+     * Only available against a standalone Redis, since the keys of a batch span
+     * several slots in a cluster. A null checkpoint leaves the stored one unchanged,
+     * for batches that are committed outside of the sweep order.
+     *
+     * @return the IDs of records that were not written because of a conflict
+     */
+    public List<UUID> commitMigrationBatch(List<CustomerRecordV2> records, Map<UUID, Long> stamps,
+                                           long totalRecords, UUID checkpoint) {
+        if (keyLayout.isClustered()) {
+            throw new IllegalStateException("Atomic batch commits are not supported in cluster mode");
+        }
+        try {
+            List<String> keys = new ArrayList<>();
+            keys.add(keyLayout.recordIds());
+            keys.add(keyLayout.migratedRecords());
+            keys.add(keyLayout.migrationProgress());
+            keys.add(keyLayout.lastProcessedId());
+            keys.add(keyLayout.orderedRecordIds());
+            keys.addAll(indexKeys());
+
+            List<String> args = new ArrayList<>();
+            args.add(isHashLayout() ? "hash" : "json");
+            args.add(Long.toString(totalRecords));
+            args.add(checkpoint != null ? new String(rawValue(checkpoint.toString()), StandardCharsets.UTF_8) : "");
+            args.add(Integer.toString(IndexedField.values().length));
+
+            for (CustomerRecordV2 record : records) {
+                keys.add(keyLayout.v2Key(record.getId()));
+                keys.add(keyLayout.stampKey(record.getId()));
+                args.add(record.getId().toString());
+                args.add(Long.toString(stamps.getOrDefault(record.getId(), 0L)));
+                args.addAll(indexValues(record));
+                List<String> values = encodeForScript(record);
+                args.add(Integer.toString(values.size()));
+                args.addAll(values);
+            }
+
+            List<String> conflicts = redisTemplate.execute(COMMIT_BATCH_SCRIPT, RedisSerializer.string(),
+                    elementsAs(RedisSerializer.string()), keys, args.toArray());
+            records.forEach(record -> nearCache.invalidate(keyLayout.v2Key(record.getId())));
+            return conflicts == null ? List.of() : conflicts.stream().map(UUID::fromString).toList();
+        } catch (Exception e) {
+            log.error("Error committing migration batch ending at {}", checkpoint, e);
+            throw new RuntimeException("Failed to commit migration batch", e);
+        }
+    }
+
+    /**
+     * Writes a single migrated V2 record if its version stamp is unchanged. This is
+     * the per-record counterpart of {@link #commitMigrationBatch} for cluster mode,
+     * where the record and its stamp share a slot but the global keys do not.
+     *
+     * @return false if a foreground write landed since the stamp was read
+     */
+    public boolean commitRecordV2IfUnchanged(CustomerRecordV2 record, long stamp) {
+        try {
+            List<String> args = new ArrayList<>();
+            args.add(isHashLayout() ? "hash" : "json");
+            args.add(Long.toString(stamp));
+            args.addAll(encodeForScript(record));
+
+            Long written = redisTemplate.execute(COMMIT_RECORD_SCRIPT, RedisSerializer.string(), LONG_SERIALIZER,
+                    List.of(keyLayout.v2Key(record.getId()), keyLayout.stampKey(record.getId())), args.toArray());
+            nearCache.invalidate(keyLayout.v2Key(record.getId()));
+            if (written == null || written != 1L) {
+                return false;
+            }
+            updateIndexes(Map.of(record.getId(), indexValues(record)));
+            return true;
+        } catch (Exception e) {
+            log.error("Error committing V2 record {}", record.getId(), e);
+            throw new RuntimeException("Failed to commit V2 record", e);
+        }
+    }
+
+    /**
+     * Retrieves several V1 records together with their version stamps, in a single
+     * MGET per slot. IDs without a V1 record are absent from the result. Records
+     * that were never written by the foreground have stamp 0.
+     */
+    public Map<UUID, StampedRecord> getStampedRecordsV1(List<UUID> ids) {
+        try {
+            List<String> keys = new ArrayList<>(ids.size() * 2);
+            for (UUID id : ids) {
+                keys.add(keyLayout.stampKey(id));
+                keys.add(keyLayout.v1Key(id));
+            }
+            List<byte[]> values = rawMultiGet(keys);
+
+            Map<UUID, StampedRecord> result = new LinkedHashMap<>();
+            for (int i = 0; i < ids.size(); i++) {
+                byte[] stamp = values.get(i * 2);
+                Object record = values.get(i * 2 + 1) != null
+                        ? redisTemplate.getValueSerializer().deserialize(values.get(i * 2 + 1))
+                        : null;
+                if (record instanceof CustomerRecordV1 v1Record) {
+                    result.put(ids.get(i), new StampedRecord(v1Record,
+                            stamp != null ? Long.parseLong(new String(stamp, StandardCharsets.UTF_8)) : 0L));
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("Error retrieving batch of stamped V1 records", e);
+            throw new RuntimeException("Failed to retrieve stamped V1 records", e);
+        }
+    }
+
+    /**
+     * Reads the version stamps of several records in a single MGET per slot.
+     * Records that were never written by the foreground have stamp 0.
+     */
+    public Map<UUID, Long> getStamps(List<UUID> ids) {
+        try {
+            List<byte[]> values = rawMultiGet(ids.stream().map(keyLayout::stampKey).toList());
+            Map<UUID, Long> stamps = new HashMap<>();
+            for (int i = 0; i < ids.size(); i++) {
+                byte[] stamp = values.get(i);
+                stamps.put(ids.get(i), stamp != null ? Long.parseLong(new String(stamp, StandardCharsets.UTF_8)) : 0L);
+            }
+            return stamps;
+        } catch (Exception e) {
+            log.error("Error retrieving version stamps", e);
+            throw new RuntimeException("Failed to retrieve version stamps", e);
+        }
+    }
+
+    /**
+     * Writes V1 records rolled back from V2, each only if its version stamp is
+     * unchanged since the V2 record was read. Foreground writes bump the stamp in the
+     * same script call as their data (see {@link #writeRecord}), so a down-converted
+     * record read before such a write can never overwrite it. The conditional writes
+     * are sent without waiting for individual replies. The stamps are left alone,
+     * like for any other backfill write.
+     *
+     * @return the IDs of records that were skipped because the foreground wrote them meanwhile
+     */
+    public List<UUID> commitRecordsV1IfUnchanged(List<CustomerRecordV1> records, Map<UUID, Long> stamps) {
+        try {
+            if (records.isEmpty()) {
+                return List.of();
+            }
+            byte[] layout = rawKey("json");
+            List<byte[][]> keys = new ArrayList<>(records.size());
+            List<byte[][]> args = new ArrayList<>(records.size());
+            for (CustomerRecordV1 record : records) {
+                keys.add(new byte[][]{rawKey(keyLayout.v1Key(record.getId())), rawKey(keyLayout.stampKey(record.getId()))});
+                byte[] stamp = rawKey(Long.toString(stamps.getOrDefault(record.getId(), 0L)));
+                args.add(new byte[][]{layout, stamp, rawValue(record)});
+            }
+            List<Long> written = evalAll(COMMIT_RECORD_SCRIPT, keys, args);
+
+            List<UUID> conflicts = new ArrayList<>();
+            for (int i = 0; i < records.size(); i++) {
+                UUID id = records.get(i).getId();
+                nearCache.invalidate(keyLayout.v1Key(id));
+                if (!Long.valueOf(1L).equals(written.get(i))) {
+                    conflicts.add(id);
+                }
+            }
+            return conflicts;
+        } catch (Exception e) {
+            log.error("Error committing batch of V1 records", e);
+            throw new RuntimeException("Failed to commit V1 records batch", e);
+        }
+    }
+
+    /**
+     * Retrieves several V1 records at once. IDs without a V1 record are absent from the result.
+     */
+    public Map<UUID, CustomerRecordV1> getRecordsV1(List<UUID> ids) {
+        try {
+            return recordRead(() -> multiGet(ids, keyLayout::v1Key, CustomerRecordV1.class));
+        } catch (Exception e) {
+            log.error("Error retrieving batch of V1 records", e);
+            throw new RuntimeException("Failed to retrieve V1 records batch", e);
+        }
+    }
+
+    /**
+     * Retrieves several V2 records at once. IDs without a V2 record are absent from the result.
+     */
+    public Map<UUID, CustomerRecordV2> getRecordsV2(List<UUID> ids) {
+        try {
+            if (isHashLayout()) {
+                return recordRead(() -> hashMultiGet(ids));
+            }
+            return recordRead(() -> multiGet(ids, keyLayout::v2Key, CustomerRecordV2.class));
+        } catch (Exception e) {
+            log.error("Error retrieving batch of V2 records", e);
+            throw new RuntimeException("Failed to retrieve V2 records batch", e);
+        }
+    }
+
+    /**
+     * Returns up to limit record IDs in ID order, starting after the cursor (or from
+     * the beginning without one). The cursor is a record ID rather than an offset,
+     * so pages stay stable while records are inserted or migrated concurrently.
+     */
+    public List<UUID> listRecordIds(UUID cursor, int limit) {
+        try {
+            Range.Bound<byte[]> lower = cursor == null
+                    ? Range.Bound.unbounded()
+                    : Range.Bound.exclusive(rawKey(cursor.toString()));
+            Set<byte[]> members = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection ->
+                    connection.zSetCommands().zRangeByLex(rawKey(keyLayout.orderedRecordIds()),
+                            Range.of(lower, Range.Bound.unbounded()), Limit.limit().count(limit)));
+            if (members == null) {
+                return List.of();
+            }
+            return members.stream()
+                    .map(member -> UUID.fromString(new String(member, StandardCharsets.UTF_8)))
+                    .toList();
+        } catch (Exception e) {
+            log.error("Error listing record IDs after {}", cursor, e);
+            throw new RuntimeException("Failed to list record IDs", e);
+        }
+    }
+
+    /**
+     * Counts the record IDs up to and including the given one.
+     */
+    public long countRecordIds(UUID last) {
+        try {
+            Long count = redisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.zSetCommands().zLexCount(rawKey(keyLayout.orderedRecordIds()),
+                            Range.leftUnbounded(Range.Bound.inclusive(rawKey(last.toString())))));
+            return count != null ? count : 0L;
+        } catch (Exception e) {
+            log.error("Error counting record IDs up to {}", last, e);
+            throw new RuntimeException("Failed to count record IDs", e);
+        }
+    }
+
+    /**
+     * Returns up to limit record IDs between first and last (both inclusive), in ID order.
+     */
+    public List<UUID> listRecordIds(UUID first, UUID last, int limit) {
+        try {
+            Range<byte[]> range = Range.closed(rawKey(first.toString()), rawKey(last.toString()));
+            Set<byte[]> members = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection ->
+                    connection.zSetCommands().zRangeByLex(rawKey(keyLayout.orderedRecordIds()), range,
+                            Limit.limit().count(limit)));
+            if (members == null) {
+                return List.of();
+            }
+            return members.stream()
+                    .map(member -> UUID.fromString(new String(member, StandardCharsets.UTF_8)))
+                    .toList();
+        } catch (Exception e) {
+            log.error("Error listing record IDs between {} and {}", first, last, e);
+            throw new RuntimeException("Failed to list record IDs", e);
+        }
+    }
+
+    /**
+     * Returns one page of the IDs of V2 records whose indexed field has the given
+     * value, in ID order. Pass the last ID of the previous page as cursor to get the
+     * next one; the cost is proportional to the page, not to the number of matches.
+     */
+    public List<UUID> findByIndex(IndexedField field, String value, UUID cursor, int limit) {
+        try {
+            String prefix = value + INDEX_SEPARATOR;
+            // Members are "<value>\0<id>", so all matches sort between "<value>\0" and "<value>\1"
+            Range.Bound<byte[]> lower = cursor == null
+                    ? Range.Bound.inclusive(rawKey(prefix))
+                    : Range.Bound.exclusive(rawKey(prefix + cursor));
+            Range<byte[]> range = Range.of(lower, Range.Bound.exclusive(rawKey(value + (char) (INDEX_SEPARATOR + 1))));
+
+            Set<byte[]> members = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection ->
+                    connection.zSetCommands().zRangeByLex(rawKey(keyLayout.index(field)), range,
+                            Limit.limit().count(limit)));
+            if (members == null) {
+                return List.of();
+            }
+            return members.stream()
+                    .map(member -> new String(member, StandardCharsets.UTF_8).substring(prefix.length()))
+                    .map(UUID::fromString)
+                    .toList();
+        } catch (Exception e) {
+            log.error("Error querying index {} for value {}", field, value, e);
+            throw new RuntimeException("Failed to query index", e);
+        }
+    }
+
+    /**
+     * Rebuilds the secondary index entries of all records from their stored V2
+     * values, e.g. for V2 data written before the indexes existed or after they
+     * were lost. Records are read and re-indexed a batch at a time in ID order;
+     * records without a V2 version are removed from the indexes. Runs as backfill
+     * traffic, and is safe to repeat or to run alongside foreground writes, which
+     * move their own index entries.
+     *
+     * @return the number of records indexed under at least one value
+     */
+    public long rebuildIndexes(int batchSize) {
+        return RedisWorkload.BACKFILL.call(() -> {
+            long indexed = 0;
+            UUID cursor = null;
+            List<UUID> ids;
+            do {
+                ids = listRecordIds(cursor, batchSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                Map<UUID, CustomerRecordV2> records = getRecordsV2(ids);
+                Map<UUID, List<String>> values = new LinkedHashMap<>();
+                for (UUID id : ids) {
+                    CustomerRecordV2 record = records.get(id);
+                    List<String> recordValues = record != null ? indexValues(record) : noIndexValues();
+                    values.put(id, recordValues);
+                    if (recordValues.stream().anyMatch(value -> !value.isEmpty())) {
+                        indexed++;
+                    }
+                }
+                updateIndexes(values);
+                cursor = ids.get(ids.size() - 1);
+            } while (ids.size() == batchSize);
+            log.info("Rebuilt secondary indexes, {} records indexed", indexed);
+            return indexed;
+        });
+    }
+
+    /**
+     * Picks up to count distinct random record IDs, e.g. for sampling.
+     */
+    public List<UUID> sampleRecordIds(int count) {
+        try {
+            Set<Object> ids = redisTemplate.opsForSet().distinctRandomMembers(keyLayout.recordIds(), count);
+            return ids == null ? List.of() : ids.stream().map(id -> UUID.fromString(id.toString())).toList();
+        } catch (Exception e) {
+            log.error("Error sampling record IDs", e);
+            throw new RuntimeException("Failed to sample record IDs", e);
+        }
+    }
+
+    /**
+     * Returns the number of bytes a V1 record takes once serialized for storage.
+     */
+    public int serializedSizeV1(CustomerRecordV1 record) {
+        return rawValue(record).length;
+    }
+
+    /**
+     * Returns the number of bytes a V2 record takes once serialized for the
+     * configured layout; for the hash layout field names are included.
+     */
+    public int serializedSizeV2(CustomerRecordV2 record) {
+        if (!isHashLayout()) {
+            return rawValue(record).length;
+        }
+        return fieldCodec.encode(record).entrySet().stream()
+                .mapToInt(field -> rawKey(field.getKey()).length + rawKey(field.getValue()).length)
+                .sum();
+    }
+
+    /**
+     * Measures the memory Redis uses for each of the given keys, including its
+     * overhead, with one pipelined MEMORY USAGE per key. Missing keys report 0.
+     */
+    public List<Long> getMemoryUsage(List<String> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        try {
+            List<Long> usage = redisTemplate.execute((RedisCallback<List<Long>>) connection -> {
+                RedisClusterAsyncCommands<byte[], byte[]> commands = nativeCommands(connection);
+                List<RedisFuture<Long>> futures = keys.stream().map(key -> commands.memoryUsage(rawKey(key))).toList();
+                awaitAll(futures);
+                return futures.stream()
+                        .map(future -> LettuceFutures.awaitOrCancel(future, BATCH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS))
+                        .map(bytes -> bytes != null ? bytes : 0L)
+                        .toList();
+            });
+            return usage != null ? usage : List.of();
+        } catch (Exception e) {
+            log.error("Error measuring memory usage of {} keys", keys.size(), e);
+            throw new RuntimeException("Failed to measure memory usage", e);
+        }
+    }
+
+    /**
+     * Reads the length of each of the given string keys with one pipelined STRLEN
+     * per key, a cheap hint of their size. Missing keys report 0.
+     */
+    public List<Long> getStringLengths(List<String> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        try {
+            List<Long> lengths = redisTemplate.execute((RedisCallback<List<Long>>) connection -> {
+                RedisClusterAsyncCommands<byte[], byte[]> commands = nativeCommands(connection);
+                List<RedisFuture<Long>> futures = keys.stream().map(key -> commands.strlen(rawKey(key))).toList();
+                awaitAll(futures);
+                return futures.stream()
+                        .map(future -> LettuceFutures.awaitOrCancel(future, BATCH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS))
+                        .map(length -> length != null ? length : 0L)
+                        .toList();
+            });
+            return lengths != null ? lengths : List.of();
+        } catch (Exception e) {
+            log.error("Error reading the length of {} keys", keys.size(), e);
+            throw new RuntimeException("Failed to read key lengths", e);
+        }
+    }
+
+    /**
+     * Writes all records of one version as NDJSON, one record per line in ID order.
+     * IDs are paged through the ordered ID index and their records read one batch
+     * at a time, and output goes through a fixed-size buffer, so memory use does not
+     * depend on the number of records. IDs without a record of the requested
+     * version are skipped.
+     *
+     * @return the number of records written
+     */
+    public long exportRecords(RecordVersion version, OutputStream out, boolean compress) throws IOException {
+        requireStoredVersion(version);
+        int batchSize = properties.getBulk().getBatchSize();
+        long start = System.nanoTime();
+        long exported = 0;
+
+        OutputStream target = compress ? new GZIPOutputStream(out, BULK_BUFFER_SIZE) : out;
+        try (OutputStream buffered = new BufferedOutputStream(target, BULK_BUFFER_SIZE)) {
+            exported = RedisWorkload.BACKFILL.call(() -> {
+                long written = 0;
+                UUID cursor = null;
+                List<UUID> ids;
+                do {
+                    ids = listRecordIds(cursor, batchSize);
+                    Map<UUID, ?> records = version == RecordVersion.V1 ? getRecordsV1(ids) : getRecordsV2(ids);
+                    for (Object record : records.values()) {
+                        buffered.write(objectMapper.writeValueAsBytes(record));
+                        buffered.write('\n');
+                    }
+                    written += records.size();
+                    cursor = ids.isEmpty() ? cursor : ids.get(ids.size() - 1);
+                } while (ids.size() == batchSize);
+                return written;
+            });
+        }
+
+        log.info("Exported {} {} records in {} ms", exported, version,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return exported;
+    }
+
+    /**
+     * Loads NDJSON records of one version, as written by {@link #exportRecords}.
+     * Batches are parsed and written in parallel through {@link #readNdjson}, with
+     * all writes of a batch pipelined, so a slow Redis throttles the input instead
+     * of filling the heap.
+     *
+     * Import stops at the first invalid line. Batches already written stay written,
+     * and since records are keyed by ID, importing the same file again is safe.
+     *
+     * Imported V2 records are marked as migrated along with each batch, so reads
+     * go to them while a migration is under way and the sweep leaves them alone.
+     *
+     * @return the number of records imported
+     * @throws IllegalArgumentException if a line is not a valid record
+     */
+    public long importRecords(RecordVersion version, InputStream in) throws IOException {
+        requireStoredVersion(version);
+        long start = System.nanoTime();
+        long imported = RedisWorkload.BACKFILL.call(() -> version == RecordVersion.V1
+                ? readNdjson(in, CustomerRecordV1.class, this::saveRecordsV1)
+                : readNdjson(in, CustomerRecordV2.class, this::importRecordsV2));
+
+        log.info("Imported {} {} records in {} ms", imported, version,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return imported;
+    }
+
+    private void importRecordsV2(List<CustomerRecordV2> records) {
+        saveRecordsV2(records);
+        if (!records.isEmpty()) {
+            redisTemplate.opsForSet().add(keyLayout.migratedRecords(),
+                    records.stream().map(record -> record.getId().toString()).toArray());
+        }
+    }
+
+    /**
+     * Reads NDJSON records in batches of lines and hands each parsed batch to the
+     * handler. Parsing and the handler run on a pool of workers with a bounded
+     * number of batches in flight (see {@link BoundedBatchExecutor}), so reading
+     * pauses while the handlers are behind. Gzip input is detected automatically
+     * and blank lines are ignored.
+     *
+     * @return the number of records handled
+     * @throws IllegalArgumentException at the first line that is not a valid record
+     */
+    public <T> long readNdjson(InputStream in, Class<T> type, Consumer<List<T>> handler) throws IOException {
+        LiveMigrateProperties.Bulk config = properties.getBulk();
+        AtomicLong handled = new AtomicLong();
+
+        try (BoundedBatchExecutor executor = new BoundedBatchExecutor(
+                "ndjson-reader", config.effectiveParallelism(), config.getMaxInFlightBatches());
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(decompressIfNeeded(in), StandardCharsets.UTF_8), BULK_BUFFER_SIZE)) {
+            long lineNumber = 0;
+            List<String> lines = new ArrayList<>(config.getBatchSize());
+            String line;
+            while (!executor.hasFailed() && (line = reader.readLine()) != null) {
+                lineNumber++;
+                lines.add(line);
+                if (lines.size() >= config.getBatchSize()) {
+                    submitNdjsonBatch(executor, lines, lineNumber - lines.size() + 1, type, handler, handled);
+                    lines = new ArrayList<>(config.getBatchSize());
+                }
+            }
+            if (!lines.isEmpty() && !executor.hasFailed()) {
+                submitNdjsonBatch(executor, lines, lineNumber - lines.size() + 1, type, handler, handled);
+            }
+            executor.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Reading records was interrupted", e);
+        }
+        return handled.get();
+    }
+
+    private <T> void submitNdjsonBatch(BoundedBatchExecutor executor, List<String> lines, long firstLine,
+                                       Class<T> type, Consumer<List<T>> handler, AtomicLong handled)
+            throws InterruptedException {
+        executor.submit(() -> {
+            List<T> records = new ArrayList<>(lines.size());
+            for (int i = 0; i < lines.size(); i++) {
+                if (!lines.get(i).isBlank()) {
+                    records.add(parseNdjsonLine(lines.get(i), firstLine + i, type));
+                }
+            }
+            handler.accept(records);
+            handled.addAndGet(records.size());
+        });
+    }
+
+    private <T> T parseNdjsonLine(String line, long lineNumber, Class<T> type) {
+        T record;
+        try {
+            record = objectMapper.readValue(line, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid record on line " + lineNumber + ": " + e.getOriginalMessage());
+        }
+        UUID id = record instanceof CustomerRecordV1 v1 ? v1.getId()
+                : record instanceof CustomerRecordV2 v2 ? v2.getId() : null;
+        if (id == null) {
+            throw new IllegalArgumentException("Record on line " + lineNumber + " has no id");
+        }
+        return record;
+    }
+
+    private static InputStream decompressIfNeeded(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BULK_BUFFER_SIZE);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        boolean gzip = first == (GZIPInputStream.GZIP_MAGIC & 0xff) && second == (GZIPInputStream.GZIP_MAGIC >> 8);
+        return gzip ? new GZIPInputStream(buffered, BULK_BUFFER_SIZE) : buffered;
+    }
+
+    private static void requireStoredVersion(RecordVersion version) {
+        if (version != RecordVersion.V1 && version != RecordVersion.V2) {
+            throw new IllegalArgumentException("Only V1 and V2 records can be exported or imported");
+        }
+    }
+
     /**
      * Gets the total count of records in the system.
      * This is used for progress tracking during migration.
      */
     public long getTotalRecordCount() {
         try {
-            Long size = redisTemplate.opsForSet().size(RECORD_IDS_KEY);
+            Long size = redisTemplate.opsForSet().size(keyLayout.recordIds());
             return size != null ? size : 0L;
         } catch (Exception e) {
             log.error("Error getting total record count", e);
@@ -115,13 +1085,25 @@ public class RecordService {
     }
 
     /**
-     * Creates an iterator for processing records during migration.
-     * This method supports resuming migration from a specific record ID.
+     * Checks whether a record is still registered, i.e. has not been deleted.
+     */
+    public boolean recordExists(UUID id) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(keyLayout.recordIds(), id.toString()));
+        } catch (Exception e) {
+            log.error("Error checking record {}", id, e);
+            throw new RuntimeException("Failed to check record", e);
+        }
+    }
+
+    /**
+     * Iterates record IDs in a stable order, optionally resuming after a given ID.
+     * Records themselves are left to the caller to load, e.g. in batches.
      */
-    public Iterator<CustomerRecordV1> getRecordIterator(Optional<UUID> startAfter) {
+    public Iterator<UUID> getRecordIdIterator(Optional<UUID> startAfter) {
         try {
             // Get all record IDs
-            Set<Object> allIds = redisTemplate.opsForSet().members(RECORD_IDS_KEY);
+            Set<Object> allIds = redisTemplate.opsForSet().members(keyLayout.recordIds());
             if (allIds == null) {
                 return Collections.emptyIterator();
             }
@@ -143,40 +1125,542 @@ public class RecordService {
             // Create sublist from starting point
             List<String> remainingIds = sortedIds.subList(startIndex, sortedIds.size());
 
-            // Return iterator that loads records on demand
-            return new Iterator<>() {
-                private final Iterator<String> idIterator = remainingIds.iterator();
+            return remainingIds.stream().map(UUID::fromString).iterator();
+        } catch (Exception e) {
+            log.error("Error creating record iterator", e);
+            throw new RuntimeException("Failed to create record iterator", e);
+        }
+    }
+
+    /**
+     * Writes records to their unified record keys, as part of converting the split
+     * layout, and optionally removes their V1 and V2 keys afterwards. Each value is
+     * stored as the version it is given in. Version stamps are left alone, since the
+     * record data itself does not change.
+     */
+    public void saveUnifiedRecords(Map<UUID, Object> records, boolean removeSource) {
+        try {
+            if (records.isEmpty()) {
+                return;
+            }
+            Map<String, Object> batch = new HashMap<>();
+            records.forEach((id, record) -> batch.put(keyLayout.recordKey(id), record));
+            multiSet(batch);
+            batch.keySet().forEach(nearCache::invalidate);
+            if (!removeSource || keyLayout.isUnified()) {
+                return;
+            }
 
-                @Override
-                public boolean hasNext() {
-                    return idIterator.hasNext();
+            redisTemplate.execute((RedisCallback<Void>) connection -> {
+                RedisClusterAsyncCommands<byte[], byte[]> commands = nativeCommands(connection);
+                List<RedisFuture<Long>> futures = new ArrayList<>(records.size() * 2);
+                for (UUID id : records.keySet()) {
+                    futures.add(commands.unlink(rawKey(keyLayout.v1Key(id))));
+                    futures.add(commands.unlink(rawKey(keyLayout.v2Key(id))));
                 }
+                awaitAll(futures);
+                return null;
+            });
+            records.keySet().forEach(id -> {
+                nearCache.invalidate(keyLayout.v1Key(id));
+                nearCache.invalidate(keyLayout.v2Key(id));
+            });
+        } catch (Exception e) {
+            log.error("Error writing batch of unified records", e);
+            throw new RuntimeException("Failed to write unified records batch", e);
+        }
+    }
 
-                @Override
-                public CustomerRecordV1 next() {
-                    String nextId = idIterator.next();
-                    return getRecordV1(UUID.fromString(nextId))
-                            .orElseThrow(() -> new NoSuchElementException("Record not found: " + nextId));
+    /**
+     * Removes the V2 keys of several records, e.g. once a rollback made V1
+     * authoritative again. In the unified layout V1 and V2 share the record key,
+     * so nothing is removed.
+     */
+    public void deleteRecordsV2(List<UUID> ids) {
+        if (ids.isEmpty() || keyLayout.isUnified()) {
+            return;
+        }
+        try {
+            redisTemplate.execute((RedisCallback<Void>) connection -> {
+                RedisClusterAsyncCommands<byte[], byte[]> commands = nativeCommands(connection);
+                List<RedisFuture<Long>> futures = new ArrayList<>(ids.size());
+                for (UUID id : ids) {
+                    futures.add(commands.unlink(rawKey(keyLayout.v2Key(id))));
                 }
-            };
+                awaitAll(futures);
+                return null;
+            });
+            ids.forEach(id -> nearCache.invalidate(keyLayout.v2Key(id)));
         } catch (Exception e) {
-            log.error("Error creating record iterator", e);
-            throw new RuntimeException("Failed to create record iterator", e);
+            log.error("Error deleting batch of V2 records", e);
+            throw new RuntimeException("Failed to delete V2 records batch", e);
         }
     }
 
+    /**
+     * Drops all secondary index entries, e.g. once a rollback stopped reads from
+     * going to the V2 records they point at.
+     */
+    public void clearIndexes() {
+        // One key at a time, as the index keys do not share a slot in a cluster
+        indexKeys().forEach(redisTemplate::unlink);
+    }
+
     /**
      * Deletes a record completely from both V1 and V2 storage.
      * This is typically used during cleanup operations.
      */
     public void deleteRecord(UUID id) {
         try {
-            redisTemplate.delete(V1_KEY_PREFIX + id.toString());
-            redisTemplate.delete(V2_KEY_PREFIX + id.toString());
-            redisTemplate.opsForSet().remove(RECORD_IDS_KEY, id.toString());
+            // The stamp is bumped rather than deleted, so an in-flight backfill cannot resurrect the record
+            List<String> keys = new ArrayList<>(List.of(keyLayout.v1Key(id)));
+            if (!keyLayout.isUnified()) {
+                keys.add(keyLayout.v2Key(id));
+            }
+            writeRecord(id, keys, "del", null, noIndexValues(), List.of());
+            redisTemplate.opsForSet().remove(keyLayout.recordIds(), id.toString());
+            redisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.zSetCommands().zRem(rawKey(keyLayout.orderedRecordIds()), rawKey(id.toString())));
+            nearCache.invalidate(keyLayout.v1Key(id));
+            nearCache.invalidate(keyLayout.v2Key(id));
         } catch (Exception e) {
             log.error("Error deleting record {}", id, e);
             throw new RuntimeException("Failed to delete record", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes several keys at once. Against a cluster a single MSET may only touch one
+     * slot, so keys are grouped by slot and each group is sent as its own MSET. The
+     * groups are dispatched asynchronously, which lets Lettuce route them to their
+     * owning nodes in parallel instead of issuing one SET after another.
+     */
+    private void multiSet(Map<String, Object> values) {
+        if (!keyLayout.isClustered()) {
+            redisTemplate.opsForValue().multiSet(values);
+            return;
+        }
+
+        Map<Integer, Map<byte[], byte[]>> slots = new HashMap<>();
+        values.forEach((key, value) -> {
+            byte[] rawKey = rawKey(key);
+            slots.computeIfAbsent(SlotHash.getSlot(rawKey), slot -> new HashMap<>())
+                    .put(rawKey, rawValue(value));
+        });
+
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            RedisClusterAsyncCommands<byte[], byte[]> commands = nativeCommands(connection);
+            List<RedisFuture<String>> futures = new ArrayList<>(slots.size());
+            for (Map<byte[], byte[]> slotValues : slots.values()) {
+                futures.add(commands.mset(slotValues));
+            }
+            awaitAll(futures);
+            return null;
+        });
+    }
+
+    /**
+     * Reads several keys at once and deserializes them with the template's value
+     * serializer. Values of another type, i.e. the other version of a record in the
+     * unified layout, are left out like missing ones.
+     */
+    private <T> Map<UUID, T> multiGet(List<UUID> ids, Function<UUID, String> keyFunction, Class<T> type) {
+        Map<UUID, T> result = new LinkedHashMap<>();
+        List<byte[]> values = rawMultiGet(ids.stream().map(keyFunction).toList());
+        for (int i = 0; i < ids.size(); i++) {
+            Object value = values.get(i) != null ? redisTemplate.getValueSerializer().deserialize(values.get(i)) : null;
+            if (type.isInstance(value)) {
+                result.put(ids.get(i), type.cast(value));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads several keys at once, returning raw values in key order (null for
+     * missing keys). In cluster mode keys are grouped by slot just like
+     * {@link #multiSet(Map)} does.
+     */
+    private List<byte[]> rawMultiGet(List<String> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+
+        if (!keyLayout.isClustered()) {
+            byte[][] rawKeys = keys.stream().map(this::rawKey).toArray(byte[][]::new);
+            List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                    connection.stringCommands().mGet(rawKeys));
+            return values != null ? values : Collections.nCopies(keys.size(), null);
+        }
+
+        // Positions of the keys of each slot in the caller's list
+        Map<Integer, List<Integer>> slots = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            slots.computeIfAbsent(SlotHash.getSlot(keys.get(i)), slot -> new ArrayList<>()).add(i);
+        }
+
+        byte[][] result = new byte[keys.size()][];
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            RedisClusterAsyncCommands<byte[], byte[]> commands = nativeCommands(connection);
+            Map<List<Integer>, RedisFuture<List<KeyValue<byte[], byte[]>>>> futures = new HashMap<>();
+            for (List<Integer> positions : slots.values()) {
+                byte[][] rawKeys = positions.stream().map(keys::get).map(this::rawKey).toArray(byte[][]::new);
+                futures.put(positions, commands.mget(rawKeys));
+            }
+            awaitAll(futures.values());
+
+            futures.forEach((positions, future) -> {
+                List<KeyValue<byte[], byte[]>> slotValues = LettuceFutures.awaitOrCancel(
+                        future, BATCH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                for (int i = 0; i < positions.size(); i++) {
+                    KeyValue<byte[], byte[]> keyValue = slotValues.get(i);
+                    if (keyValue.hasValue()) {
+                        result[positions.get(i)] = keyValue.getValue();
+                    }
+                }
+            });
+            return null;
+        });
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Reads several record hashes at once. Each HGETALL only touches a single key,
+     * so they are simply sent back to back without waiting for each reply.
+     */
+    private Map<UUID, CustomerRecordV2> hashMultiGet(List<UUID> ids) {
+        Map<UUID, CustomerRecordV2> result = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+
+        List<Map<byte[], byte[]>> hashes = redisTemplate.execute((RedisCallback<List<Map<byte[], byte[]>>>) connection -> {
+            RedisClusterAsyncCommands<byte[], byte[]> commands = nativeCommands(connection);
+            List<RedisFuture<Map<byte[], byte[]>>> futures = new ArrayList<>(ids.size());
+            for (UUID id : ids) {
+                futures.add(commands.hgetall(rawKey(keyLayout.v2Key(id))));
+            }
+            awaitAll(futures);
+            return futures.stream()
+                    .map(future -> LettuceFutures.awaitOrCancel(future, BATCH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS))
+                    .toList();
+        });
+
+        for (int i = 0; hashes != null && i < ids.size(); i++) {
+            Map<byte[], byte[]> fields = hashes.get(i);
+            if (fields != null && !fields.isEmpty()) {
+                result.put(ids.get(i), fieldCodec.decode(decodeHash(fields)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes a record for the foreground and bumps its version stamp in the same
+     * script call, so a backfill commit based on an older read of the record is
+     * rejected and can never land between the two. Against a standalone Redis the
+     * record's secondary index entries are moved in the same call; in a cluster the
+     * global index keys live in other slots, so they follow in a call of their own.
+     *
+     * @param recordKeys    the record key, followed by further keys to delete with it
+     * @param expectedStamp the stamp the record must still have, or null to write unconditionally
+     * @param indexValues   the values to index the record under, or null to leave its index entries alone
+     * @return false if the stamp no longer matched
+     */
+    private boolean writeRecord(UUID id, List<String> recordKeys, String layout, Long expectedStamp,
+                                List<String> indexValues, List<String> values) {
+        boolean indexInScript = indexValues != null && !keyLayout.isClustered();
+        List<String> keys = new ArrayList<>(recordKeys.size() + 1);
+        keys.add(recordKeys.get(0));
+        keys.add(keyLayout.stampKey(id));
+        keys.addAll(recordKeys.subList(1, recordKeys.size()));
+        if (indexInScript) {
+            keys.addAll(indexKeys());
+        }
+        List<String> args = new ArrayList<>();
+        args.add(layout);
+        args.add(Long.toString(stampTtlMillis()));
+        args.add(expectedStamp != null ? expectedStamp.toString() : "");
+        args.add(indexInScript ? Integer.toString(indexValues.size()) : "0");
+        args.add(id.toString());
+        if (indexInScript) {
+            args.addAll(indexValues);
+        }
+        args.addAll(values);
+        Long stamp = redisTemplate.execute(WRITE_RECORD_SCRIPT, RedisSerializer.string(), LONG_SERIALIZER,
+                keys, args.toArray());
+        boolean written = stamp != null && stamp >= 0;
+        if (written && indexValues != null && !indexInScript) {
+            updateIndexes(Map.of(id, indexValues));
+        }
+        return written;
+    }
+
+    /**
+     * Batch variant of {@link #writeRecord}: every record is written unconditionally
+     * by its own script call, and all calls are sent without waiting for individual
+     * replies.
+     *
+     * @param indexValues the values to index each record under, or null to leave the indexes alone
+     */
+    private void writeRecords(Map<UUID, List<String>> records, Function<UUID, String> keyFunction, String layout,
+                              Map<UUID, List<String>> indexValues) {
+        boolean indexInScript = indexValues != null && !keyLayout.isClustered();
+        byte[] ttl = rawKey(Long.toString(stampTtlMillis()));
+        List<byte[]> indexKeys = indexKeys().stream().map(this::rawKey).toList();
+        List<byte[][]> keys = new ArrayList<>(records.size());
+        List<byte[][]> args = new ArrayList<>(records.size());
+        records.forEach((id, values) -> {
+            List<byte[]> recordKeys = new ArrayList<>();
+            recordKeys.add(rawKey(keyFunction.apply(id)));
+            recordKeys.add(rawKey(keyLayout.stampKey(id)));
+            List<byte[]> recordArgs = new ArrayList<>();
+            recordArgs.add(rawKey(layout));
+            recordArgs.add(ttl);
+            recordArgs.add(new byte[0]);
+            if (indexInScript) {
+                recordKeys.addAll(indexKeys);
+                recordArgs.add(rawKey(Integer.toString(indexValues.get(id).size())));
+                recordArgs.add(rawKey(id.toString()));
+                indexValues.get(id).forEach(value -> recordArgs.add(rawKey(value)));
+            } else {
+                recordArgs.add(rawKey("0"));
+                recordArgs.add(rawKey(id.toString()));
+            }
+            values.forEach(value -> recordArgs.add(rawKey(value)));
+            keys.add(recordKeys.toArray(byte[][]::new));
+            args.add(recordArgs.toArray(byte[][]::new));
+        });
+        evalAll(WRITE_RECORD_SCRIPT, keys, args);
+        if (indexValues != null && !indexInScript) {
+            updateIndexes(indexValues);
+        }
+    }
+
+    /**
+     * Rewrites a V2 record through a read-modify-write that only commits if nothing
+     * else wrote the record in between; otherwise it is read and changed again. The
+     * record is read past the near cache, and no earlier than its stamp, so the
+     * stamp check covers exactly what was read.
+     *
+     * @param reindex whether the change may touch indexed fields, so the record's
+     *                index entries have to be moved along with it
+     * @return the record as written, or empty if it does not exist
+     */
+    private Optional<CustomerRecordV2> rewriteRecordV2(UUID id, boolean reindex, UnaryOperator<CustomerRecordV2> change) {
+        String key = keyLayout.v2Key(id);
+        for (int attempt = 0; attempt < MAX_REWRITE_ATTEMPTS; attempt++) {
+            long stamp;
+            CustomerRecordV2 record;
+            if (isHashLayout()) {
+                // Any write after the stamp was read bumps it, failing the commit below
+                stamp = getStamps(List.of(id)).getOrDefault(id, 0L);
+                record = hashMultiGet(List.of(id)).get(id);
+            } else {
+                List<byte[]> values = rawMultiGet(List.of(keyLayout.stampKey(id), key));
+                Object stored = values.get(1) != null ? redisTemplate.getValueSerializer().deserialize(values.get(1)) : null;
+                stamp = values.get(0) != null ? Long.parseLong(new String(values.get(0), StandardCharsets.UTF_8)) : 0L;
+                // In the unified layout the key may still hold the V1 record
+                record = stored instanceof CustomerRecordV2 v2 ? v2 : null;
+            }
+            if (record == null) {
+                return Optional.empty();
+            }
+            CustomerRecordV2 updated = change.apply(record);
+            boolean written = writeRecord(id, List.of(key), isHashLayout() ? "hash" : "json", stamp,
+                    reindex ? indexValues(updated) : null, encodeForScript(updated));
+            nearCache.invalidate(key);
+            if (written) {
+                return Optional.of(updated);
+            }
+        }
+        throw new IllegalStateException("Record " + id + " kept changing, gave up after " + MAX_REWRITE_ATTEMPTS + " attempts");
+    }
+
+    private long stampTtlMillis() {
+        return properties.getBackfill().getStampTtl().toMillis();
+    }
+
+    /**
+     * Runs a script once per set of keys and arguments, sending all calls by SHA
+     * without waiting for individual replies. Calls that fail with NOSCRIPT, e.g.
+     * right after Redis restarted, are sent again with the script body, which also
+     * loads it for the ones after. This is the same fallback RedisTemplate applies
+     * to single script calls.
+     *
+     * @return the integer replies, in call order
+     */
+    private List<Long> evalAll(RedisScript<Long> script, List<byte[][]> keys, List<byte[][]> args) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        Long[] replies = new Long[keys.size()];
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            RedisClusterAsyncCommands<byte[], byte[]> commands = nativeCommands(connection);
+            List<RedisFuture<Long>> futures = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                futures.add(commands.evalsha(script.getSha1(), ScriptOutputType.INTEGER, keys.get(i), args.get(i)));
+            }
+
+            Map<Integer, RedisFuture<Long>> reloaded = new LinkedHashMap<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    replies[i] = LettuceFutures.awaitOrCancel(futures.get(i), BATCH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                } catch (RedisNoScriptException e) {
+                    reloaded.put(i, commands.eval(rawKey(script.getScriptAsString()), ScriptOutputType.INTEGER,
+                            keys.get(i), args.get(i)));
+                }
+            }
+            reloaded.forEach((i, future) ->
+                    replies[i] = LettuceFutures.awaitOrCancel(future, BATCH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+            return null;
+        });
+        return Arrays.asList(replies);
+    }
+
+    /**
+     * Adds IDs to the ordered ID index. Members are bare IDs with equal scores, so
+     * the set is ordered lexicographically by ID.
+     */
+    private void addToOrderedIndex(List<UUID> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Set<Tuple> tuples = new LinkedHashSet<>();
+        ids.forEach(id -> tuples.add(new DefaultTuple(rawKey(id.toString()), 0d)));
+        redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.zSetCommands().zAdd(rawKey(keyLayout.orderedRecordIds()), tuples));
+    }
+
+    /**
+     * Moves records to the secondary index entries matching the given values, one
+     * script call per record, all sent without waiting for individual replies.
+     * Values that are all empty remove a record from the indexes.
+     */
+    private void updateIndexes(Map<UUID, List<String>> values) {
+        byte[][] indexKeys = indexKeys().stream().map(this::rawKey).toArray(byte[][]::new);
+        List<byte[][]> keys = new ArrayList<>(values.size());
+        List<byte[][]> args = new ArrayList<>(values.size());
+        values.forEach((id, recordValues) -> {
+            List<byte[]> recordArgs = new ArrayList<>();
+            recordArgs.add(rawKey(id.toString()));
+            recordValues.forEach(value -> recordArgs.add(rawKey(value)));
+            keys.add(indexKeys);
+            args.add(recordArgs.toArray(byte[][]::new));
+        });
+        evalAll(INDEX_UPDATE_SCRIPT, keys, args);
+    }
+
+    private List<String> indexKeys() {
+        List<String> keys = new ArrayList<>();
+        keys.add(keyLayout.indexedValues());
+        Arrays.stream(IndexedField.values()).map(keyLayout::index).forEach(keys::add);
+        return keys;
+    }
+
+    private static List<String> indexValues(CustomerRecordV2 record) {
+        return Arrays.stream(IndexedField.values()).map(field -> field.valueOf(record)).toList();
+    }
+
+    private static List<String> noIndexValues() {
+        return Arrays.stream(IndexedField.values()).map(field -> "").toList();
+    }
+
+    /**
+     * Whether any of the given record fields, as resolved by
+     * {@link RecordFieldCodec#resolveFields}, is indexed.
+     */
+    private static boolean touchesIndexedField(Collection<String> fields) {
+        Set<String> indexed = new HashSet<>();
+        Arrays.stream(IndexedField.values()).forEach(field -> indexed.add(RecordSection.METADATA_PREFIX + field.getProperty()));
+        return fields.stream().anyMatch(indexed::contains);
+    }
+
+    /**
+     * Encodes a V2 record as script arguments: the JSON document, or field/value
+     * pairs for the hash layout.
+     */
+    private List<String> encodeForScript(CustomerRecordV2 record) {
+        if (!isHashLayout()) {
+            return List.of(new String(rawValue(record), StandardCharsets.UTF_8));
+        }
+        List<String> values = new ArrayList<>();
+        fieldCodec.encode(record).forEach((field, value) -> {
+            values.add(field);
+            values.add(value);
+        });
+        return values;
+    }
+
+    /**
+     * Runs a read of record payloads. Request-path reads may be served by a cluster
+     * replica; the migration's reads stay on the upstream, where the stamps they
+     * are compared with live.
+     */
+    private <T> T recordRead(Supplier<T> read) {
+        return RedisWorkload.current() == RedisWorkload.FOREGROUND ? RedisWorkload.REPLICA_READ.call(read::get) : read.get();
+    }
+
+    private boolean isHashLayout() {
+        return properties.getStorage().getV2Layout() == LiveMigrateProperties.V2Layout.HASH;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object decodeResolved(String tag, Object value) {
+        if ("v2".equals(tag) && isHashLayout()) {
+            List<byte[]> pairs = (List<byte[]>) value;
+            Map<String, String> fields = new LinkedHashMap<>();
+            for (int i = 0; i + 1 < pairs.size(); i += 2) {
+                fields.put(new String(pairs.get(i), StandardCharsets.UTF_8), new String(pairs.get(i + 1), StandardCharsets.UTF_8));
+            }
+            return fieldCodec.decode(fields);
+        }
+        return redisTemplate.getValueSerializer().deserialize((byte[]) value);
+    }
+
+    private CustomerRecordV2 project(CustomerRecordV2 record, List<String> hashFields) {
+        Map<String, String> fields = fieldCodec.encode(record);
+        fields.keySet().retainAll(hashFields);
+        return fieldCodec.decode(fields);
+    }
+
+    private static Map<String, String> decodeHash(Map<byte[], byte[]> fields) {
+        Map<String, String> decoded = new LinkedHashMap<>();
+        fields.forEach((field, value) -> decoded.put(
+                new String(field, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8)));
+        return decoded;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisClusterAsyncCommands<byte[], byte[]> nativeCommands(RedisConnection connection) {
+        return (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+    }
+
+    private static void awaitAll(Collection<? extends RedisFuture<?>> futures) {
+        if (!LettuceFutures.awaitAll(BATCH_TIMEOUT, futures.toArray(RedisFuture<?>[]::new))) {
+            throw new IllegalStateException("Timed out waiting for batch operation");
+        }
+    }
+
+    private byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawValue(Object value) {
+        return ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
+    }
+
+    /**
+     * A V1 record together with the version stamp it had when it was read.
+     */
+    public record StampedRecord(CustomerRecordV1 record, long stamp) {
+    }
+
+    /**
+     * A record read by {@link #resolveRecords}, and whether it was a V1 fallback
+     * after missing in V2.
+     */
+    public record ResolvedRecord(Object record, boolean fallback) {
+    }
+}
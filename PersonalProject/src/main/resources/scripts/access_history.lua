@@ -0,0 +1,50 @@
+-- Applies aggregated access history to an existing record hash: adds to the
+-- access counter, sets the last access time and appends to the bounded ring of
+-- recent accesses. Bumps the record's version stamp like any other foreground write.
+-- KEYS[1]: record hash key, KEYS[2]: stamp key
+-- ARGV[1]: number of accesses, ARGV[2]: last access time (JSON), ARGV[3]: maximum
+-- number of recent accesses kept, ARGV[4]: stamp TTL in milliseconds,
+-- ARGV[5..]: new access records (JSON), oldest first
+-- Returns 1 if the history was applied, 0 if the record does not exist.
+
+-- A missing (e.g. expired) stamp starts at the current time in microseconds
+-- rather than at 1, so it never comes back to a value a backfill read before
+local function bumpStamp(key, ttl)
+    if redis.call('EXISTS', key) == 0 then
+        local now = redis.call('TIME')
+        redis.call('SET', key, now[1] .. string.format('%06d', tonumber(now[2])))
+    else
+        redis.call('INCR', key)
+    end
+    redis.call('PEXPIRE', key, ttl)
+    return tonumber(redis.call('GET', key))
+end
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return 0
+end
+
+redis.call('HINCRBY', KEYS[1], 'metadata.accessCount', ARGV[1])
+redis.call('HSET', KEYS[1], 'metadata.lastAccessTime', ARGV[2])
+
+local recent = {}
+local stored = redis.call('HGET', KEYS[1], 'metadata.recentAccesses')
+if stored then
+    local decoded = cjson.decode(stored)
+    if type(decoded) == 'table' then
+        recent = decoded
+    end
+end
+for i = 5, #ARGV do
+    recent[#recent + 1] = cjson.decode(ARGV[i])
+end
+
+local limit = tonumber(ARGV[3])
+local trimmed = {}
+for i = math.max(1, #recent - limit + 1), #recent do
+    trimmed[#trimmed + 1] = recent[i]
+end
+-- cjson encodes an empty table as an object, so write the empty list explicitly
+redis.call('HSET', KEYS[1], 'metadata.recentAccesses', #trimmed > 0 and cjson.encode(trimmed) or '[]')
+bumpStamp(KEYS[2], ARGV[4])
+return 1
@@ -0,0 +1,83 @@
+-- Commits one migration batch atomically: V2 values, record ID index entries,
+-- secondary index entries, migrated marks, progress and checkpoint either all
+-- become visible or none do.
+-- Each record is only written if its version stamp still has the value the
+-- backfill read together with the V1 source; otherwise a foreground write landed
+-- in between and the record is reported back as a conflict instead.
+-- KEYS[1]: record ID index, KEYS[2]: migrated record set, KEYS[3]: progress,
+-- KEYS[4]: checkpoint, KEYS[5]: ordered record ID index (lex sorted set),
+-- KEYS[6]: hash of indexed values per record, KEYS[7..6+F]: one lex sorted set
+-- per indexed field (see index_update.lua), then the V2 key and stamp key of each
+-- record, in the order of the records in ARGV
+-- ARGV[1]: V2 layout (json or hash), ARGV[2]: total record count,
+-- ARGV[3]: serialized checkpoint value (empty to leave the checkpoint alone),
+-- ARGV[4]: number of indexed fields F, then per record: ID, expected stamp, F
+-- indexed values, value count, values. A JSON record has a single value (the
+-- document), a hash record has field/value pairs.
+-- Returns the IDs of conflicting records.
+local hashLayout = ARGV[1] == 'hash'
+local total = tonumber(ARGV[2])
+local fieldCount = tonumber(ARGV[4])
+local conflicts = {}
+local pos = 5
+
+local function updateIndexes(id, first)
+    local stored = redis.call('HGET', KEYS[6], id)
+    local old = stored and cjson.decode(stored) or {}
+    local values = {}
+    local indexed = false
+    for f = 1, fieldCount do
+        local previous = old[f] or ''
+        local current = ARGV[first + f - 1]
+        if previous ~= current then
+            if previous ~= '' then
+                redis.call('ZREM', KEYS[6 + f], previous .. '\0' .. id)
+            end
+            if current ~= '' then
+                redis.call('ZADD', KEYS[6 + f], 0, current .. '\0' .. id)
+            end
+        end
+        values[f] = current
+        indexed = indexed or current ~= ''
+    end
+    if indexed then
+        redis.call('HSET', KEYS[6], id, cjson.encode(values))
+    else
+        redis.call('HDEL', KEYS[6], id)
+    end
+end
+
+for i = 7 + fieldCount, #KEYS, 2 do
+    local id = ARGV[pos]
+    local countPos = pos + 2 + fieldCount
+    local count = tonumber(ARGV[countPos])
+    local stamp = redis.call('GET', KEYS[i + 1]) or '0'
+    if stamp ~= ARGV[pos + 1] then
+        conflicts[#conflicts + 1] = id
+    else
+        if hashLayout then
+            redis.call('HSET', KEYS[i], unpack(ARGV, countPos + 1, countPos + count))
+        else
+            redis.call('SET', KEYS[i], ARGV[countPos + 1])
+        end
+        -- Set members are written by the application's JSON serializer, i.e. as quoted strings
+        local member = '"' .. id .. '"'
+        redis.call('SADD', KEYS[1], member)
+        redis.call('SADD', KEYS[2], member)
+        redis.call('ZADD', KEYS[5], 0, id)
+        updateIndexes(id, pos + 2)
+    end
+    pos = countPos + 1 + count
+end
+
+-- Progress is derived from the migrated set, so it stays exact across resumes.
+-- A fixed decimal format keeps it readable as a Double by the JSON serializer.
+if total > 0 then
+    local progress = redis.call('SCARD', KEYS[2]) / total * 100
+    redis.call('SET', KEYS[3], string.format('%.6f', progress))
+end
+if ARGV[3] ~= '' then
+    redis.call('SET', KEYS[4], ARGV[3])
+end
+
+return conflicts
@@ -0,0 +1,17 @@
+-- Writes a migrated V2 record (or a V1 record rolled back from V2) only if its
+-- version stamp is unchanged, i.e. no foreground write landed since the backfill
+-- read its source.
+-- KEYS[1]: record key, KEYS[2]: stamp key (same hash tag, so same slot)
+-- ARGV[1]: layout (json or hash), ARGV[2]: expected stamp, ARGV[3..]: the JSON
+-- document, or field/value pairs for the hash layout
+-- Returns 1 if the record was written, 0 on conflict.
+local stamp = redis.call('GET', KEYS[2]) or '0'
+if stamp ~= ARGV[2] then
+    return 0
+end
+if ARGV[1] == 'hash' then
+    redis.call('HSET', KEYS[1], unpack(ARGV, 3))
+else
+    redis.call('SET', KEYS[1], ARGV[3])
+end
+return 1
@@ -0,0 +1,20 @@
+-- Halves the published hot record scores, at most once per decay interval no
+-- matter how many application nodes ask for it. Records whose score drops to
+-- zero are removed.
+-- KEYS[1]: hot records sorted set, KEYS[2]: marker of the last decay
+-- ARGV[1]: decay interval in milliseconds
+-- Returns the number of records decayed, or -1 if another node already decayed
+-- them in this interval.
+if not redis.call('SET', KEYS[2], '1', 'NX', 'PX', ARGV[1]) then
+    return -1
+end
+local entries = redis.call('ZRANGE', KEYS[1], 0, -1, 'WITHSCORES')
+for i = 1, #entries, 2 do
+    local score = math.floor(tonumber(entries[i + 1]) / 2)
+    if score > 0 then
+        redis.call('ZADD', KEYS[1], score, entries[i])
+    else
+        redis.call('ZREM', KEYS[1], entries[i])
+    end
+end
+return #entries / 2
@@ -0,0 +1,25 @@
+-- Increments a numeric field of an existing record hash, and bumps the record's
+-- version stamp in the same step.
+-- KEYS[1]: record hash key, KEYS[2]: stamp key
+-- ARGV[1]: field name, ARGV[2]: increment, ARGV[3]: stamp TTL in milliseconds
+-- Returns the new value, or false if the record does not exist.
+
+-- A missing (e.g. expired) stamp starts at the current time in microseconds
+-- rather than at 1, so it never comes back to a value a backfill read before
+local function bumpStamp(key, ttl)
+    if redis.call('EXISTS', key) == 0 then
+        local now = redis.call('TIME')
+        redis.call('SET', key, now[1] .. string.format('%06d', tonumber(now[2])))
+    else
+        redis.call('INCR', key)
+    end
+    redis.call('PEXPIRE', key, ttl)
+    return tonumber(redis.call('GET', key))
+end
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return false
+end
+local value = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])
+bumpStamp(KEYS[2], ARGV[3])
+return value
@@ -0,0 +1,33 @@
+-- Moves a record between the entries of the secondary indexes, based on the
+-- values it was last indexed under.
+-- KEYS[1]: hash of record ID -> indexed values (JSON array), KEYS[2..]: one lex
+-- sorted set per indexed field, whose members are "<value>\0<record ID>"
+-- ARGV[1]: record ID, ARGV[2..]: new value per indexed field, empty for none
+-- Returns the number of index entries changed.
+local id = ARGV[1]
+local stored = redis.call('HGET', KEYS[1], id)
+local old = stored and cjson.decode(stored) or {}
+local changed = 0
+local indexed = false
+
+for f = 2, #KEYS do
+    local previous = old[f - 1] or ''
+    local current = ARGV[f]
+    if previous ~= current then
+        if previous ~= '' then
+            redis.call('ZREM', KEYS[f], previous .. '\0' .. id)
+        end
+        if current ~= '' then
+            redis.call('ZADD', KEYS[f], 0, current .. '\0' .. id)
+        end
+        changed = changed + 1
+    end
+    indexed = indexed or current ~= ''
+end
+
+if indexed then
+    redis.call('HSET', KEYS[1], id, cjson.encode({unpack(ARGV, 2)}))
+else
+    redis.call('HDEL', KEYS[1], id)
+end
+return changed
@@ -0,0 +1,55 @@
+-- Resolves which version proxied reads of some records go to and reads them, in
+-- one round trip. Mirrors VersionSelector, including the fallback to V1 for
+-- records that are being migrated but are not in V2 yet.
+-- KEYS[1]: migration state, KEYS[2]: migrated set,
+-- KEYS[2i+1], KEYS[2i+2]: V1 and V2 key of the i-th record
+-- ARGV[1]: V2 layout (json or hash), ARGV[i+1]: ID of the i-th record
+-- Returns a version tag and a value per record: 'v1', 'v2' or 'fallback' (V1 after
+-- a V2 miss), followed by the JSON document, the hash as field/value pairs, or nil.
+local state = redis.call('GET', KEYS[1])
+-- Stored as a JSON string, like every value written through the RedisTemplate
+state = state and (string.gsub(state, '"', '')) or 'INITIALIZED'
+
+local function route(id)
+    if state == 'INITIALIZED' or state == 'ROLLED_BACK' then
+        return 'V1'
+    elseif state == 'COMPLETED' then
+        return 'V2'
+    elseif state == 'ROLLING_BACK' then
+        return 'IN_MIGRATION'
+    end
+    -- Set members are stored as JSON strings too
+    if redis.call('SISMEMBER', KEYS[2], '"' .. id .. '"') == 1 then
+        return 'V2'
+    elseif state == 'MIGRATING' or state == 'CATCHING_UP' or state == 'VALIDATING' then
+        return 'IN_MIGRATION'
+    end
+    return 'V1'
+end
+
+local function readV2(key)
+    if ARGV[1] == 'hash' then
+        local fields = redis.call('HGETALL', key)
+        if #fields == 0 then
+            return false
+        end
+        return fields
+    end
+    return redis.call('GET', key)
+end
+
+local result = {}
+for i = 1, #ARGV - 1 do
+    local version = route(ARGV[i + 1])
+    local tag, value = 'v1', false
+    if version ~= 'V1' then
+        tag, value = 'v2', readV2(KEYS[2 * i + 2])
+    end
+    if version == 'V1' or (not value and version == 'IN_MIGRATION') then
+        tag = version == 'V1' and 'v1' or 'fallback'
+        value = redis.call('GET', KEYS[2 * i + 1])
+    end
+    result[#result + 1] = tag
+    result[#result + 1] = value
+end
+return result
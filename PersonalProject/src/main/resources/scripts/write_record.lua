@@ -0,0 +1,75 @@
+-- Writes (or deletes) a record on behalf of the foreground and bumps its version
+-- stamp in the same step, so a backfill commit can never land between the data
+-- write and the stamp bump and overwrite the write with older data. The record's
+-- secondary index entries can be moved in the same step, so a crash can never
+-- leave them pointing at values the record no longer has.
+-- KEYS[1]: record key, KEYS[2]: stamp key (same hash tag, so same slot),
+-- KEYS[3..]: further keys of the record to delete along with it, followed, if
+-- indexes are updated, by the indexed values hash and one lex sorted set per
+-- indexed field (see index_update.lua)
+-- ARGV[1]: json, hash or del, ARGV[2]: stamp TTL in milliseconds,
+-- ARGV[3]: expected stamp, or an empty string to write unconditionally,
+-- ARGV[4]: number of indexed fields, 0 to leave the indexes alone,
+-- ARGV[5]: record ID, ARGV[6..]: new value per indexed field, empty for none,
+-- followed by the JSON document, or field/value pairs for the hash layout
+-- Returns the new stamp, or -1 if the stamp no longer matched.
+
+-- A missing (e.g. expired) stamp starts at the current time in microseconds
+-- rather than at 1, so it never comes back to a value a backfill read before
+local function bumpStamp(key, ttl)
+    if redis.call('EXISTS', key) == 0 then
+        local now = redis.call('TIME')
+        redis.call('SET', key, now[1] .. string.format('%06d', tonumber(now[2])))
+    else
+        redis.call('INCR', key)
+    end
+    redis.call('PEXPIRE', key, ttl)
+    return tonumber(redis.call('GET', key))
+end
+
+if ARGV[3] ~= '' and (redis.call('GET', KEYS[2]) or '0') ~= ARGV[3] then
+    return -1
+end
+
+local fieldCount = tonumber(ARGV[4])
+local firstValue = 6 + fieldCount
+local lastRecordKey = #KEYS
+if fieldCount > 0 then
+    lastRecordKey = #KEYS - fieldCount - 1
+end
+
+if ARGV[1] == 'hash' then
+    redis.call('HSET', KEYS[1], unpack(ARGV, firstValue))
+elseif ARGV[1] == 'json' then
+    redis.call('SET', KEYS[1], ARGV[firstValue])
+else
+    redis.call('DEL', KEYS[1], unpack(KEYS, 3, lastRecordKey))
+end
+local stamp = bumpStamp(KEYS[2], ARGV[2])
+
+if fieldCount > 0 then
+    local id = ARGV[5]
+    local valuesKey = KEYS[lastRecordKey + 1]
+    local stored = redis.call('HGET', valuesKey, id)
+    local old = stored and cjson.decode(stored) or {}
+    local indexed = false
+    for f = 1, fieldCount do
+        local previous = old[f] or ''
+        local current = ARGV[5 + f]
+        if previous ~= current then
+            if previous ~= '' then
+                redis.call('ZREM', KEYS[lastRecordKey + 1 + f], previous .. '\0' .. id)
+            end
+            if current ~= '' then
+                redis.call('ZADD', KEYS[lastRecordKey + 1 + f], 0, current .. '\0' .. id)
+            end
+        end
+        indexed = indexed or current ~= ''
+    end
+    if indexed then
+        redis.call('HSET', valuesKey, id, cjson.encode({unpack(ARGV, 6, 5 + fieldCount)}))
+    else
+        redis.call('HDEL', valuesKey, id)
+    end
+end
+return stamp
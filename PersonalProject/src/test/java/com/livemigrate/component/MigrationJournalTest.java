@@ -0,0 +1,179 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.KeyLayout;
+import com.livemigrate.config.LiveMigrateProperties;
+import com.livemigrate.model.MigrationState;
+import com.livemigrate.service.RecordService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MigrationJournalTest {
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 72;
+    // Sorts after every record ID, so reconciling finds Redis up to date and leaves the journal alone
+    private static final UUID LAST_ID = new UUID(-1L, -1L);
+
+    @TempDir
+    Path directory;
+
+    private final LiveMigrateProperties properties = new LiveMigrateProperties();
+    private final StateTracker stateTracker = mock(StateTracker.class);
+    private final VersionSelector versionSelector = mock(VersionSelector.class);
+    private final RecordService recordService = mock(RecordService.class);
+    private MigrationJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        properties.getJournal().setPath(journalFile().toString());
+        properties.getJournal().setMaxEntries(20);
+        when(stateTracker.getState()).thenReturn(MigrationState.MIGRATING);
+        when(stateTracker.getLastCheckpoint()).thenReturn(Optional.of(LAST_ID));
+        journal = open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.close();
+    }
+
+    @Test
+    void appendedEntriesAreFoundAfterReopening() {
+        appendBatches(1, 3);
+
+        reopen();
+
+        MigrationJournal.Entry last = journal.getLastEntry().orElseThrow();
+        assertThat(last.sequence()).isEqualTo(3);
+        assertThat(last.first()).isEqualTo(id(30));
+        assertThat(last.last()).isEqualTo(id(39));
+        assertThat(last.records()).isEqualTo(10);
+        assertThat(last.processed()).isEqualTo(30);
+    }
+
+    @Test
+    void scanStopsAtTornEntry() throws IOException {
+        appendBatches(1, 3);
+        journal.close();
+
+        // A crash in the middle of writing the third entry leaves its CRC stale
+        try (FileChannel channel = FileChannel.open(journalFile(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x5A}), HEADER_SIZE + 2L * ENTRY_SIZE + 20);
+        }
+        journal = open();
+
+        assertThat(journal.getLastEntry().orElseThrow().sequence()).isEqualTo(2);
+    }
+
+    @Test
+    void resetHidesStaleEntries() {
+        appendBatches(1, 3);
+        journal.reset();
+
+        reopen();
+        assertThat(journal.getLastEntry()).isEmpty();
+
+        // The slot after the new entry still holds an older entry, which must not be read
+        journal.append(batch(7), batch(7), 10);
+        reopen();
+
+        MigrationJournal.Entry last = journal.getLastEntry().orElseThrow();
+        assertThat(last.sequence()).isEqualTo(4);
+        assertThat(last.first()).isEqualTo(id(70));
+        assertThat(last.processed()).isEqualTo(10);
+    }
+
+    @Test
+    void compactionKeepsTheLatestEntries() throws IOException {
+        appendBatches(1, 50);
+
+        reopen();
+
+        assertThat(journal.getLastEntry().orElseThrow().sequence()).isEqualTo(50);
+        assertThat(journal.getLastEntry().orElseThrow().processed()).isEqualTo(500);
+        assertThat(Files.size(journalFile())).isEqualTo(HEADER_SIZE + 20L * ENTRY_SIZE);
+
+        // Appending continues the sequence after the compacted entries
+        journal.append(batch(51), batch(51), 510);
+        reopen();
+        assertThat(journal.getLastEntry().orElseThrow().sequence()).isEqualTo(51);
+    }
+
+    @Test
+    void restoresTheCheckpointRedisLost() {
+        appendBatches(1, 2);
+        when(stateTracker.getLastCheckpoint()).thenReturn(Optional.empty());
+        when(stateTracker.getState()).thenReturn(MigrationState.ERROR);
+        when(recordService.listRecordIds(eq(id(20)), eq(id(29)), anyInt())).thenReturn(batch(2));
+        when(versionSelector.filterUnmigrated(batch(2))).thenReturn(List.of());
+        when(recordService.getTotalRecordCount()).thenReturn(100L);
+
+        reopen();
+
+        verify(stateTracker).saveCheckpoint(id(29));
+        verify(stateTracker).updateProgress(20, 100);
+        verify(stateTracker).setState(MigrationState.PAUSED);
+    }
+
+    @Test
+    void maxEntriesMustLeaveRoomBeyondTheRetainedEntries() {
+        LiveMigrateProperties.Journal config = new LiveMigrateProperties.Journal();
+
+        assertThatThrownBy(() -> config.setMaxEntries(LiveMigrateProperties.Journal.RETAINED_ENTRIES))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> config.setMaxEntries(0))
+                .isInstanceOf(IllegalArgumentException.class);
+        config.setMaxEntries(LiveMigrateProperties.Journal.RETAINED_ENTRIES + 1);
+        assertThat(config.getMaxEntries()).isEqualTo(LiveMigrateProperties.Journal.RETAINED_ENTRIES + 1);
+    }
+
+    private void appendBatches(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            journal.append(batch(i), batch(i), i * 10L);
+        }
+    }
+
+    private void reopen() {
+        journal.close();
+        journal = open();
+    }
+
+    private MigrationJournal open() {
+        MigrationJournal opened = new MigrationJournal(properties, stateTracker, versionSelector, recordService,
+                new KeyLayout(false, false));
+        opened.open();
+        return opened;
+    }
+
+    private Path journalFile() {
+        return directory.resolve("migration.journal");
+    }
+
+    private static List<UUID> batch(int number) {
+        return IntStream.range(number * 10, number * 10 + 10).mapToObj(MigrationJournalTest::id).toList();
+    }
+
+    private static UUID id(int n) {
+        return new UUID(0L, n);
+    }
+}
@@ -0,0 +1,118 @@
+package com.livemigrate.component;
+
+import com.livemigrate.config.LiveMigrateProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ThroughputBudgetTest {
+    private final LiveMigrateProperties properties = new LiveMigrateProperties();
+    private ThroughputBudget budget;
+
+    @BeforeEach
+    void setUp() {
+        properties.getJobs().setGlobalRecordsPerSecond(900);
+        properties.getJobs().setMaxConcurrent(3);
+        budget = new ThroughputBudget(properties);
+    }
+
+    @Test
+    void runningJobsShareTheGlobalRateEqually() {
+        budget.activate("a");
+        assertThat(budget.getAllocatedRate("a")).isEqualTo(900.0);
+
+        budget.activate("b");
+        budget.activate("c");
+        assertRates(300.0, 300.0, 300.0);
+
+        budget.deactivate("c");
+        assertThat(budget.getAllocatedRate("a")).isEqualTo(450.0);
+        assertThat(budget.getAllocatedRate("c")).isZero();
+    }
+
+    @Test
+    void limitedJobLeavesItsUnusedShareToTheOthers() {
+        activateAll();
+
+        budget.setLimit("a", 100);
+        assertRates(100.0, 400.0, 400.0);
+
+        // Limited above its fair share, a job only gets the fair share
+        budget.setLimit("b", 500);
+        assertRates(100.0, 400.0, 400.0);
+
+        budget.setLimit("c", 150);
+        assertRates(100.0, 500.0, 150.0);
+    }
+
+    @Test
+    void removingALimitRestoresTheFairShare() {
+        activateAll();
+        budget.setLimit("a", 100);
+
+        budget.removeLimit("a");
+
+        assertRates(300.0, 300.0, 300.0);
+    }
+
+    @Test
+    void pressureLimitLowersTheGlobalRateUntilLifted() {
+        activateAll();
+        budget.setLimit("a", 50);
+
+        budget.setPressureLimit(300);
+        assertRates(50.0, 125.0, 125.0);
+
+        // A pressure limit above the configured global rate does not raise it
+        budget.setPressureLimit(1200);
+        assertRates(50.0, 425.0, 425.0);
+
+        budget.setPressureLimit(0);
+        assertRates(50.0, 425.0, 425.0);
+    }
+
+    @Test
+    void jobsAreUnlimitedWithoutAnyRate() {
+        properties.getJobs().setGlobalRecordsPerSecond(0);
+        activateAll();
+        assertRates(0.0, 0.0, 0.0);
+
+        budget.setLimit("a", 100);
+        assertRates(100.0, 0.0, 0.0);
+
+        budget.setPressureLimit(400);
+        assertRates(100.0, 150.0, 150.0);
+    }
+
+    @Test
+    void defaultLimitAppliesToJobsWithoutOne() {
+        properties.getJobs().setMaxRecordsPerSecond(200);
+        activateAll();
+        budget.setLimit("a", 400);
+
+        assertRates(400.0, 200.0, 200.0);
+    }
+
+    @Test
+    void activationIsRefusedBeyondTheConcurrencyLimit() {
+        activateAll();
+
+        assertThat(budget.activate("d")).isFalse();
+        assertThat(budget.activate("a")).isTrue();
+        assertRates(300.0, 300.0, 300.0);
+    }
+
+    private void activateAll() {
+        assertThat(budget.activate("a")).isTrue();
+        assertThat(budget.activate("b")).isTrue();
+        assertThat(budget.activate("c")).isTrue();
+    }
+
+    private void assertRates(double a, double b, double c) {
+        assertThat(budget.getAllocatedRate("a")).isCloseTo(a, within(0.001));
+        assertThat(budget.getAllocatedRate("b")).isCloseTo(b, within(0.001));
+        assertThat(budget.getAllocatedRate("c")).isCloseTo(c, within(0.001));
+    }
+}
@@ -0,0 +1,82 @@
+package com.livemigrate.config;
+
+import com.livemigrate.model.IndexedField;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyLayoutTest {
+    private static final UUID ID = UUID.fromString("3f2b8c1e-5d4a-4e6f-9a7b-1c2d3e4f5a6b");
+
+    @Test
+    void defaultJobKeepsThePlainKeyNames() {
+        KeyLayout layout = new KeyLayout(false, false);
+
+        assertThat(layout.getJob()).isEqualTo(KeyLayout.DEFAULT_JOB);
+        assertThat(layout.v1Key(ID)).isEqualTo("record:v1:" + ID);
+        assertThat(layout.migrationState()).isEqualTo("migration:state");
+    }
+
+    @Test
+    void jobKeysDoNotOverlapTheDefaultJobOrOtherJobs() {
+        for (boolean clustered : new boolean[]{false, true}) {
+            for (boolean unified : new boolean[]{false, true}) {
+                KeyLayout base = new KeyLayout(clustered, unified);
+                List<String> defaults = keys(base);
+                List<String> orders = keys(base.forJob("orders"));
+                List<String> invoices = keys(base.forJob("invoices"));
+
+                assertThat(orders).doesNotContainAnyElementsOf(defaults).doesNotContainAnyElementsOf(invoices);
+                assertThat(orders).allMatch(key -> key.startsWith("job:orders:") || key.startsWith("{livemigrate:orders}:"));
+            }
+        }
+    }
+
+    @Test
+    void jobKeyPatternsOnlyMatchTheJobsRecords() {
+        KeyLayout orders = new KeyLayout(false, false).forJob("orders");
+
+        assertThat(orders.v1KeyPattern()).isEqualTo("job:orders:record:v1:*");
+        assertThat(orders.stampKeyPattern()).isEqualTo("job:orders:record:stamp:*");
+        assertThat(new KeyLayout(false, false).v1KeyPattern()).isEqualTo("record:v1:*");
+    }
+
+    @Test
+    void clusteredJobSharesOneHashTagForItsGlobalKeys() {
+        KeyLayout orders = new KeyLayout(true, false).forJob("orders");
+
+        assertThat(List.of(orders.migrationState(), orders.migratedRecords(), orders.lastProcessedId(),
+                orders.recordIds(), orders.index(IndexedField.CUSTOMER_SEGMENT)))
+                .allMatch(key -> key.startsWith("{livemigrate:orders}:"));
+        assertThat(new KeyLayout(true, false).migrationState()).isEqualTo("{livemigrate}:migration:state");
+        // Both versions and the stamp of a record stay in the record's slot
+        assertThat(List.of(orders.v1Key(ID), orders.v2Key(ID), orders.stampKey(ID)))
+                .allMatch(key -> key.endsWith("{" + ID + "}"));
+    }
+
+    @Test
+    void recordIdIsRecoveredFromJobKeys() {
+        for (boolean clustered : new boolean[]{false, true}) {
+            KeyLayout orders = new KeyLayout(clustered, false).forJob("orders");
+
+            assertThat(orders.idFromKey(orders.v1Key(ID))).isEqualTo(ID);
+            assertThat(orders.idFromKey(orders.v2Key(ID))).isEqualTo(ID);
+        }
+    }
+
+    private static List<String> keys(KeyLayout layout) {
+        List<Function<KeyLayout, String>> keys = List.of(
+                l -> l.v1Key(ID), l -> l.v2Key(ID), l -> l.recordKey(ID), l -> l.stampKey(ID),
+                KeyLayout::recordIds, KeyLayout::orderedRecordIds, KeyLayout::indexedValues,
+                l -> l.index(IndexedField.CUSTOMER_SEGMENT), KeyLayout::migratedRecords, KeyLayout::migrationState,
+                KeyLayout::migrationProgress, KeyLayout::lastProcessedId, KeyLayout::completedAt,
+                KeyLayout::changeStream, KeyLayout::captureGap, KeyLayout::rollbackCheckpoint,
+                KeyLayout::pauseReason, KeyLayout::hotRecords, KeyLayout::hotRecordsDecay,
+                KeyLayout::retryQueue, KeyLayout::retryAttempts, KeyLayout::deadLetters);
+        return keys.stream().map(key -> key.apply(layout)).toList();
+    }
+}
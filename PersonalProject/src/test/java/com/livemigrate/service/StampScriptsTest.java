@@ -0,0 +1,178 @@
+package com.livemigrate.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the compare-and-set scripts that keep backfill commits from overwriting
+ * foreground writes against a real Redis server.
+ */
+class StampScriptsTest {
+    private static final RedisScript<Long> WRITE_RECORD =
+            RedisScript.of(new ClassPathResource("scripts/write_record.lua"), Long.class);
+    private static final RedisScript<Long> COMMIT_RECORD =
+            RedisScript.of(new ClassPathResource("scripts/commit_record.lua"), Long.class);
+    private static final RedisScript<List<String>> COMMIT_BATCH = listScript("scripts/commit_batch.lua");
+    private static final String TTL = "60000";
+
+    private static RedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redis;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new RedisServer(port);
+        server.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    @BeforeEach
+    void flush() {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.serverCommands().flushAll();
+        }
+    }
+
+    @Test
+    void foregroundWriteStartsAMissingStampFromTheClock() {
+        long stamp = write("record:1", "stamp:1", "", "{\"v\":1}");
+
+        assertThat(stamp).isGreaterThan(1_000_000_000_000_000L);
+        assertThat(write("record:1", "stamp:1", "", "{\"v\":2}")).isEqualTo(stamp + 1);
+        assertThat(redis.getExpire("stamp:1")).isPositive();
+    }
+
+    @Test
+    void foregroundWriteWithExpectedStampOnlyAppliesWhileItMatches() {
+        long stamp = write("record:1", "stamp:1", "", "{\"v\":1}");
+
+        assertThat(write("record:1", "stamp:1", String.valueOf(stamp), "{\"v\":2}")).isEqualTo(stamp + 1);
+        assertThat(write("record:1", "stamp:1", String.valueOf(stamp), "{\"v\":3}")).isEqualTo(-1);
+        assertThat(redis.opsForValue().get("record:1")).isEqualTo("{\"v\":2}");
+    }
+
+    @Test
+    void commitRecordWritesWhenTheStampIsUnchanged() {
+        Long written = redis.execute(COMMIT_RECORD, List.of("record:1", "stamp:1"), "json", "0", "{\"v\":1}");
+
+        assertThat(written).isEqualTo(1);
+        assertThat(redis.opsForValue().get("record:1")).isEqualTo("{\"v\":1}");
+    }
+
+    @Test
+    void commitRecordLeavesAForegroundWriteAlone() {
+        long stamp = write("record:1", "stamp:1", "", "{\"v\":1}");
+        write("record:1", "stamp:1", "", "{\"v\":2}");
+
+        Long written = redis.execute(COMMIT_RECORD, List.of("record:1", "stamp:1"),
+                "json", String.valueOf(stamp), "{\"v\":1,\"migrated\":true}");
+
+        assertThat(written).isZero();
+        assertThat(redis.opsForValue().get("record:1")).isEqualTo("{\"v\":2}");
+    }
+
+    @Test
+    void commitBatchWritesEveryRecordWithoutConflicts() {
+        List<String> conflicts = commitBatch(
+                new Row("a", "0", "gold", "{\"id\":\"a\"}"),
+                new Row("b", "0", "", "{\"id\":\"b\"}"));
+
+        assertThat(conflicts).isEmpty();
+        assertThat(redis.opsForValue().get("v2:a")).isEqualTo("{\"id\":\"a\"}");
+        assertThat(redis.opsForValue().get("v2:b")).isEqualTo("{\"id\":\"b\"}");
+        assertThat(redis.opsForSet().members("migrated")).containsExactlyInAnyOrder("\"a\"", "\"b\"");
+        assertThat(redis.opsForZSet().rangeByLex("index:segment", Range.unbounded()))
+                .containsExactly("gold\0a");
+        assertThat(redis.opsForValue().get("progress")).isEqualTo("100.000000");
+        assertThat(redis.opsForValue().get("checkpoint")).isEqualTo("\"b\"");
+    }
+
+    @Test
+    void commitBatchSkipsRecordsWrittenSinceTheyWereRead() {
+        long stampA = write("v1:a", "stamp:a", "", "{\"v\":1}");
+        long stampB = write("v1:b", "stamp:b", "", "{\"v\":1}");
+        // A foreground write after the backfill read b
+        write("v1:b", "stamp:b", "", "{\"v\":2}");
+
+        List<String> conflicts = commitBatch(
+                new Row("a", String.valueOf(stampA), "gold", "{\"id\":\"a\"}"),
+                new Row("b", String.valueOf(stampB), "gold", "{\"id\":\"b\"}"));
+
+        assertThat(conflicts).containsExactly("b");
+        assertThat(redis.hasKey("v2:b")).isFalse();
+        assertThat(redis.opsForSet().members("migrated")).containsExactly("\"a\"");
+        assertThat(redis.opsForZSet().rangeByLex("index:segment", Range.unbounded()))
+                .containsExactly("gold\0a");
+        assertThat(redis.opsForValue().get("progress")).isEqualTo("50.000000");
+    }
+
+    @Test
+    void commitBatchDetectsAWriteAfterTheStampExpired() {
+        long stamp = write("v1:a", "stamp:a", "", "{\"v\":1}");
+        // The stamp expires after the backfill read it, then the foreground writes again
+        redis.delete("stamp:a");
+        write("v1:a", "stamp:a", "", "{\"v\":2}");
+
+        List<String> conflicts = commitBatch(new Row("a", String.valueOf(stamp), "", "{\"id\":\"a\"}"));
+
+        assertThat(conflicts).containsExactly("a");
+        assertThat(redis.hasKey("v2:a")).isFalse();
+    }
+
+    private record Row(String id, String expectedStamp, String segment, String document) {
+    }
+
+    private long write(String recordKey, String stampKey, String expectedStamp, String document) {
+        Long stamp = redis.execute(WRITE_RECORD, List.of(recordKey, stampKey),
+                "json", TTL, expectedStamp, "0", recordKey, document);
+        return Objects.requireNonNull(stamp);
+    }
+
+    private List<String> commitBatch(Row... rows) {
+        List<String> keys = new ArrayList<>(List.of(
+                "ids", "migrated", "progress", "checkpoint", "id_index", "indexed_values", "index:segment"));
+        List<String> args = new ArrayList<>(List.of("json", "2", "\"" + rows[rows.length - 1].id() + "\"", "1"));
+        for (Row row : rows) {
+            keys.add("v2:" + row.id());
+            keys.add("stamp:" + row.id());
+            args.addAll(List.of(row.id(), row.expectedStamp(), row.segment(), "1", row.document()));
+        }
+        return redis.execute(COMMIT_BATCH, keys, args.toArray());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> RedisScript<List<T>> listScript(String path) {
+        return (RedisScript<List<T>>) (RedisScript<?>) RedisScript.of(new ClassPathResource(path), List.class);
+    }
+}